@@ -0,0 +1,157 @@
+/* Copyright 2020 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.opentracing.contrib.specialagent.benchmark;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.TimeValue;
+
+/**
+ * Runs the benchmark of each rule in 3 modes: without the SpecialAgent, with
+ * the SpecialAgent and the {@code NoopTracer}, and with the SpecialAgent and
+ * the {@code MockTracer}. The SpecialAgent is attached to the forked VMs with
+ * {@code -javaagent}, as in the integration tests, and only the rule under
+ * test is enabled.
+ * <p>
+ * The path of the SpecialAgent JAR is specified with
+ * {@code -Dsa.benchmark.agent}, and the JSON results of each run are written
+ * to the directory specified with {@code -Dsa.benchmark.dir}. The arguments
+ * are names of the rules to run, or none to run all.
+ */
+public class BenchmarkRunner {
+  private static final String ALLOC_NORM = "gc.alloc.rate.norm";
+
+  private enum Mode {
+    UNINSTRUMENTED,
+    NOOP,
+    MOCK;
+
+    private String[] jvmArgs(final String agent, final String rule, final String property) {
+      if (this == UNINSTRUMENTED)
+        return new String[0];
+
+      final List<String> args = new ArrayList<>();
+      args.add("-javaagent:" + agent);
+      args.add("-Dsa.integration.*.disable");
+      args.add("-Dsa.integration." + rule + ".enable");
+      args.add("-Dsa.log.level=WARNING");
+      if (property != null)
+        args.add(property);
+
+      if (this == MOCK)
+        args.add("-Dsa.exporter=mock");
+
+      return args.toArray(new String[args.size()]);
+    }
+  }
+
+  private static final Map<String,Class<?>> ruleToBenchmark = new LinkedHashMap<>();
+
+  /**
+   * The rules to enable for benchmarks that are not of a rule. At least one
+   * rule must be enabled for the tracer to be excluded from instrumentation.
+   */
+  private static final Map<String,String> nameToRule = new LinkedHashMap<>();
+
+  /**
+   * The system properties with which rules are configured for their
+   * benchmarks.
+   */
+  private static final Map<String,String> ruleToProperty = new LinkedHashMap<>();
+
+  static {
+    ruleToBenchmark.put("concurrent", ConcurrentBenchmark.class);
+    ruleToBenchmark.put("dynamic", DynamicBenchmark.class);
+    ruleToBenchmark.put("jdbc", JdbcBenchmark.class);
+    ruleToBenchmark.put("jedis", JedisBenchmark.class);
+    ruleToBenchmark.put("servlet", ServletBenchmark.class);
+    ruleToBenchmark.put("tracer", TracerBenchmark.class);
+    nameToRule.put("tracer", "concurrent");
+    ruleToProperty.put("dynamic", "-Dsa.integration.dynamic.rules=" + DynamicBenchmark.RULES);
+  }
+
+  private static String format(final Result<?> result) {
+    return result == null ? "n/a" : String.format("%.1f", result.getScore());
+  }
+
+  private static Result<?> getAllocation(final RunResult runResult) {
+    for (final Map.Entry<String,Result> entry : runResult.getSecondaryResults().entrySet())
+      if (entry.getKey().endsWith(ALLOC_NORM))
+        return entry.getValue();
+
+    return null;
+  }
+
+  public static void main(final String[] args) throws RunnerException {
+    final String agent = System.getProperty("sa.benchmark.agent");
+    if (agent == null || !new File(agent).exists())
+      throw new IllegalArgumentException("-Dsa.benchmark.agent must specify the path of the SpecialAgent JAR: " + agent);
+
+    final File dir = new File(System.getProperty("sa.benchmark.dir", "target/jmh"));
+    if (!dir.isDirectory() && !dir.mkdirs())
+      throw new IllegalStateException("Unable to create directory: " + dir);
+
+    final List<String> rules = new ArrayList<>();
+    for (final String arg : args)
+      if (arg.length() > 0)
+        rules.add(arg);
+
+    final StringBuilder report = new StringBuilder();
+    report.append(String.format("%-16s %-16s %-24s %12s %12s%n", "Rule", "Mode", "Benchmark", "ns/op", "B/op"));
+    for (final Map.Entry<String,Class<?>> entry : ruleToBenchmark.entrySet()) {
+      final String rule = entry.getKey();
+      if (rules.size() > 0 && !rules.contains(rule))
+        continue;
+
+      for (final Mode mode : Mode.values()) {
+        final ChainedOptionsBuilder builder = new OptionsBuilder()
+          .include(entry.getValue().getName())
+          .mode(org.openjdk.jmh.annotations.Mode.AverageTime)
+          .timeUnit(TimeUnit.NANOSECONDS)
+          .warmupIterations(5)
+          .warmupTime(TimeValue.seconds(1))
+          .measurementIterations(5)
+          .measurementTime(TimeValue.seconds(1))
+          .forks(1)
+          .jvmArgsAppend(mode.jvmArgs(agent, nameToRule.containsKey(rule) ? nameToRule.get(rule) : rule, ruleToProperty.get(rule)))
+          .addProfiler(GCProfiler.class)
+          .resultFormat(ResultFormatType.JSON)
+          .result(new File(dir, rule + "-" + mode.name().toLowerCase() + ".json").getPath());
+
+        final Collection<RunResult> results = new Runner(builder.build()).run();
+        for (final RunResult result : results)
+          report.append(String.format("%-16s %-16s %-24s %12s %12s%n", rule, mode.name().toLowerCase(), result.getParams().getBenchmark().substring(result.getParams().getBenchmark().lastIndexOf('.') + 1), format(result.getPrimaryResult()), format(getAllocation(result))));
+      }
+    }
+
+    System.out.println();
+    System.out.print(report);
+  }
+}
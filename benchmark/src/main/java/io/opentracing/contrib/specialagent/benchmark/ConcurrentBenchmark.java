@@ -0,0 +1,69 @@
+/* Copyright 2020 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.opentracing.contrib.specialagent.benchmark;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import io.opentracing.Scope;
+import io.opentracing.Span;
+import io.opentracing.Tracer;
+import io.opentracing.util.GlobalTracer;
+
+/**
+ * Benchmark of the submission of a task to an {@link ExecutorService} from a
+ * thread with an active span, as instrumented by the {@code concurrent} rule.
+ */
+@State(org.openjdk.jmh.annotations.Scope.Thread)
+public class ConcurrentBenchmark {
+  private static final Callable<Integer> task = new Callable<Integer>() {
+    @Override
+    public Integer call() {
+      return 1;
+    }
+  };
+
+  private ExecutorService executor;
+  private Span span;
+  private Scope scope;
+
+  @Setup
+  public void setup() {
+    executor = Executors.newSingleThreadExecutor();
+    final Tracer tracer = GlobalTracer.get();
+    span = tracer.buildSpan("parent").start();
+    scope = tracer.activateSpan(span);
+  }
+
+  @TearDown
+  public void tearDown() {
+    scope.close();
+    span.finish();
+    executor.shutdown();
+  }
+
+  @Benchmark
+  public Integer submit() throws ExecutionException, InterruptedException {
+    return executor.submit(task).get();
+  }
+}
@@ -0,0 +1,78 @@
+/* Copyright 2020 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.opentracing.contrib.specialagent.benchmark;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import io.opentracing.util.GlobalTracer;
+
+/**
+ * Benchmark of a tight loop of calls to a method that is instrumented by the
+ * {@code dynamic} rule, which creates a span for each call.
+ * <p>
+ * The {@code MockTracer} retains every finished span, so that the tracer that
+ * is registered by the SpecialAgent is reset every {@link #RESET_INTERVAL}
+ * invocations, whereby the benchmark measures the spans rather than the
+ * growth of the list of finished spans.
+ */
+@State(Scope.Thread)
+public class DynamicBenchmark {
+  /**
+   * The value of the {@code sa.integration.dynamic.rules} system property that
+   * instruments {@link #work(int)}.
+   */
+  static final String RULES = DynamicBenchmark.class.getName() + "#work(int):int";
+  private static final int CALLS = 100;
+  private static final int RESET_INTERVAL = 1000;
+
+  private int value;
+  private int invocations;
+  private Object tracer;
+  private Method reset;
+
+  @Setup
+  public void setup() throws ReflectiveOperationException {
+    final Field field = GlobalTracer.class.getDeclaredField("tracer");
+    field.setAccessible(true);
+    final Object tracer = field.get(null);
+    if ("io.opentracing.mock.MockTracer".equals(tracer.getClass().getName())) {
+      this.tracer = tracer;
+      this.reset = tracer.getClass().getMethod("reset");
+    }
+  }
+
+  public int work(final int i) {
+    return value += i;
+  }
+
+  @Benchmark
+  public int loop() throws ReflectiveOperationException {
+    if (reset != null && ++invocations % RESET_INTERVAL == 0)
+      reset.invoke(tracer);
+
+    int result = 0;
+    for (int i = 0; i < CALLS; ++i)
+      result += work(i);
+
+    return result;
+  }
+}
\ No newline at end of file
@@ -0,0 +1,57 @@
+/* Copyright 2020 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.opentracing.contrib.specialagent.benchmark;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Benchmark of the execution of a prepared query against an in-memory H2
+ * database, as instrumented by the {@code jdbc} rule.
+ */
+@State(Scope.Thread)
+public class JdbcBenchmark {
+  private Connection connection;
+  private PreparedStatement statement;
+
+  @Setup
+  public void setup() throws SQLException {
+    connection = DriverManager.getConnection("jdbc:h2:mem:benchmark");
+    statement = connection.prepareStatement("SELECT 1");
+  }
+
+  @TearDown
+  public void tearDown() throws SQLException {
+    statement.close();
+    connection.close();
+  }
+
+  @Benchmark
+  public int executeQuery() throws SQLException {
+    try (final ResultSet resultSet = statement.executeQuery()) {
+      return resultSet.next() ? resultSet.getInt(1) : 0;
+    }
+  }
+}
@@ -0,0 +1,56 @@
+/* Copyright 2020 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.opentracing.contrib.specialagent.benchmark;
+
+import java.io.IOException;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import redis.clients.jedis.Jedis;
+import redis.embedded.RedisServer;
+
+/**
+ * Benchmark of a {@code GET} command against an embedded Redis server, as
+ * instrumented by the {@code jedis} rule.
+ */
+@State(Scope.Thread)
+public class JedisBenchmark {
+  private RedisServer server;
+  private Jedis jedis;
+
+  @Setup
+  public void setup() throws IOException {
+    server = new RedisServer();
+    server.start();
+    jedis = new Jedis();
+    jedis.set("key", "value");
+  }
+
+  @TearDown
+  public void tearDown() {
+    jedis.close();
+    server.stop();
+  }
+
+  @Benchmark
+  public String get() {
+    return jedis.get("key");
+  }
+}
@@ -0,0 +1,88 @@
+/* Copyright 2020 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.opentracing.contrib.specialagent.benchmark;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.servlet.ServletHandler;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Benchmark of a request to a servlet in an embedded Jetty server, as
+ * instrumented by the {@code servlet} rule. The request is made with a
+ * keep-alive {@link HttpURLConnection}, so the measurement includes the
+ * loopback round trip.
+ */
+@State(Scope.Thread)
+public class ServletBenchmark {
+  public static class HelloServlet extends HttpServlet {
+    private static final long serialVersionUID = 1L;
+    private static final byte[] body = "hello".getBytes();
+
+    @Override
+    protected void doGet(final HttpServletRequest req, final HttpServletResponse resp) throws IOException {
+      resp.setStatus(HttpServletResponse.SC_OK);
+      resp.setContentLength(body.length);
+      resp.getOutputStream().write(body);
+    }
+  }
+
+  private final byte[] buffer = new byte[64];
+  private Server server;
+  private URL url;
+
+  @Setup
+  public void setup() throws Exception {
+    server = new Server(0);
+    final ServletHandler servletHandler = new ServletHandler();
+    servletHandler.addServletWithMapping(HelloServlet.class, "/hello");
+    server.setHandler(servletHandler);
+    server.start();
+    url = new URL("http://localhost:" + ((ServerConnector)server.getConnectors()[0]).getLocalPort() + "/hello");
+  }
+
+  @TearDown
+  public void tearDown() throws Exception {
+    server.stop();
+    server.join();
+  }
+
+  @Benchmark
+  public int get() throws IOException {
+    final HttpURLConnection connection = (HttpURLConnection)url.openConnection();
+    int length = 0;
+    // Read the body to the end, so that the connection is kept alive
+    try (final InputStream in = connection.getInputStream()) {
+      for (int n; (n = in.read(buffer)) != -1;)
+        length += n;
+    }
+
+    return connection.getResponseCode() + length;
+  }
+}
@@ -0,0 +1,65 @@
+/* Copyright 2020 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.opentracing.contrib.specialagent.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import io.opentracing.Scope;
+import io.opentracing.Span;
+import io.opentracing.mock.MockTracer;
+
+/**
+ * Benchmark of the building, tagging, logging and finishing of a span through
+ * a {@link MockTracer}, which measures the overhead of the exclusion of the
+ * tracer from instrumentation by the {@code TracerExclusionAgent}.
+ */
+@State(org.openjdk.jmh.annotations.Scope.Thread)
+public class TracerBenchmark {
+  private MockTracer tracer;
+
+  @Setup
+  public void setup() {
+    tracer = new MockTracer();
+  }
+
+  @TearDown(Level.Iteration)
+  public void reset() {
+    tracer.reset();
+  }
+
+  @Benchmark
+  public Span buildAndFinish() {
+    final Span span = tracer.buildSpan("benchmark")
+      .withTag("component", "benchmark")
+      .withTag("span.kind", "client")
+      .start();
+
+    try (final Scope scope = tracer.activateSpan(span)) {
+      span.setTag("http.method", "GET");
+      span.setTag("http.status_code", 200);
+      span.log("event");
+    }
+    finally {
+      span.finish();
+    }
+
+    return span;
+  }
+}
\ No newline at end of file
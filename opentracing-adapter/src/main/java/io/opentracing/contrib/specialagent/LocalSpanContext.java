@@ -15,41 +15,111 @@
 
 package io.opentracing.contrib.specialagent;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
 
 import io.opentracing.Scope;
 import io.opentracing.Span;
 
 /**
- * Thread local map holder for Span, Scope and counter to control stack of
- * calls. Map is used to avoid suppressing of creation of new span when active
- * span of another component exists. Key of the map is component name.
+ * Thread local holder for Span, Scope and counter to control stack of calls.
+ * A separate context is held for each component, to avoid suppressing of
+ * creation of new span when active span of another component exists.
+ * <p>
+ * Each component name is assigned an integer id with {@link #getId(String)},
+ * which Integration Rules obtain once, upon the initialization of their
+ * intercept class. The id is the index of the slot of the component in an
+ * array that is allocated once per thread. The {@code LocalSpanContext} in a
+ * slot is reused by subsequent calls to {@link #set(int,Span,Scope)}, so
+ * that entering and exiting an instrumented call does not allocate.
  */
 public class LocalSpanContext {
-  private static final ThreadLocal<Map<String,LocalSpanContext>> instance = new ThreadLocal<>();
+  private static final int INITIAL_SLOTS = 16;
+  private static final ConcurrentHashMap<String,Integer> nameToId = new ConcurrentHashMap<>();
+  private static final ThreadLocal<LocalSpanContext[]> instance = new ThreadLocal<LocalSpanContext[]>() {
+    @Override
+    protected LocalSpanContext[] initialValue() {
+      return new LocalSpanContext[Math.max(INITIAL_SLOTS, nameToId.size())];
+    }
+  };
+
+  /**
+   * Returns the id of the specified component name, which is assigned upon
+   * the first call to this method for the name.
+   *
+   * @param name The component name.
+   * @return The id of the specified component name.
+   */
+  public static int getId(final String name) {
+    final Integer id = nameToId.get(name);
+    if (id != null)
+      return id;
+
+    synchronized (nameToId) {
+      Integer newId = nameToId.get(name);
+      if (newId == null)
+        nameToId.put(name, newId = nameToId.size());
+
+      return newId;
+    }
+  }
+
+  private Span span;
+  private Scope scope;
+  private int counter;
+  private boolean active;
+
+  private LocalSpanContext() {
+  }
 
-  private final String name;
-  private final Span span;
-  private final Scope scope;
-  private int counter = 1;
+  /**
+   * Returns the {@code LocalSpanContext} of the component by the specified id
+   * in the current thread, or {@code null} if the component has no active
+   * {@code LocalSpanContext}.
+   *
+   * @param id The id of the component, as returned by {@link #getId(String)}.
+   * @return The {@code LocalSpanContext} of the component by the specified id
+   *         in the current thread, or {@code null} if the component has no
+   *         active {@code LocalSpanContext}.
+   */
+  public static LocalSpanContext get(final int id) {
+    final LocalSpanContext[] contexts = instance.get();
+    if (id >= contexts.length)
+      return null;
 
-  private LocalSpanContext(final String name, final Span span, final Scope scope) {
-    this.name = name;
-    this.span = span;
-    this.scope = scope;
+    final LocalSpanContext context = contexts[id];
+    return context == null || !context.active ? null : context;
+  }
+
+  /**
+   * Sets the active {@code LocalSpanContext} of the component by the specified
+   * id in the current thread, with a counter of {@code 1}.
+   *
+   * @param id The id of the component, as returned by {@link #getId(String)}.
+   * @param span The {@link Span}.
+   * @param scope The {@link Scope}, or {@code null}.
+   */
+  public static void set(final int id, final Span span, final Scope scope) {
+    LocalSpanContext[] contexts = instance.get();
+    if (id >= contexts.length)
+      instance.set(contexts = Arrays.copyOf(contexts, Math.max(id + 1, contexts.length * 2)));
+
+    LocalSpanContext context = contexts[id];
+    if (context == null)
+      contexts[id] = context = new LocalSpanContext();
+
+    context.span = span;
+    context.scope = scope;
+    context.counter = 1;
+    context.active = true;
   }
 
   public static LocalSpanContext get(final String name) {
-    final Map<String,LocalSpanContext> map = instance.get();
-    return map == null ? null : map.get(name);
+    return get(getId(name));
   }
 
   public static void set(final String name, final Span span, final Scope scope) {
-    if (instance.get() == null)
-      instance.set(new HashMap<String,LocalSpanContext>());
-
-    instance.get().put(name, new LocalSpanContext(name, span, scope));
+    set(getId(name), span, scope);
   }
 
   public Span getSpan() {
@@ -64,21 +134,29 @@ public class LocalSpanContext {
     return --counter;
   }
 
+  /**
+   * Closes the {@link Scope}, deactivates this {@code LocalSpanContext}, and
+   * finishes the {@link Span}. As with {@link #closeScope()}, the
+   * {@link Span} remains available from {@link #getSpan()} until this
+   * {@code LocalSpanContext} is set again.
+   */
   public void closeAndFinish() {
     closeScope();
     if (span != null)
       span.finish();
   }
 
+  /**
+   * Closes the {@link Scope}, and deactivates this {@code LocalSpanContext}.
+   * The {@link Span} remains available from {@link #getSpan()} until this
+   * {@code LocalSpanContext} is set again.
+   */
   public void closeScope() {
-    final Map<String,LocalSpanContext> map = instance.get();
-    if (map != null) {
-      map.remove(name);
-      if (map.isEmpty())
-        instance.remove();
-    }
-
-    if (scope != null)
+    active = false;
+    if (scope != null) {
+      final Scope scope = this.scope;
+      this.scope = null;
       scope.close();
+    }
   }
 }
\ No newline at end of file
@@ -0,0 +1,203 @@
+/* Copyright 2020 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.opentracing.contrib.specialagent;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import io.opentracing.Scope;
+import io.opentracing.Span;
+import io.opentracing.noop.NoopSpan;
+
+/**
+ * Measures the cost of entering and exiting an instrumented call with
+ * {@link LocalSpanContext}, against the previous implementation, which held a
+ * {@link HashMap} of {@code LocalSpanContext}s per thread, keyed by component
+ * name. Each benchmark enters and exits an instrumented call that makes a
+ * nested call to itself, as is done by the Integration Rules. The span is a
+ * {@link NoopSpan}, so that only the cost of {@link LocalSpanContext} is
+ * measured. The {@code outer} parameter activates the context of another
+ * component around the call, as is the case for a client call made while a
+ * server request is handled.
+ * <p>
+ * Run with: {@code mvn test-compile exec:exec -Dexec.executable=java
+ * -Dexec.classpathScope=test
+ * -Dexec.args="-cp %classpath io.opentracing.contrib.specialagent.LocalSpanContextBenchmark"}
+ */
+@State(org.openjdk.jmh.annotations.Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LocalSpanContextBenchmark {
+  private static final String OUTER_NAME = "java-web-servlet";
+  private static final String COMPONENT_NAME = "java-httpclient";
+  private static final int OUTER_ID = LocalSpanContext.getId(OUTER_NAME);
+  private static final int COMPONENT_ID = LocalSpanContext.getId(COMPONENT_NAME);
+
+  /**
+   * The implementation of {@link LocalSpanContext} prior to the introduction
+   * of component ids.
+   */
+  static class Previous {
+    private static final ThreadLocal<Map<String,Previous>> instance = new ThreadLocal<>();
+
+    private final String name;
+    private final Span span;
+    private final Scope scope;
+    private int counter = 1;
+
+    private Previous(final String name, final Span span, final Scope scope) {
+      this.name = name;
+      this.span = span;
+      this.scope = scope;
+    }
+
+    static Previous get(final String name) {
+      final Map<String,Previous> map = instance.get();
+      return map == null ? null : map.get(name);
+    }
+
+    static void set(final String name, final Span span, final Scope scope) {
+      if (instance.get() == null)
+        instance.set(new HashMap<String,Previous>());
+
+      instance.get().put(name, new Previous(name, span, scope));
+    }
+
+    void increment() {
+      ++counter;
+    }
+
+    int decrementAndGet() {
+      return --counter;
+    }
+
+    void closeAndFinish() {
+      closeScope();
+      if (span != null)
+        span.finish();
+    }
+
+    void closeScope() {
+      final Map<String,Previous> map = instance.get();
+      if (map != null) {
+        map.remove(name);
+        if (map.isEmpty())
+          instance.remove();
+      }
+
+      if (scope != null)
+        scope.close();
+    }
+  }
+
+  @Param({"false", "true"})
+  public boolean outer;
+
+  @Setup
+  public void setup() {
+    if (outer) {
+      Previous.set(OUTER_NAME, NoopSpan.INSTANCE, null);
+      LocalSpanContext.set(OUTER_ID, NoopSpan.INSTANCE, null);
+    }
+  }
+
+  @TearDown
+  public void tearDown() {
+    if (outer) {
+      Previous.get(OUTER_NAME).closeScope();
+      LocalSpanContext.get(OUTER_ID).closeScope();
+    }
+  }
+
+  private static void previousEnter() {
+    final Previous context = Previous.get(COMPONENT_NAME);
+    if (context != null) {
+      context.increment();
+      return;
+    }
+
+    Previous.set(COMPONENT_NAME, NoopSpan.INSTANCE, null);
+  }
+
+  private static void previousExit() {
+    final Previous context = Previous.get(COMPONENT_NAME);
+    if (context == null || context.decrementAndGet() != 0)
+      return;
+
+    context.closeAndFinish();
+  }
+
+  private static void currentEnter() {
+    final LocalSpanContext context = LocalSpanContext.get(COMPONENT_ID);
+    if (context != null) {
+      context.increment();
+      return;
+    }
+
+    LocalSpanContext.set(COMPONENT_ID, NoopSpan.INSTANCE, null);
+  }
+
+  private static void currentExit() {
+    final LocalSpanContext context = LocalSpanContext.get(COMPONENT_ID);
+    if (context == null || context.decrementAndGet() != 0)
+      return;
+
+    context.closeAndFinish();
+  }
+
+  @Benchmark
+  public void previous() {
+    previousEnter();
+    previousEnter();
+    previousExit();
+    previousExit();
+  }
+
+  @Benchmark
+  public void current() {
+    currentEnter();
+    currentEnter();
+    currentExit();
+    currentExit();
+  }
+
+  public static void main(final String[] args) throws RunnerException {
+    new Runner(new OptionsBuilder()
+      .include(LocalSpanContextBenchmark.class.getSimpleName())
+      .addProfiler(GCProfiler.class)
+      .build()).run();
+  }
+}
\ No newline at end of file
@@ -46,6 +46,12 @@ abstract class Action {
     if ("operationName".equals(type))
       return new OperationName(key, value);
 
+    if (!isInput && "drop".equals(type))
+      return new Drop(key, value);
+
+    if (!isInput && "sample".equals(type))
+      return new Sample(key, value);
+
     throw new IllegalStateException(subject + ": Invalid type");
   }
 
@@ -145,4 +151,49 @@ abstract class Action {
         throw new IllegalStateException(subject + ": Missing output key for tag");
     }
   }
+
+  static class Drop extends Action {
+    private Drop(final String key, final Object value) {
+      super(key, value);
+    }
+
+    @Override
+    void rewrite(final Rewriter rewriter, final long timestampMicroseconds, final String key, final Object value) {
+      rewriter.rewriteSample(0);
+    }
+
+    @Override
+    void validateInput(final RewriteRule rule, final String subject) {
+    }
+
+    @Override
+    void validateOutput(final Action input, final String subject) {
+      if (getKey() != null || getValue() != null)
+        throw new IllegalStateException(subject + ": drop cannot have key or value");
+    }
+  }
+
+  static class Sample extends Action {
+    private Sample(final String key, final Object value) {
+      super(key, value);
+    }
+
+    @Override
+    void rewrite(final Rewriter rewriter, final long timestampMicroseconds, final String key, final Object value) {
+      rewriter.rewriteSample(((Number)getValue()).doubleValue());
+    }
+
+    @Override
+    void validateInput(final RewriteRule rule, final String subject) {
+    }
+
+    @Override
+    void validateOutput(final Action input, final String subject) {
+      if (getKey() != null)
+        throw new IllegalStateException(subject + ": sample cannot have key");
+
+      if (!(getValue() instanceof Number) || ((Number)getValue()).doubleValue() < 0 || ((Number)getValue()).doubleValue() > 1)
+        throw new IllegalStateException(subject + ": sample value must be a number between 0 and 1");
+    }
+  }
 }
\ No newline at end of file
@@ -0,0 +1,111 @@
+/* Copyright 2020 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.opentracing.contrib.specialagent;
+
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * The {@link RewriteRule}s of a single {@link Action} type and key, compiled
+ * for matching. Rules with a literal number, boolean or string input value are
+ * matched with a hash lookup, and only the remaining rules are evaluated one
+ * by one. The first rule (in declaration order) that matches an input value
+ * takes precedence.
+ */
+final class DispatchTable {
+  private final RewriteRule[] rules;
+  private final HashMap<Object,Integer> valueToIndex;
+  private final HashMap<String,Integer> literalToIndex;
+  private final int[] indexes;
+
+  DispatchTable(final List<RewriteRule> rules) {
+    this.rules = rules.toArray(new RewriteRule[rules.size()]);
+    HashMap<Object,Integer> valueToIndex = null;
+    HashMap<String,Integer> literalToIndex = null;
+    final int[] indexes = new int[this.rules.length];
+    int size = 0;
+    for (int i = 0; i < this.rules.length; ++i) {
+      final RewriteRule rule = this.rules[i];
+      final Object value = rule.input.getValue();
+      if (rule.literal != null) {
+        if (literalToIndex == null)
+          literalToIndex = new HashMap<>();
+
+        if (!literalToIndex.containsKey(rule.literal))
+          literalToIndex.put(rule.literal, i);
+      }
+      else if (value instanceof Number || value instanceof Boolean) {
+        if (valueToIndex == null)
+          valueToIndex = new HashMap<>();
+
+        final Object key = toKey(value);
+        if (!valueToIndex.containsKey(key))
+          valueToIndex.put(key, i);
+      }
+      else {
+        indexes[size++] = i;
+      }
+    }
+
+    this.valueToIndex = valueToIndex;
+    this.literalToIndex = literalToIndex;
+    this.indexes = new int[size];
+    System.arraycopy(indexes, 0, this.indexes, 0, size);
+  }
+
+  /**
+   * Numbers are matched by their {@code double} value, as per
+   * {@link RewriteRule#matchValue(Object)}.
+   */
+  private static Object toKey(final Object value) {
+    return value instanceof Number ? (Object)((Number)value).doubleValue() : value;
+  }
+
+  /**
+   * Returns the {@link RewriteRule.Match} of the first rule that matches the
+   * specified input value, or {@code null} if no rule matches.
+   *
+   * @param value The input value.
+   * @return The {@link RewriteRule.Match} of the first rule that matches the
+   *         specified input value, or {@code null} if no rule matches.
+   */
+  RewriteRule.Match match(final Object value) {
+    int index = Integer.MAX_VALUE;
+    if (valueToIndex != null && (value instanceof Number || value instanceof Boolean)) {
+      final Integer i = valueToIndex.get(toKey(value));
+      if (i != null)
+        index = i;
+    }
+
+    if (literalToIndex != null && value != null) {
+      final Integer i = literalToIndex.get(value.toString());
+      if (i != null && i < index)
+        index = i;
+    }
+
+    for (final int i : indexes) {
+      if (i > index)
+        break;
+
+      final RewriteRule.Match match = rules[i].match(value);
+      if (match != null)
+        return match;
+    }
+
+    // Literal input values do not have groups to be referenced
+    return index == Integer.MAX_VALUE ? null : rules[index].constantMatch;
+  }
+}
\ No newline at end of file
@@ -0,0 +1,148 @@
+/* Copyright 2020 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.opentracing.contrib.specialagent;
+
+import java.util.Collections;
+import java.util.Map;
+
+import io.opentracing.Scope;
+import io.opentracing.Span;
+import io.opentracing.SpanContext;
+import io.opentracing.tag.Tag;
+
+/**
+ * A {@link Span} that was dropped by a {@code drop} or {@code sample} rule
+ * before it was started, and is therefore never reported. The context of a
+ * {@link DroppedSpan} is the context of its parent (if any), so that spans
+ * created as its children become children of its parent instead.
+ */
+final class DroppedSpan implements Span {
+  /** The context of a {@link DroppedSpan} that has no parent. */
+  static final SpanContext NO_PARENT = new SpanContext() {
+    @Override
+    public String toTraceId() {
+      return "";
+    }
+
+    @Override
+    public String toSpanId() {
+      return "";
+    }
+
+    @Override
+    public Iterable<Map.Entry<String,String>> baggageItems() {
+      return Collections.<String,String>emptyMap().entrySet();
+    }
+  };
+
+  /**
+   * The {@link Scope} of an activated {@link DroppedSpan}, which leaves the
+   * active span unchanged.
+   */
+  final Scope scope = new Scope() {
+    @Override
+    public void close() {
+    }
+
+    @Override
+    @Deprecated
+    public Span span() {
+      return DroppedSpan.this;
+    }
+  };
+
+  private final SpanContext context;
+
+  DroppedSpan(final SpanContext parent) {
+    this.context = parent != null ? parent : NO_PARENT;
+  }
+
+  @Override
+  public SpanContext context() {
+    return context;
+  }
+
+  @Override
+  public Span setTag(final String key, final String value) {
+    return this;
+  }
+
+  @Override
+  public Span setTag(final String key, final boolean value) {
+    return this;
+  }
+
+  @Override
+  public Span setTag(final String key, final Number value) {
+    return this;
+  }
+
+  @Override
+  public <T>Span setTag(final Tag<T> tag, final T value) {
+    return this;
+  }
+
+  @Override
+  public Span log(final Map<String,?> fields) {
+    return this;
+  }
+
+  @Override
+  public Span log(final long timestampMicroseconds, final Map<String,?> fields) {
+    return this;
+  }
+
+  @Override
+  public Span log(final String event) {
+    return this;
+  }
+
+  @Override
+  public Span log(final long timestampMicroseconds, final String event) {
+    return this;
+  }
+
+  @Override
+  public Span setBaggageItem(final String key, final String value) {
+    return this;
+  }
+
+  @Override
+  public String getBaggageItem(final String key) {
+    return context == NO_PARENT ? null : findBaggageItem(context, key);
+  }
+
+  private static String findBaggageItem(final SpanContext context, final String key) {
+    for (final Map.Entry<String,String> entry : context.baggageItems())
+      if (entry.getKey().equals(key))
+        return entry.getValue();
+
+    return null;
+  }
+
+  @Override
+  public Span setOperationName(final String operationName) {
+    return this;
+  }
+
+  @Override
+  public void finish() {
+  }
+
+  @Override
+  public void finish(final long finishMicros) {
+  }
+}
\ No newline at end of file
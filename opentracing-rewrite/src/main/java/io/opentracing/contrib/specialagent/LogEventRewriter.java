@@ -44,4 +44,9 @@ final class LogEventRewriter extends Rewriter {
   void rewriteOperationName(final String name) {
     source.rewriteOperationName(name);
   }
+
+  @Override
+  void rewriteSample(final double probability) {
+    source.rewriteSample(probability);
+  }
 }
\ No newline at end of file
@@ -39,15 +39,14 @@ class LogFieldRewriter extends Rewriter {
     for (final Map.Entry<String,?> entry : fields.entrySet()) {
       final String key = entry.getKey();
       final Object value = entry.getValue();
-      for (final RewriteRule rule : rules.getRules(key)) {
-        if (rule.input.getClass() != Action.Log.class)
-          continue;
-
-        final Object match = rule.matchValue(value);
-        if (match != null) {
-          rewriteLog(timestampMicroseconds, fields, rule, match, value);
-          return;
-        }
+      final DispatchTable table = rules.getTable(Action.Log.class, key);
+      if (table == null)
+        continue;
+
+      final RewriteRule.Match match = table.match(value);
+      if (match != null) {
+        rewriteLog(timestampMicroseconds, fields, match.rule, match.value, value);
+        return;
       }
     }
 
@@ -93,4 +92,9 @@ class LogFieldRewriter extends Rewriter {
   void rewriteOperationName(final String name) {
     source.rewriteOperationName(name);
   }
+
+  @Override
+  void rewriteSample(final double probability) {
+    source.rewriteSample(probability);
+  }
 }
\ No newline at end of file
@@ -24,12 +24,11 @@ import io.opentracing.tag.Tag;
 
 public class RewritableSpan extends Rewriter implements Span {
   final Span target;
-  private final RewriteRules rules;
+  private volatile double probability = 1;
 
   RewritableSpan(final Span target, final RewriteRules rules) {
     super(rules);
     this.target = target;
-    this.rules = rules;
   }
 
   @Override
@@ -109,14 +108,24 @@ public class RewritableSpan extends Rewriter implements Span {
     return this;
   }
 
+  /**
+   * @return Whether this span is to be reported, as per the {@code drop} and
+   *         {@code sample} rules that matched after it was started.
+   */
+  private boolean isSampled() {
+    return probability >= 1 || isSampled(probability, target.context().toTraceId());
+  }
+
   @Override
   public void finish() {
-    target.finish();
+    if (isSampled())
+      target.finish();
   }
 
   @Override
   public void finish(final long finishMicros) {
-    target.finish(finishMicros);
+    if (isSampled())
+      target.finish(finishMicros);
   }
 
   @Override
@@ -143,4 +152,10 @@ public class RewritableSpan extends Rewriter implements Span {
   void rewriteOperationName(final String name) {
     target.setOperationName(name);
   }
+
+  @Override
+  void rewriteSample(final double probability) {
+    if (probability < this.probability)
+      this.probability = probability;
+  }
 }
\ No newline at end of file
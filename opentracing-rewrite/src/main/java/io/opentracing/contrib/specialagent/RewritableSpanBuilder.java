@@ -19,7 +19,9 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Map;
 
+import io.opentracing.References;
 import io.opentracing.Scope;
+import io.opentracing.ScopeManager;
 import io.opentracing.Span;
 import io.opentracing.SpanContext;
 import io.opentracing.Tracer;
@@ -27,33 +29,48 @@ import io.opentracing.tag.Tag;
 
 public class RewritableSpanBuilder extends Rewriter implements Tracer.SpanBuilder {
   final Tracer.SpanBuilder target;
+  private final ScopeManager scopeManager;
+  private double probability = 1;
+  private SpanContext parent;
+  private boolean ignoreActiveSpan;
 
-  RewritableSpanBuilder(final String operationName, final Tracer.SpanBuilder target, final RewriteRules rules) {
+  RewritableSpanBuilder(final String operationName, final Tracer.SpanBuilder target, final RewriteRules rules, final ScopeManager scopeManager) {
     super(rules);
     this.target = target;
+    this.scopeManager = scopeManager;
     onOperationName(operationName);
   }
 
+  RewritableSpanBuilder(final String operationName, final Tracer.SpanBuilder target, final RewriteRules rules) {
+    this(operationName, target, rules, null);
+  }
+
   @Override
   public Tracer.SpanBuilder asChildOf(final SpanContext parent) {
-    target.asChildOf(parent);
-    return this;
+    return addReference(References.CHILD_OF, parent);
   }
 
   @Override
   public Tracer.SpanBuilder asChildOf(final Span parent) {
-    target.asChildOf(parent);
-    return this;
+    return parent == null ? this : addReference(References.CHILD_OF, parent.context());
   }
 
   @Override
   public Tracer.SpanBuilder addReference(final String referenceType, final SpanContext referencedContext) {
+    // The context of a DroppedSpan without a parent refers to no trace
+    if (referencedContext == null || referencedContext == DroppedSpan.NO_PARENT)
+      return this;
+
+    if (parent == null)
+      parent = referencedContext;
+
     target.addReference(referenceType, referencedContext);
     return this;
   }
 
   @Override
   public Tracer.SpanBuilder ignoreActiveSpan() {
+    ignoreActiveSpan = true;
     target.ignoreActiveSpan();
     return this;
   }
@@ -88,20 +105,39 @@ public class RewritableSpanBuilder extends Rewriter implements Tracer.SpanBuilde
     return this;
   }
 
-  @Override
-  @Deprecated
-  public Span startManual() {
-    return target.startManual();
+  /**
+   * @return The context of the parent of the span to be started, or
+   *         {@code null} if the span has no parent.
+   */
+  private SpanContext getParent() {
+    if (parent != null || ignoreActiveSpan || scopeManager == null)
+      return parent;
+
+    final Span activeSpan = scopeManager.activeSpan();
+    return activeSpan == null ? null : activeSpan.context();
   }
 
-  private RewritableSpan span;
+  /**
+   * @return A {@link DroppedSpan} if the span to be started is dropped by a
+   *         {@code drop} or {@code sample} rule, or {@code null} if the span
+   *         is to be started.
+   */
+  private DroppedSpan drop() {
+    if (probability >= 1)
+      return null;
 
-  @Override
-  public Span start() {
-    final Span span = target.start();
-    if (this.span != null && this.span.target == span)
-      return this.span;
+    final SpanContext parent = getParent();
+    return isSampled(probability, parent == null ? null : parent.toTraceId()) ? null : new DroppedSpan(parent);
+  }
 
+  /**
+   * Applies the operation name and logs that were rewritten by this builder to
+   * the specified {@code span} of the target tracer.
+   *
+   * @param span The started {@link Span} of the target tracer.
+   * @return The specified {@code span}.
+   */
+  private Span rewrite(final Span span) {
     if (log != null)
       for (final Map<String,Object> fields : log)
         span.log(fields);
@@ -109,7 +145,20 @@ public class RewritableSpanBuilder extends Rewriter implements Tracer.SpanBuilde
     if (operationName != null)
       span.setOperationName(operationName);
 
-    return this.span = newRewritableSpan(span);
+    return span;
+  }
+
+  @Override
+  @Deprecated
+  public Span startManual() {
+    final DroppedSpan droppedSpan = drop();
+    return droppedSpan != null ? droppedSpan : newRewritableSpan(rewrite(target.startManual()));
+  }
+
+  @Override
+  public Span start() {
+    final DroppedSpan droppedSpan = drop();
+    return droppedSpan != null ? droppedSpan : newRewritableSpan(rewrite(target.start()));
   }
 
   RewritableSpan newRewritableSpan(final Span span) {
@@ -119,7 +168,16 @@ public class RewritableSpanBuilder extends Rewriter implements Tracer.SpanBuilde
   @Override
   @Deprecated
   public Scope startActive(final boolean finishSpanOnClose) {
-    return target.startActive(finishSpanOnClose);
+    final DroppedSpan droppedSpan = drop();
+    if (droppedSpan != null)
+      return droppedSpan.scope;
+
+    if (scopeManager != null)
+      return scopeManager.activate(newRewritableSpan(rewrite(target.start())), finishSpanOnClose);
+
+    final Scope scope = target.startActive(finishSpanOnClose);
+    rewrite(scope.span());
+    return scope;
   }
 
   private String operationName;
@@ -149,4 +207,9 @@ public class RewritableSpanBuilder extends Rewriter implements Tracer.SpanBuilde
   void rewriteOperationName(final String name) {
     operationName = name;
   }
+
+  @Override
+  void rewriteSample(final double probability) {
+    this.probability = Math.min(this.probability, probability);
+  }
 }
\ No newline at end of file
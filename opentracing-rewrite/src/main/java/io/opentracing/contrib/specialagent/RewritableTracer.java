@@ -15,8 +15,8 @@
 
 package io.opentracing.contrib.specialagent;
 
-import java.util.HashMap;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
 
 import io.opentracing.Scope;
 import io.opentracing.ScopeManager;
@@ -25,84 +25,119 @@ import io.opentracing.SpanContext;
 import io.opentracing.Tracer;
 import io.opentracing.propagation.Format;
 
+/**
+ * A {@link Tracer} that rewrites the operation names, tags and logs of spans
+ * in accordance with the {@link RewriteRules} that match the name of the
+ * plugin that is creating the span. This class is thread-safe: the rules of
+ * each plugin are resolved once into an immutable {@link RewriteRules}
+ * instance, and the tracer itself holds no other mutable state. If no rules
+ * match the current plugin, the spans and span builders of the target tracer
+ * are returned without being wrapped.
+ */
 public class RewritableTracer implements Tracer {
   final Tracer target;
   final List<RewriteRules> rulesManifest;
+  private final ConcurrentHashMap<String,RewriteRules> nameToRules = new ConcurrentHashMap<>();
 
   public RewritableTracer(final Tracer target, final List<RewriteRules> rulesManifest) {
     this.target = target;
     this.rulesManifest = rulesManifest;
   }
 
-  private static final HashMap<String,RewriteRules> nameToRules = new HashMap<>();
-
+  /**
+   * Returns the {@link RewriteRules} for the plugin that is currently
+   * executing, or {@code null} if no rules match the plugin.
+   *
+   * @return The {@link RewriteRules} for the plugin that is currently
+   *         executing, or {@code null} if no rules match the plugin.
+   */
   private RewriteRules getRulesForCurrentPlugin() {
     String currentPluginName = AgentRule.getCurrentPluginName();
     if (currentPluginName == null)
       currentPluginName = "";
 
-    if (nameToRules.containsKey(currentPluginName))
-      return nameToRules.get(currentPluginName);
-
-    boolean cloned = false;
-    RewriteRules matchingRules = null;
-    for (final RewriteRules rules : rulesManifest) {
-      if (rules.namePattern.matcher(currentPluginName).matches()) {
-        if (matchingRules == null) {
-          matchingRules = rules;
-        }
-        else {
-          if (!cloned) {
-            matchingRules = matchingRules.clone();
-            cloned = true;
-          }
-
-          matchingRules.addAll(rules);
-        }
-      }
+    RewriteRules rules = nameToRules.get(currentPluginName);
+    if (rules == null) {
+      // Concurrent resolutions for the same name produce equal rules, so
+      // whichever is put first is kept
+      final RewriteRules exists = nameToRules.putIfAbsent(currentPluginName, rules = RewriteRules.merge(rulesManifest, currentPluginName));
+      if (exists != null)
+        rules = exists;
     }
 
-    nameToRules.put(currentPluginName, matchingRules);
-    return matchingRules;
+    return rules.isEmpty() ? null : rules;
   }
 
+  /**
+   * The {@link ScopeManager} of the target tracer, which does not activate
+   * {@link DroppedSpan}s, so that the active span remains their parent.
+   */
+  private final ScopeManager scopeManager = new ScopeManager() {
+    @Override
+    public Scope activate(final Span span) {
+      return span instanceof DroppedSpan ? ((DroppedSpan)span).scope : target.scopeManager().activate(span);
+    }
+
+    @Override
+    @Deprecated
+    public Scope activate(final Span span, final boolean finishSpanOnClose) {
+      return span instanceof DroppedSpan ? ((DroppedSpan)span).scope : target.scopeManager().activate(span, finishSpanOnClose);
+    }
+
+    @Override
+    @Deprecated
+    public Scope active() {
+      return target.scopeManager().active();
+    }
+
+    @Override
+    public Span activeSpan() {
+      return RewritableTracer.this.activeSpan();
+    }
+  };
+
   @Override
   public ScopeManager scopeManager() {
-    return target.scopeManager();
+    return scopeManager;
   }
 
-  private RewritableSpan activeSpan;
-
   @Override
   public Span activeSpan() {
-    final Span activeSpan = target.activeSpan();
-    if (this.activeSpan != null && this.activeSpan.target == activeSpan)
-      return this.activeSpan;
+    Span activeSpan = target.activeSpan();
+    if (activeSpan == null)
+      return null;
 
+    // The scope manager of the target holds the spans that were activated
+    // with activateSpan(Span), which may already be RewritableSpans
     final RewriteRules rules = getRulesForCurrentPlugin();
-    return this.activeSpan = new RewritableSpan(activeSpan, rules);
+    if (activeSpan instanceof RewritableSpan) {
+      final RewritableSpan rewritableSpan = (RewritableSpan)activeSpan;
+      if (rewritableSpan.rules == rules)
+        return rewritableSpan;
+
+      activeSpan = rewritableSpan.target;
+    }
+
+    return rules == null ? activeSpan : new RewritableSpan(activeSpan, rules);
   }
 
   @Override
   public Scope activateSpan(final Span span) {
-    return target.activateSpan(span);
+    // A DroppedSpan is not activated, so that the active span remains its parent
+    return span instanceof DroppedSpan ? ((DroppedSpan)span).scope : target.activateSpan(span);
   }
 
-  private RewritableSpanBuilder spanBuilder;
-
   @Override
   public SpanBuilder buildSpan(final String operationName) {
     final SpanBuilder spanBuilder = target.buildSpan(operationName);
-    if (this.spanBuilder != null && this.spanBuilder.target == spanBuilder)
-      return this.spanBuilder;
-
     final RewriteRules rules = getRulesForCurrentPlugin();
-    return this.spanBuilder = new RewritableSpanBuilder(operationName, spanBuilder, rules);
+    return rules == null ? spanBuilder : new RewritableSpanBuilder(operationName, spanBuilder, rules, target.scopeManager());
   }
 
   @Override
   public <C>void inject(final SpanContext spanContext, final Format<C> format, final C carrier) {
-    target.inject(spanContext, format, carrier);
+    if (spanContext != DroppedSpan.NO_PARENT)
+      target.inject(spanContext, format, carrier);
   }
 
   @Override
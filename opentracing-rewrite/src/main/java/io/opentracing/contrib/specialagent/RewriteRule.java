@@ -69,14 +69,105 @@ class RewriteRule {
     return predicate.equals(value);
   }
 
+  /**
+   * Returns the literal prefix that every string matched by the specified
+   * regular expression must start with, or {@code null} if there is no such
+   * prefix.
+   *
+   * @param regex The regular expression.
+   * @return The literal prefix of the specified regular expression, or
+   *         {@code null} if there is no such prefix.
+   */
+  static String getLiteralPrefix(final String regex) {
+    if (regex.indexOf('|') > -1)
+      return null;
+
+    int i = 0;
+    for (final int len = regex.length(); i < len; ++i) {
+      if (META.indexOf(regex.charAt(i)) > -1) {
+        // A quantifier makes the preceding character optional
+        if (QUANTIFIERS.indexOf(regex.charAt(i)) > -1)
+          --i;
+
+        break;
+      }
+    }
+
+    return i <= 0 ? null : regex.substring(0, i);
+  }
+
+  /**
+   * @param output The output value.
+   * @return Whether the specified output value references groups of the
+   *         matched input value.
+   */
+  private static boolean referencesGroups(final Object output) {
+    if (output == null)
+      return false;
+
+    final String string = output.toString();
+    return string.indexOf('$') > -1 || string.indexOf('\\') > -1;
+  }
+
+  private static final String META = "\\^$.|?*+()[]{}";
+  private static final String QUANTIFIERS = "?*+{";
+
+  /** The match of an input that is not a pattern. */
   static final Boolean SIMPLE = Boolean.TRUE;
 
+  /** The match of a pattern whose groups are not referenced by the outputs. */
+  static final Boolean PATTERN = Boolean.FALSE;
+
+  /**
+   * A {@link RewriteRule} together with the match of an input value.
+   */
+  static final class Match {
+    final RewriteRule rule;
+    final Object value;
+
+    Match(final RewriteRule rule, final Object value) {
+      this.rule = rule;
+      this.value = value;
+    }
+  }
+
   final Action input;
   final Action[] outputs;
 
+  /**
+   * The {@link Match} of an input value, if the match does not depend on the
+   * input value (i.e. it is {@link #SIMPLE} or {@link #PATTERN}).
+   */
+  final Match constantMatch;
+
+  /**
+   * The literal string matched by the input pattern, if the input pattern has
+   * no special characters, and its groups are not referenced by the outputs.
+   */
+  final String literal;
+  private final String prefix;
+  private final boolean referencesGroups;
+
   RewriteRule(final Action input, final Action[] outputs) {
     this.input = input;
     this.outputs = outputs;
+    boolean referencesGroups = false;
+    if (input.getValue() instanceof Pattern && outputs != null)
+      for (final Action output : outputs)
+        referencesGroups |= referencesGroups(output.getValue());
+
+    this.referencesGroups = referencesGroups;
+    if (input.getValue() instanceof Pattern) {
+      final String regex = ((Pattern)input.getValue()).pattern();
+      this.prefix = getLiteralPrefix(regex);
+      this.literal = !referencesGroups && prefix != null && prefix.length() == regex.length() ? regex : null;
+    }
+    else {
+      this.prefix = null;
+      this.literal = null;
+    }
+
+    this.constantMatch = new Match(this, input.getValue() instanceof Pattern ? PATTERN : SIMPLE);
   }
 
   final void rewrite(final Rewriter rewriter, final long timestampMicroseconds, final Object match, final Object input) {
@@ -89,6 +180,17 @@ class RewriteRule {
     }
   }
 
+  /**
+   * Returns the match of the specified input value, or {@code null} if the
+   * input value is not matched by this rule. The match is {@link #SIMPLE} if
+   * the input of this rule is not a pattern, {@link #PATTERN} if the input of
+   * this rule is a pattern whose groups are not referenced by the outputs,
+   * and otherwise the {@link Matcher} of the input value.
+   *
+   * @param input The input value.
+   * @return The match of the specified input value, or {@code null} if the
+   *         input value is not matched by this rule.
+   */
   final Object matchValue(final Object input) {
     if (this.input.getValue() == null)
       return SIMPLE;
@@ -96,12 +198,48 @@ class RewriteRule {
     if (!(this.input.getValue() instanceof Pattern))
       return matchesSimpleValue(this.input.getValue(), input) ? SIMPLE : null;
 
-    final Matcher matcher = ((Pattern)this.input.getValue()).matcher(input.toString());
-    return matcher.matches() ? matcher : null;
+    if (input == null)
+      return null;
+
+    final String string = input.toString();
+    if (prefix != null && !string.startsWith(prefix))
+      return null;
+
+    if (literal != null)
+      return literal.equals(string) ? PATTERN : null;
+
+    final Matcher matcher = ((Pattern)this.input.getValue()).matcher(string);
+    return !matcher.matches() ? null : referencesGroups ? matcher : PATTERN;
+  }
+
+  /**
+   * Returns the {@link Match} of the specified input value, or {@code null} if
+   * the input value is not matched by this rule. A new {@link Match} is only
+   * instantiated if the outputs of this rule reference groups of the input
+   * pattern.
+   *
+   * @param input The input value.
+   * @return The {@link Match} of the specified input value, or {@code null}
+   *         if the input value is not matched by this rule.
+   */
+  final Match match(final Object input) {
+    final Object match = matchValue(input);
+    return match == null ? null : match instanceof Matcher ? new Match(this, match) : constantMatch;
   }
 
   Object rewriteValue(final Object matcher, final Object input, final Object output) {
-    return output == null ? input : matcher == SIMPLE ? output : ((Matcher)matcher).replaceAll(output.toString());
+    if (output == null)
+      return input;
+
+    if (matcher == SIMPLE)
+      return output;
+
+    if (matcher == PATTERN)
+      return output.toString();
+
+    final StringBuffer buffer = new StringBuffer();
+    ((Matcher)matcher).appendReplacement(buffer, output.toString());
+    return buffer.toString();
   }
 
   final RewriteRule validate(final String subject) {
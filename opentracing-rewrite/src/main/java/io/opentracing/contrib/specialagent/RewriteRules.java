@@ -20,6 +20,7 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.regex.Pattern;
 import java.util.regex.PatternSyntaxException;
 
@@ -28,7 +29,7 @@ import com.grack.nanojson.JsonObject;
 import com.grack.nanojson.JsonParser;
 import com.grack.nanojson.JsonParserException;
 
-public final class RewriteRules implements Cloneable {
+public final class RewriteRules {
   public static List<RewriteRules> parseRules(final InputStream inputStream) {
     try {
       List<RewriteRules> result = null;
@@ -70,12 +71,30 @@ public final class RewriteRules implements Cloneable {
     this.namePattern = namePattern;
   }
 
-  private RewriteRules(final HashMap<String,List<RewriteRule>> keyToRules) {
-    this.keyToRules.putAll(keyToRules);
-    this.namePattern = null;
+  /**
+   * Returns a new {@link RewriteRules} instance with the rules of all members
+   * of the specified list whose name pattern matches the specified plugin
+   * name, in the order of the list. The returned instance is not modified
+   * thereafter, and is therefore safe to be shared between threads.
+   *
+   * @param rulesManifest The list of {@link RewriteRules}.
+   * @param pluginName The name of the plugin.
+   * @return A new {@link RewriteRules} instance with the rules that match the
+   *         specified plugin name.
+   */
+  static RewriteRules merge(final List<RewriteRules> rulesManifest, final String pluginName) {
+    final RewriteRules merged = new RewriteRules(null);
+    for (final RewriteRules rules : rulesManifest)
+      if (rules.namePattern.matcher(pluginName).matches())
+        for (final List<RewriteRule> value : rules.keyToRules.values())
+          for (final RewriteRule rule : value)
+            merged.add(rule);
+
+    merged.compile();
+    return merged;
   }
 
-  void add(final RewriteRule rule) {
+  private void add(final RewriteRule rule) {
     List<RewriteRule> list = keyToRules.get(rule.input.getKey());
     if (list == null)
       keyToRules.put(rule.input.getKey(), list = new ArrayList<>());
@@ -83,19 +102,64 @@ public final class RewriteRules implements Cloneable {
     list.add(rule);
   }
 
-  void addAll(final RewriteRules rules) {
-    for (final List<RewriteRule> value : rules.keyToRules.values())
-      for (final RewriteRule rule : value)
-        add(rule);
+  private volatile HashMap<Class<? extends Action>,HashMap<String,DispatchTable>> typeToKeyToTable;
+
+  /**
+   * Compiles the rules into a {@link DispatchTable} per {@link Action} type
+   * and key.
+   *
+   * @return The {@link DispatchTable}s per {@link Action} type and key.
+   */
+  private HashMap<Class<? extends Action>,HashMap<String,DispatchTable>> compile() {
+    final HashMap<Class<? extends Action>,HashMap<String,List<RewriteRule>>> typeToKeyToRules = new HashMap<>();
+    for (final List<RewriteRule> rules : keyToRules.values()) {
+      for (final RewriteRule rule : rules) {
+        HashMap<String,List<RewriteRule>> keyToRules = typeToKeyToRules.get(rule.input.getClass());
+        if (keyToRules == null)
+          typeToKeyToRules.put(rule.input.getClass(), keyToRules = new HashMap<>());
+
+        List<RewriteRule> list = keyToRules.get(rule.input.getKey());
+        if (list == null)
+          keyToRules.put(rule.input.getKey(), list = new ArrayList<>());
+
+        list.add(rule);
+      }
+    }
+
+    final HashMap<Class<? extends Action>,HashMap<String,DispatchTable>> typeToKeyToTable = new HashMap<>();
+    for (final Map.Entry<Class<? extends Action>,HashMap<String,List<RewriteRule>>> entry : typeToKeyToRules.entrySet()) {
+      final HashMap<String,DispatchTable> keyToTable = new HashMap<>();
+      for (final Map.Entry<String,List<RewriteRule>> rules : entry.getValue().entrySet())
+        keyToTable.put(rules.getKey(), new DispatchTable(rules.getValue()));
+
+      typeToKeyToTable.put(entry.getKey(), keyToTable);
+    }
+
+    return this.typeToKeyToTable = typeToKeyToTable;
   }
 
-  List<RewriteRule> getRules(final String key) {
-    final List<RewriteRule> inputs = keyToRules.get(key);
-    return inputs != null ? inputs : Collections.<RewriteRule>emptyList();
+  /**
+   * Returns the {@link DispatchTable} of the rules for the specified
+   * {@link Action} type and key, or {@code null} if there are no such rules.
+   * The rules are compiled upon the first invocation of this method, unless
+   * already compiled by {@link #merge(List,String)}.
+   *
+   * @param type The {@link Action} type.
+   * @param key The key.
+   * @return The {@link DispatchTable} of the rules for the specified
+   *         {@link Action} type and key, or {@code null} if there are no such
+   *         rules.
+   */
+  DispatchTable getTable(final Class<? extends Action> type, final String key) {
+    HashMap<Class<? extends Action>,HashMap<String,DispatchTable>> typeToKeyToTable = this.typeToKeyToTable;
+    if (typeToKeyToTable == null)
+      typeToKeyToTable = compile();
+
+    final HashMap<String,DispatchTable> keyToTable = typeToKeyToTable.get(type);
+    return keyToTable == null ? null : keyToTable.get(key);
   }
 
-  @Override
-  public RewriteRules clone() {
-    return new RewriteRules(new HashMap<>(keyToRules));
+  boolean isEmpty() {
+    return keyToRules.isEmpty();
   }
 }
\ No newline at end of file
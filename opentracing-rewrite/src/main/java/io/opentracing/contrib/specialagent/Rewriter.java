@@ -15,7 +15,43 @@
 
 package io.opentracing.contrib.specialagent;
 
+import java.util.concurrent.ThreadLocalRandom;
+
 abstract class Rewriter {
+  /**
+   * Returns whether a span of the trace with the specified id is to be kept,
+   * given the specified probability. The decision is deterministic for a
+   * trace id, so that all spans of a trace that are subject to the same
+   * probability are either kept or dropped together. If the trace id is not
+   * known, the decision is random.
+   *
+   * @param probability The probability of the span to be kept.
+   * @param traceId The trace id, or {@code null} if not known.
+   * @return Whether a span of the trace with the specified id is to be kept.
+   */
+  static boolean isSampled(final double probability, final String traceId) {
+    if (probability >= 1)
+      return true;
+
+    if (probability <= 0)
+      return false;
+
+    if (traceId == null || traceId.length() == 0)
+      return ThreadLocalRandom.current().nextDouble() < probability;
+
+    long hash = 0;
+    for (int i = 0; i < traceId.length(); ++i)
+      hash = 31 * hash + traceId.charAt(i);
+
+    // Finalization mix of MurmurHash3, to spread the bits of the hash
+    hash ^= hash >>> 33;
+    hash *= 0xff51afd7ed558ccdL;
+    hash ^= hash >>> 33;
+    hash *= 0xc4ceb9fe1a85ec53L;
+    hash ^= hash >>> 33;
+    return (hash >>> 11) * 0x1.0p-53 < probability;
+  }
+
   final RewriteRules rules;
 
   Rewriter(final RewriteRules rules) {
@@ -25,6 +61,7 @@ abstract class Rewriter {
   abstract void rewriteTag(String key, Object value);
   abstract void rewriteLog(long timestampMicroseconds, String key, Object value);
   abstract void rewriteOperationName(String name);
+  abstract void rewriteSample(double probability);
 
   final void onOperationName(final String operationName) {
     if (!onEvent(Action.OperationName.class, 0, null, operationName))
@@ -45,17 +82,15 @@ abstract class Rewriter {
     if (rules == null)
       return false;
 
-    for (final RewriteRule rule : rules.getRules(key)) {
-      if (rule.input.getClass() != type)
-        continue;
+    final DispatchTable table = rules.getTable(type, key);
+    if (table == null)
+      return false;
 
-      final Object match = rule.matchValue(value);
-      if (match != null) {
-        rule.rewrite(this, timestampMicroseconds, match, value);
-        return true;
-      }
-    }
+    final RewriteRule.Match match = table.match(value);
+    if (match == null)
+      return false;
 
-    return false;
+    match.rule.rewrite(this, timestampMicroseconds, match.value, value);
+    return true;
   }
 }
\ No newline at end of file
@@ -0,0 +1,117 @@
+/* Copyright 2020 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.opentracing.contrib.specialagent;
+
+import java.io.ByteArrayInputStream;
+import java.io.UnsupportedEncodingException;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import io.opentracing.Tracer;
+import io.opentracing.noop.NoopTracerFactory;
+
+/**
+ * Measures the throughput of span creation with a {@link RewritableTracer}
+ * whose rules match the current plugin, with a {@link RewritableTracer} whose
+ * rules match another plugin, and with the target tracer alone.
+ * <p>
+ * Run with: {@code mvn test-compile exec:exec -Dexec.executable=java
+ * -Dexec.classpathScope=test
+ * -Dexec.args="-cp %classpath io.opentracing.contrib.specialagent.RewritableTracerBenchmark"}
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(4)
+@Fork(1)
+public class RewritableTracerBenchmark {
+  private static final String className = RewritableTracerBenchmark.class.getName();
+  private static final String rules = "[{\"input\": {\"type\": \"tag\", \"key\": \"db.statement\", \"value\": \"SELECT (.*)\"}, \"output\": {\"type\": \"tag\", \"key\": \"db.statement\", \"value\": \"select $1\"}}]";
+
+  /**
+   * Sets the current plugin of each benchmark thread to "benchmark".
+   */
+  @State(Scope.Thread)
+  public static class Plugin {
+    @Setup
+    public void setup(final RewritableTracerBenchmark benchmark) {
+      AgentRule.isAllowed(className, "benchmark");
+    }
+  }
+
+  private static Tracer newRewritableTracer(final Tracer target, final String pluginName) throws UnsupportedEncodingException {
+    return new RewritableTracer(target, RewriteRules.parseRules(new ByteArrayInputStream(("{\"" + pluginName + "\": " + rules + "}").getBytes("UTF-8"))));
+  }
+
+  private Tracer target;
+  private Tracer matchingRules;
+  private Tracer otherRules;
+
+  @Setup
+  public void setup() throws UnsupportedEncodingException {
+    AgentRule.$Access.configure(null, Collections.singletonMap(className, "benchmark"));
+    AgentRule.$Access.load();
+    AgentRule.$Access.init();
+
+    target = NoopTracerFactory.create();
+    matchingRules = newRewritableTracer(target, "benchmark");
+    otherRules = newRewritableTracer(target, "other");
+  }
+
+  private static void span(final Tracer tracer) {
+    tracer.buildSpan("query").withTag("db.statement", "SELECT 1").withTag("db.type", "sql").start().finish();
+  }
+
+  @Benchmark
+  public void target(final Plugin plugin) {
+    span(target);
+  }
+
+  @Benchmark
+  public void otherRules(final Plugin plugin) {
+    span(otherRules);
+  }
+
+  @Benchmark
+  public void matchingRules(final Plugin plugin) {
+    span(matchingRules);
+  }
+
+  public static void main(final String[] args) throws RunnerException {
+    new Runner(new OptionsBuilder()
+      .include(RewritableTracerBenchmark.class.getSimpleName())
+      .addProfiler(GCProfiler.class)
+      .build()).run();
+  }
+}
\ No newline at end of file
@@ -22,16 +22,32 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+import org.junit.After;
+import org.junit.Before;
 import org.junit.Test;
 
+import io.opentracing.Scope;
 import io.opentracing.Span;
 import io.opentracing.mock.MockSpan;
 import io.opentracing.mock.MockTracer;
 
 public class RewriteRuleTest {
+  private Map<String,String> classNameToName;
+
+  @Before
+  public void before() {
+    classNameToName = AgentRule.$Access.getClassNameToName();
+  }
+
+  @After
+  public void after() {
+    AgentRule.$Access.configure(null, classNameToName);
+  }
+
   private static void assertTags(final RewritableTracer tracer, final MockTracer mockTracer, final String key, final List<Map<String,String>> logs) {
     AgentRule.$Access.configure(null, Collections.<String,String>singletonMap(null, key));
     final Span span = tracer.buildSpan("op").start();
@@ -62,6 +78,110 @@ public class RewriteRuleTest {
     }
   }
 
+  @Test
+  public void literalPrefix() {
+    assertEquals("select", RewriteRule.getLiteralPrefix("select"));
+    assertEquals("select ", RewriteRule.getLiteralPrefix("select .*"));
+    assertEquals("selec", RewriteRule.getLiteralPrefix("select?"));
+    assertEquals("sel", RewriteRule.getLiteralPrefix("sel\\w+"));
+    assertNull(RewriteRule.getLiteralPrefix("(select).*"));
+    assertNull(RewriteRule.getLiteralPrefix("select|update"));
+    assertNull(RewriteRule.getLiteralPrefix("s*"));
+  }
+
+  @Test
+  public void firstMatchingRuleHasPriority() {
+    final String json = "{\"*\": [" +
+      "{\"input\": {\"type\": \"tag\", \"key\": \"k\", \"value\": \"va.*\"}, \"output\": {\"type\": \"tag\", \"value\": \"regex\"}}," +
+      "{\"input\": {\"type\": \"tag\", \"key\": \"k\", \"value\": \"value\"}, \"output\": {\"type\": \"tag\", \"value\": \"literal\"}}," +
+      "{\"input\": {\"type\": \"tag\", \"key\": \"k\", \"value\": 1}, \"output\": {\"type\": \"tag\", \"value\": \"number\"}}," +
+      "{\"input\": {\"type\": \"tag\", \"key\": \"k\"}, \"output\": {\"type\": \"tag\", \"value\": \"any\"}}" +
+    "]}";
+
+    final DispatchTable table = RewriteRules.merge(RewriteRules.parseRules(new ByteArrayInputStream(json.getBytes())), "").getTable(Action.Tag.class, "k");
+    assertEquals("regex", table.match("value").rule.outputs[0].getValue());
+    assertEquals("number", table.match(1L).rule.outputs[0].getValue());
+    assertEquals("number", table.match(1.0).rule.outputs[0].getValue());
+    assertEquals("any", table.match("other").rule.outputs[0].getValue());
+    assertEquals("any", table.match(true).rule.outputs[0].getValue());
+    assertNull(RewriteRules.merge(RewriteRules.parseRules(new ByteArrayInputStream(json.getBytes())), "").getTable(Action.Log.class, "k"));
+  }
+
+  @Test
+  public void sampleIsDeterministicByTraceId() {
+    final String json = "{\"*\": [{\"input\": {\"type\": \"operationName\", \"value\": \"child\"}, \"output\": {\"type\": \"sample\", \"value\": 0.5}}]}";
+    final MockTracer mockTracer = new MockTracer();
+    final RewritableTracer tracer = new RewritableTracer(mockTracer, RewriteRules.parseRules(new ByteArrayInputStream(json.getBytes())));
+    AgentRule.$Access.configure(null, Collections.<String,String>singletonMap(null, "sample"));
+    final int traces = 200;
+    for (int i = 0; i < traces; ++i) {
+      final Span parent = tracer.buildSpan("parent").start();
+      tracer.buildSpan("child").asChildOf(parent).start().finish();
+      tracer.buildSpan("child").asChildOf(parent).start().finish();
+      parent.finish();
+    }
+
+    final Map<Long,Integer> traceIdToChildren = new HashMap<>();
+    for (final MockSpan span : mockTracer.finishedSpans()) {
+      if ("child".equals(span.operationName())) {
+        final Integer count = traceIdToChildren.get(span.context().traceId());
+        traceIdToChildren.put(span.context().traceId(), count == null ? 1 : count + 1);
+      }
+    }
+
+    for (final Integer count : traceIdToChildren.values())
+      assertEquals(2, (int)count);
+
+    assertTrue(String.valueOf(traceIdToChildren.size()), traceIdToChildren.size() > traces / 4 && traceIdToChildren.size() < traces * 3 / 4);
+    assertEquals(traces + traceIdToChildren.size() * 2, mockTracer.finishedSpans().size());
+  }
+
+  @Test
+  @SuppressWarnings("deprecation")
+  public void droppedSpanIsNotActivated() {
+    final String json = "{\"*\": [{\"input\": {\"type\": \"operationName\", \"value\": \"dropped\"}, \"output\": {\"type\": \"drop\"}}]}";
+    final MockTracer mockTracer = new MockTracer();
+    final RewritableTracer tracer = new RewritableTracer(mockTracer, RewriteRules.parseRules(new ByteArrayInputStream(json.getBytes())));
+    AgentRule.$Access.configure(null, Collections.<String,String>singletonMap(null, "drop"));
+
+    final Span parent = tracer.buildSpan("parent").start();
+    try (final Scope parentScope = tracer.scopeManager().activate(parent)) {
+      final Span dropped = tracer.buildSpan("dropped").start();
+      try (final Scope droppedScope = tracer.scopeManager().activate(dropped)) {
+        assertSame(dropped, droppedScope.span());
+        assertEquals(parent.context().toSpanId(), tracer.scopeManager().activeSpan().context().toSpanId());
+        assertEquals(parent.context().toSpanId(), mockTracer.scopeManager().activeSpan().context().toSpanId());
+        tracer.buildSpan("child").start().finish();
+      }
+
+      dropped.finish();
+
+      final Scope manualScope = tracer.scopeManager().activate(tracer.buildSpan("dropped").startManual(), true);
+      assertTrue(manualScope.span() instanceof DroppedSpan);
+      manualScope.close();
+
+      try (final Scope activeScope = tracer.buildSpan("dropped").startActive(true)) {
+        assertTrue(activeScope.span() instanceof DroppedSpan);
+        assertEquals(parent.context().toSpanId(), tracer.scopeManager().activeSpan().context().toSpanId());
+      }
+
+      try (final Scope activeScope = tracer.buildSpan("active").startActive(true)) {
+        assertEquals(activeScope.span().context().toSpanId(), tracer.scopeManager().activeSpan().context().toSpanId());
+      }
+    }
+
+    parent.finish();
+    assertNull(mockTracer.activeSpan());
+
+    final List<MockSpan> spans = mockTracer.finishedSpans();
+    assertEquals(3, spans.size());
+    assertEquals("child", spans.get(0).operationName());
+    assertEquals(spans.get(2).context().spanId(), spans.get(0).parentId());
+    assertEquals("active", spans.get(1).operationName());
+    assertEquals(spans.get(2).context().spanId(), spans.get(1).parentId());
+    assertEquals("parent", spans.get(2).operationName());
+  }
+
   @Test
   public void completeInvalidJson() {
     try {
@@ -36,14 +36,14 @@ public abstract class AgentRule {
 
     /**
      * Load the {@link AgentRule} class and initialize
-     * {@link AgentRule#isThreadInstrumentable}.
+     * {@link AgentRule#threadState}.
      * <p>
      * <b>Note:</b> This method must be called before tracer classes are loaded,
      * in order to capture lineage of threads started by the tracer.
      */
     static void load() {
       // "main" thread is instrumentable
-      isThreadInstrumentable.set(Boolean.TRUE);
+      threadState.set(new ThreadState(true));
     }
 
     /**
@@ -59,6 +59,14 @@ public abstract class AgentRule {
       AgentRule.classNameToName = classNameToName;
     }
 
+    /**
+     * @return The {@link Map} of class names to plugin names previously set
+     *         via {@link $Access#configure(Runnable,Map)}.
+     */
+    static Map<String,String> getClassNameToName() {
+      return AgentRule.classNameToName;
+    }
+
     /**
      * Run the {@link $Access#initializer} {@link Runnable} previously set via
      * {@link $Access#configure(Runnable,Map)}.
@@ -104,39 +112,50 @@ public abstract class AgentRule {
 
   private static boolean initialized;
 
-  private static final InheritableThreadLocal<Boolean> isThreadInstrumentable = new InheritableThreadLocal<Boolean>() {
-    @Override
-    protected Boolean childValue(Boolean parentValue) {
-      if (parentValue == null) {
-        logger.warning("Unknown instrumentable state for parent of thread: " + Thread.currentThread().getName());
-        parentValue = Boolean.TRUE;
-      }
+  /**
+   * The per-thread state that is read by {@link #isAllowed(String,String)} on
+   * every intercepted invocation. The state is held in a single mutable object
+   * with primitive fields, so that the hot path performs one
+   * {@code ThreadLocal} lookup and does not box.
+   */
+  static final class ThreadState {
+    final boolean instrumentable;
+    int entryCount;
+    String agentRuleClass;
 
-      if (!parentValue || Adapter.tracerClassLoader == null)
-        return parentValue;
+    ThreadState(final boolean instrumentable) {
+      this.instrumentable = instrumentable;
+    }
+  }
 
-      return !AgentRuleUtil.isFromClassLoader(AgentRuleUtil.getExecutionStack(), Adapter.tracerClassLoader);
+  static final InheritableThreadLocal<ThreadState> threadState = new InheritableThreadLocal<ThreadState>() {
+    @Override
+    protected ThreadState initialValue() {
+      logger.warning("Unknown instrumentable state for thread: " + Thread.currentThread().getName());
+      return new ThreadState(true);
     }
 
+    /**
+     * Returns the state of a thread that is being constructed by the current
+     * thread. A thread constructed by a thread that is not instrumentable, or
+     * while the current thread is executing tracer code (i.e. while the
+     * {@code entryCount} set by {@code TracerExclusionAgent} is non-zero), is a
+     * tracer thread, and is not instrumentable. The tracer code that constructs
+     * or runs threads of the tracer is marked by {@code TracerExclusionAgent},
+     * so this check is O(1), and does not inspect the call stack.
+     */
     @Override
-    public Boolean get() {
-      Boolean state = super.get();
-      if (state == null) {
-        logger.warning("Unknown instrumentable state for thread: " + Thread.currentThread().getName());
-        set(state = Boolean.TRUE);
-      }
-
-      return state;
+    protected ThreadState childValue(final ThreadState parentValue) {
+      return new ThreadState(parentValue.instrumentable && parentValue.entryCount == 0);
     }
   };
 
   private static final Logger logger = Logger.getLogger(AgentRule.class);
   private static final ThreadLocalCounter entryCounter = new ThreadLocalCounter();
-  private static final ThreadLocal<String> currentAgentRuleClass = new ThreadLocal<>();
   private static Map<String,String> classNameToName;
 
   public static String getCurrentPluginName() {
-    return classNameToName.get(currentAgentRuleClass.get());
+    return classNameToName.get(threadState.get().agentRuleClass);
   }
 
   public static boolean isVerbose(final String className) {
@@ -169,12 +188,13 @@ public abstract class AgentRule {
   }
 
   public static boolean isAllowed(final String className, final String origin) {
-    final boolean allowed = initialized && entryCounter.get() == 0 && isThreadInstrumentable.get();
+    final ThreadState state = threadState.get();
+    final boolean allowed = initialized && state.entryCount == 0 && state.instrumentable;
     if (allowed) {
       if (logger.isLoggable(Level.FINER))
         logger.finer("-------> Intercept [" + className.substring(className.lastIndexOf('.') + 1) + "@" + Thread.currentThread().getName() + "]: " + origin);
 
-      currentAgentRuleClass.set(className);
+      state.agentRuleClass = className;
     }
     else if (logger.isLoggable(Level.FINEST)) {
       logger.finest("-------> Intercept [" + className.substring(className.lastIndexOf('.') + 1) + "@" + Thread.currentThread().getName() + "] DROP: " + origin);
@@ -227,6 +247,27 @@ public abstract class AgentRule {
     return null;
   }
 
+  /**
+   * Callback method for the construction of {@link AgentBuilder} rules off of
+   * the provided {@link AgentBuilder} instance, for rules that also require
+   * the {@link Instrumentation} to install or reset transformations after the
+   * SpecialAgent is initialized.
+   * <p>
+   * The default implementation delegates to
+   * {@link #buildAgentUnchained(AgentBuilder)}, and the same considerations
+   * apply to the {@link AgentBuilder} instances returned by this method.
+   *
+   * @param builder The {@link AgentBuilder} to be used as the seed instance for
+   *          the returned {@link AgentBuilder} instances.
+   * @param inst The {@code Instrumentation}, or {@code null} if it is not
+   *          available.
+   * @return An array of {@link AgentBuilder} instances declaring
+   *         re/transformation rules.
+   */
+  public AgentBuilder[] buildAgentUnchained(final AgentBuilder builder, final Instrumentation inst) {
+    return buildAgentUnchained(builder);
+  }
+
   /**
    * Callback method for the construction of a single {@link AgentBuilder} rule
    * off of the provided {@link AgentBuilder} instance.
@@ -138,6 +138,9 @@ public final class AgentRuleUtil {
   /**
    * Tests whether the name of the method at the specified {@code frameIndex} in
    * the call stack matches the provided {@code name}.
+   * <p>
+   * Frame {@code 0} is the frame of the method calling this method. The call
+   * stack is evaluated lazily, and only up to the specified frame.
    *
    * @param frameIndex The index of the stack frame to check.
    * @param name The {@code className + "." + methodName} to match.
@@ -145,105 +148,85 @@ public final class AgentRuleUtil {
    *         {@code frameIndex} in the call stack matches the provided
    *         {@code name}; otherwise {@code false}.
    */
-  public static boolean callerEquals(int frameIndex, final String name) {
-    frameIndex += 2;
-    final StackTraceElement[] stackTraceElements = Thread.currentThread().getStackTrace();
-    if (stackTraceElements.length <= frameIndex)
-      return false;
-
-    final StackTraceElement stackTraceElement = stackTraceElements[frameIndex];
-    final String element = stackTraceElement.getClassName() + "." + stackTraceElement.getMethodName();
-    return element.equals(name);
+  public static boolean callerEquals(final int frameIndex, final String name) {
+    return CallStack.INSTANCE.contains(frameIndex, frameIndex + 1, false, new String[] {name});
   }
 
   /**
-   * Tests whether the name of the method at the specified {@code frameIndex} in
-   * the call stack matches the provided {@code name}.
+   * Tests whether the name of the method at any frame in
+   * {@code [startFrame, endFrame)} in the call stack matches the provided
+   * {@code name}.
+   * <p>
+   * Frame {@code 0} is the frame of the method calling this method. The call
+   * stack is evaluated lazily, and only up to the frame at which the name is
+   * matched, or to {@code endFrame}.
    *
    * @param startFrame The start index of the stack frame to check.
    * @param endFrame The end index (exclusive) of the stack frame to check.
    * @param name The {@code className + "." + methodName} to match.
-   * @return {@code true} if the name of the method at the specified
-   *         {@code frameIndex} in the call stack matches the provided
-   *         {@code name}; otherwise {@code false}.
+   * @return {@code true} if the name of the method at any frame in
+   *         {@code [startFrame, endFrame)} in the call stack matches the
+   *         provided {@code name}; otherwise {@code false}.
    */
-  public static boolean callerEquals(int startFrame, int endFrame, final String name) {
-    startFrame += 2;
-    endFrame += 2;
-
-    final StackTraceElement[] stackTraceElements = Thread.currentThread().getStackTrace();
-    if (stackTraceElements.length <= startFrame)
-      return false;
-
-    if (stackTraceElements.length < endFrame)
-      endFrame = stackTraceElements.length;
-
-    for (int i = startFrame; i < endFrame; ++i) {
-      final StackTraceElement stackTraceElement = stackTraceElements[i];
-      final String element = stackTraceElement.getClassName() + "." + stackTraceElement.getMethodName();
-      if (element.equals(name))
-        return true;
-    }
-
-    return false;
+  public static boolean callerEquals(final int startFrame, final int endFrame, final String name) {
+    return CallStack.INSTANCE.contains(startFrame, endFrame, false, new String[] {name});
   }
 
   /**
    * Tests whether the name of the method at the specified {@code frameIndex} in
-   * the call stack matches the provided {@code name}.
+   * the call stack matches any of the provided {@code names}.
+   * <p>
+   * Frame {@code 0} is the frame of the method calling this method. The call
+   * stack is evaluated lazily, and only up to the specified frame.
    *
    * @param frameIndex The index of the stack frame to check.
    * @param names The array of {@code className + "." + methodName} to match.
    * @return {@code true} if the name of the method at the specified
-   *         {@code frameIndex} in the call stack matches the provided
-   *         {@code name}; otherwise {@code false}.
+   *         {@code frameIndex} in the call stack matches any of the provided
+   *         {@code names}; otherwise {@code false}.
    */
-  public static boolean callerEquals(int frameIndex, final String ... names) {
-    frameIndex += 2;
-    final StackTraceElement[] stackTraceElements = Thread.currentThread().getStackTrace();
-    if (stackTraceElements.length <= frameIndex)
-      return false;
-
-    final StackTraceElement stackTraceElement = stackTraceElements[frameIndex];
-    final String element = stackTraceElement.getClassName() + "." + stackTraceElement.getMethodName();
-    for (int i = 0; i < names.length; ++i)
-      if (element.equals(names[i]))
-        return true;
-
-    return false;
+  public static boolean callerEquals(final int frameIndex, final String ... names) {
+    return CallStack.INSTANCE.contains(frameIndex, frameIndex + 1, false, names);
   }
 
   /**
-   * Tests whether the name of the method at the specified {@code frameIndex} in
-   * the call stack matches the provided {@code name}.
+   * Tests whether the name of the method at any frame in
+   * {@code [startFrame, endFrame)} in the call stack matches any of the
+   * provided {@code names}.
+   * <p>
+   * Frame {@code 0} is the frame of the method calling this method. The call
+   * stack is evaluated lazily, and only up to the frame at which a name is
+   * matched, or to {@code endFrame}.
    *
    * @param startFrame The start index of the stack frame to check.
    * @param endFrame The end index (exclusive) of the stack frame to check.
    * @param names The array of {@code className + "." + methodName} to match.
-   * @return {@code true} if the name of the method at the specified
-   *         {@code frameIndex} in the call stack matches the provided
-   *         {@code name}; otherwise {@code false}.
+   * @return {@code true} if the name of the method at any frame in
+   *         {@code [startFrame, endFrame)} in the call stack matches any of the
+   *         provided {@code names}; otherwise {@code false}.
    */
-  public static boolean callerEquals(int startFrame, int endFrame, final String ...  names) {
-    startFrame += 2;
-    endFrame += 2;
-
-    final StackTraceElement[] stackTraceElements = Thread.currentThread().getStackTrace();
-    if (stackTraceElements.length <= startFrame)
-      return false;
-
-    if (stackTraceElements.length < endFrame)
-      endFrame = stackTraceElements.length;
-
-    for (int i = startFrame; i < endFrame; ++i) {
-      final StackTraceElement stackTraceElement = stackTraceElements[i];
-      final String element = stackTraceElement.getClassName() + "." + stackTraceElement.getMethodName();
-      for (int j = 0; j < names.length; ++j)
-        if (element.equals(names[j]))
-          return true;
-    }
+  public static boolean callerEquals(final int startFrame, final int endFrame, final String ... names) {
+    return CallStack.INSTANCE.contains(startFrame, endFrame, false, names);
+  }
 
-    return false;
+  /**
+   * Tests whether the class of the method at any frame in
+   * {@code [startFrame, endFrame)} in the call stack matches any of the
+   * provided {@code classNames}.
+   * <p>
+   * Frame {@code 0} is the frame of the method calling this method. The call
+   * stack is evaluated lazily, and only up to the frame at which a class name
+   * is matched, or to {@code endFrame}.
+   *
+   * @param startFrame The start index of the stack frame to check.
+   * @param endFrame The end index (exclusive) of the stack frame to check.
+   * @param classNames The array of class names to match.
+   * @return {@code true} if the class of the method at any frame in
+   *         {@code [startFrame, endFrame)} in the call stack matches any of the
+   *         provided {@code classNames}; otherwise {@code false}.
+   */
+  public static boolean callerClassEquals(final int startFrame, final int endFrame, final String ... classNames) {
+    return CallStack.INSTANCE.contains(startFrame, endFrame, true, classNames);
   }
 
   /**
@@ -308,6 +291,42 @@ public final class AgentRuleUtil {
     return false;
   }
 
+  /**
+   * Returns a wrapper of the specified object that implements all interfaces
+   * of the object, and delegates the methods of the interfaces implemented by
+   * the specified tracing wrapper to the tracing wrapper, and all other methods
+   * to the object. This method has the semantics of
+   * {@code io.opentracing.contrib.common.WrapperProxy#wrap(Object,Object)},
+   * but returns an instance of a concrete class that is generated once for
+   * each pair of object class and tracing wrapper class, instead of a
+   * {@link java.lang.reflect.Proxy}.
+   *
+   * @param <T> The type parameter of the object.
+   * @param obj The object to wrap.
+   * @param wrapper The tracing wrapper.
+   * @return A wrapper of the specified object, or the specified tracing
+   *         wrapper if {@code obj} is null or the same as {@code wrapper}.
+   */
+  public static <T>T wrap(final T obj, final T wrapper) {
+    return WrapperFactory.wrap(obj, wrapper);
+  }
+
+  /**
+   * Tests whether the specified object is a wrapper returned by
+   * {@link #wrap(Object,Object)} with a tracing wrapper of the specified
+   * class.
+   *
+   * @param obj The object to test.
+   * @param wrapperClass The class of the tracing wrapper, or {@code null} to
+   *          match a tracing wrapper of any class.
+   * @return {@code true} if the specified object is a wrapper returned by
+   *         {@link #wrap(Object,Object)} with a tracing wrapper of the
+   *         specified class; otherwise {@code false}.
+   */
+  public static boolean isWrapper(final Object obj, final Class<?> wrapperClass) {
+    return obj != null && WrapperFactory.isWrapper(obj, wrapperClass);
+  }
+
   /**
    * Returns an array of {@code URL} objects representing each path entry in the
    * specified {@code classpath}.
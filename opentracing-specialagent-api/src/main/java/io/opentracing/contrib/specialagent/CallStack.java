@@ -0,0 +1,255 @@
+/* Copyright 2020 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.opentracing.contrib.specialagent;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.Iterator;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+/**
+ * Inspector of the frames of the call stack of the current thread, which
+ * evaluates frames lazily, and only up to the requested depth.
+ * <p>
+ * On Java 9 and above, the frames are walked with {@code StackWalker}. On Java
+ * 8, the frames of a {@link Throwable} are read one by one with
+ * {@code sun.misc.JavaLangAccess}, which avoids the creation of a
+ * {@link StackTraceElement} for each frame. Otherwise, the frames are read
+ * from {@link Throwable#getStackTrace()}.
+ * <p>
+ * Frame {@code 0} is the first frame that does not belong to
+ * {@link AgentRuleUtil} or {@link CallStack}, that is, the frame of the method
+ * that called the {@link AgentRuleUtil} method.
+ */
+abstract class CallStack {
+  private static final String AGENT_RULE_UTIL = AgentRuleUtil.class.getName();
+  private static final String CALL_STACK = CallStack.class.getName();
+  private static final String CALL_STACK_NESTED = CALL_STACK + "$";
+  static final CallStack INSTANCE;
+
+  static {
+    CallStack callStack;
+    try {
+      callStack = new StackWalkerCallStack();
+    }
+    catch (final Throwable t) {
+      try {
+        callStack = new JavaLangAccessCallStack();
+      }
+      catch (final Throwable t2) {
+        callStack = new ThrowableCallStack();
+      }
+    }
+
+    INSTANCE = callStack;
+  }
+
+  private static boolean isInternal(final String className) {
+    return className.equals(AGENT_RULE_UTIL) || className.equals(CALL_STACK) || className.startsWith(CALL_STACK_NESTED);
+  }
+
+  /**
+   * Tests whether a frame matches any of the specified names.
+   *
+   * @param className The class name of the frame.
+   * @param methodName The method name of the frame.
+   * @param classOnly If {@code true}, the names are class names; otherwise the
+   *          names are {@code className + "." + methodName}.
+   * @param names The names to match.
+   * @return Whether the frame matches any of the specified names.
+   */
+  static boolean matches(final String className, final String methodName, final boolean classOnly, final String[] names) {
+    final int len = className.length();
+    for (final String name : names) {
+      if (classOnly) {
+        if (className.equals(name))
+          return true;
+      }
+      else if (name.length() == len + 1 + methodName.length() && name.charAt(len) == '.' && name.startsWith(className) && name.endsWith(methodName)) {
+        return true;
+      }
+    }
+
+    return false;
+  }
+
+  /**
+   * Tests whether a frame with an index in {@code [startFrame, endFrame)}
+   * matches any of the specified names.
+   *
+   * @param startFrame The start index of the frames to check.
+   * @param endFrame The end index (exclusive) of the frames to check.
+   * @param classOnly If {@code true}, the names are class names; otherwise the
+   *          names are {@code className + "." + methodName}.
+   * @param names The names to match.
+   * @return Whether a frame with an index in {@code [startFrame, endFrame)}
+   *         matches any of the specified names.
+   */
+  abstract boolean contains(int startFrame, int endFrame, boolean classOnly, String[] names);
+
+  /**
+   * Frame matcher for {@code StackWalker#walk(Function)}. This class references
+   * {@code StackWalker} (Java 9+), via the method handles of
+   * {@link StackWalkerCallStack}, and is therefore only loaded on Java 9+.
+   */
+  private static final class FrameMatcher implements Function<Stream<?>,Boolean> {
+    private final int startFrame;
+    private final int endFrame;
+    private final boolean classOnly;
+    private final String[] names;
+
+    private FrameMatcher(final int startFrame, final int endFrame, final boolean classOnly, final String[] names) {
+      this.startFrame = startFrame;
+      this.endFrame = endFrame;
+      this.classOnly = classOnly;
+      this.names = names;
+    }
+
+    @Override
+    public Boolean apply(final Stream<?> frames) {
+      try {
+        final Iterator<?> iterator = frames.iterator();
+        int index = -1;
+        while (iterator.hasNext()) {
+          final Object frame = iterator.next();
+          final String className = (String)StackWalkerCallStack.getClassName.invoke(frame);
+          if (index == -1 && isInternal(className))
+            continue;
+
+          if (++index < startFrame)
+            continue;
+
+          if (index >= endFrame)
+            return Boolean.FALSE;
+
+          if (matches(className, (String)StackWalkerCallStack.getMethodName.invoke(frame), classOnly, names))
+            return Boolean.TRUE;
+        }
+
+        return Boolean.FALSE;
+      }
+      catch (final RuntimeException | Error e) {
+        throw e;
+      }
+      catch (final Throwable t) {
+        throw new IllegalStateException(t);
+      }
+    }
+  }
+
+  static final class StackWalkerCallStack extends CallStack {
+    private static final Object stackWalker;
+    private static final MethodHandle walk;
+    private static final MethodHandle getClassName;
+    private static final MethodHandle getMethodName;
+
+    static {
+      try {
+        // StackWalker#walk(Function) is caller sensitive, and cannot be looked
+        // up with MethodHandles.publicLookup()
+        final MethodHandles.Lookup lookup = MethodHandles.lookup();
+        final Class<?> stackWalkerClass = Class.forName("java.lang.StackWalker");
+        final Class<?> stackFrameClass = Class.forName("java.lang.StackWalker$StackFrame");
+        // Reflection frames are shown, as they are in the frames of a Throwable
+        // that are read by the other implementations
+        final Class<?> optionClass = Class.forName("java.lang.StackWalker$Option");
+        stackWalker = stackWalkerClass.getMethod("getInstance", optionClass).invoke(null, optionClass.getField("SHOW_REFLECT_FRAMES").get(null));
+        walk = lookup.findVirtual(stackWalkerClass, "walk", MethodType.methodType(Object.class, Function.class)).bindTo(stackWalker);
+        getClassName = lookup.findVirtual(stackFrameClass, "getClassName", MethodType.methodType(String.class));
+        getMethodName = lookup.findVirtual(stackFrameClass, "getMethodName", MethodType.methodType(String.class));
+      }
+      catch (final Exception e) {
+        throw new ExceptionInInitializerError(e);
+      }
+    }
+
+    @Override
+    boolean contains(final int startFrame, final int endFrame, final boolean classOnly, final String[] names) {
+      try {
+        return (Boolean)walk.invoke(new FrameMatcher(startFrame, endFrame, classOnly, names));
+      }
+      catch (final RuntimeException | Error e) {
+        throw e;
+      }
+      catch (final Throwable t) {
+        throw new IllegalStateException(t);
+      }
+    }
+  }
+
+  static final class JavaLangAccessCallStack extends CallStack {
+    private static final MethodHandle getStackTraceDepth;
+    private static final MethodHandle getStackTraceElement;
+
+    static {
+      try {
+        final MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+        final Object javaLangAccess = Class.forName("sun.misc.SharedSecrets").getMethod("getJavaLangAccess").invoke(null);
+        final Class<?> javaLangAccessClass = Class.forName("sun.misc.JavaLangAccess");
+        getStackTraceDepth = lookup.findVirtual(javaLangAccessClass, "getStackTraceDepth", MethodType.methodType(int.class, Throwable.class)).bindTo(javaLangAccess);
+        getStackTraceElement = lookup.findVirtual(javaLangAccessClass, "getStackTraceElement", MethodType.methodType(StackTraceElement.class, Throwable.class, int.class)).bindTo(javaLangAccess);
+      }
+      catch (final Exception e) {
+        throw new ExceptionInInitializerError(e);
+      }
+    }
+
+    @Override
+    boolean contains(final int startFrame, final int endFrame, final boolean classOnly, final String[] names) {
+      try {
+        final Throwable throwable = new Throwable();
+        final int depth = (int)getStackTraceDepth.invokeExact(throwable);
+        int i = 0;
+        while (i < depth && isInternal(((StackTraceElement)getStackTraceElement.invokeExact(throwable, i)).getClassName()))
+          ++i;
+
+        final int end = endFrame > depth - i ? depth : i + endFrame;
+        for (i += startFrame; i < end; ++i) {
+          final StackTraceElement element = (StackTraceElement)getStackTraceElement.invokeExact(throwable, i);
+          if (matches(element.getClassName(), element.getMethodName(), classOnly, names))
+            return true;
+        }
+
+        return false;
+      }
+      catch (final RuntimeException | Error e) {
+        throw e;
+      }
+      catch (final Throwable t) {
+        throw new IllegalStateException(t);
+      }
+    }
+  }
+
+  static final class ThrowableCallStack extends CallStack {
+    @Override
+    boolean contains(final int startFrame, final int endFrame, final boolean classOnly, final String[] names) {
+      final StackTraceElement[] elements = new Throwable().getStackTrace();
+      int i = 0;
+      while (i < elements.length && isInternal(elements[i].getClassName()))
+        ++i;
+
+      final int end = endFrame > elements.length - i ? elements.length : i + endFrame;
+      for (i += startFrame; i < end; ++i)
+        if (matches(elements[i].getClassName(), elements[i].getMethodName(), classOnly, names))
+          return true;
+
+      return false;
+    }
+  }
+}
\ No newline at end of file
@@ -15,9 +15,33 @@
 
 package io.opentracing.contrib.specialagent;
 
-public class ThreadLocalCounter extends ThreadLocal<Integer> {
-  @Override
-  protected Integer initialValue() {
-    return 0;
+/**
+ * A per-thread entry counter, backed by the primitive {@code entryCount}
+ * field of {@link AgentRule.ThreadState}, so that it shares the single
+ * {@code ThreadLocal} lookup with {@link AgentRule#isAllowed(String,String)}.
+ */
+public class ThreadLocalCounter {
+  ThreadLocalCounter() {
+  }
+
+  /**
+   * @return The value of the counter for the current thread.
+   */
+  public int get() {
+    return AgentRule.threadState.get().entryCount;
+  }
+
+  /**
+   * Increments the counter for the current thread.
+   */
+  public void increment() {
+    ++AgentRule.threadState.get().entryCount;
+  }
+
+  /**
+   * Decrements the counter for the current thread.
+   */
+  public void decrement() {
+    --AgentRule.threadState.get().entryCount;
   }
 }
\ No newline at end of file
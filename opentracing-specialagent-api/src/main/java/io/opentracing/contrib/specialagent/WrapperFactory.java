@@ -0,0 +1,327 @@
+/* Copyright 2020 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.opentracing.contrib.specialagent;
+
+import static net.bytebuddy.matcher.ElementMatchers.*;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.bytebuddy.ByteBuddy;
+import net.bytebuddy.description.field.FieldDescription;
+import net.bytebuddy.description.method.MethodDescription;
+import net.bytebuddy.description.modifier.FieldManifestation;
+import net.bytebuddy.description.modifier.TypeManifestation;
+import net.bytebuddy.description.modifier.Visibility;
+import net.bytebuddy.dynamic.DynamicType;
+import net.bytebuddy.dynamic.loading.ClassLoadingStrategy;
+import net.bytebuddy.dynamic.scaffold.InstrumentedType;
+import net.bytebuddy.dynamic.scaffold.TypeValidation;
+import net.bytebuddy.dynamic.scaffold.subclass.ConstructorStrategy;
+import net.bytebuddy.implementation.FieldAccessor;
+import net.bytebuddy.implementation.Implementation;
+import net.bytebuddy.implementation.MethodCall;
+import net.bytebuddy.implementation.bytecode.ByteCodeAppender;
+import net.bytebuddy.implementation.bytecode.assign.TypeCasting;
+import net.bytebuddy.implementation.bytecode.member.FieldAccess;
+import net.bytebuddy.implementation.bytecode.member.MethodInvocation;
+import net.bytebuddy.implementation.bytecode.member.MethodReturn;
+import net.bytebuddy.implementation.bytecode.member.MethodVariableAccess;
+
+/**
+ * Factory of wrappers that implement all interfaces of an object, and delegate
+ * the methods of the interfaces that are implemented by a tracing wrapper to
+ * the tracing wrapper, and all other methods to the object. The semantics are
+ * those of {@code io.opentracing.contrib.common.WrapperProxy}, but instead of
+ * a {@link Proxy} that dispatches each method reflectively, a concrete class is
+ * generated (and cached) for each pair of object class and tracing wrapper
+ * class, such that the calls to a wrapper are monomorphic.
+ * <p>
+ * If a concrete class cannot be generated (i.e. an interface is not public,
+ * or the tracing wrapper declares a method of an interface that it does not
+ * implement), a {@link Proxy} is created instead.
+ * <p>
+ * The constructor of each generated class is cached as a {@link MethodHandle}
+ * in a {@link ClassValue} of the object class, which belongs to a
+ * {@link ClassValue} of the tracing wrapper class. The generated class is
+ * defined in a child of the class loader of the object class, and does not
+ * reference the tracing wrapper class, so that neither class loader is
+ * retained by the cache of the other.
+ */
+final class WrapperFactory {
+  private static final Logger logger = Logger.getLogger(WrapperFactory.class);
+  private static final String PREFIX = WrapperFactory.class.getName() + "$Wrapper$";
+  private static final AtomicInteger nextId = new AtomicInteger();
+  private static final ByteBuddy byteBuddy = new ByteBuddy().with(TypeValidation.DISABLED);
+
+  private static final MethodType CONSTRUCTOR_TYPE = MethodType.methodType(Object.class, Object.class, Object.class);
+
+  /**
+   * The constructors of the generated classes, keyed by tracing wrapper class
+   * and then by object class. A {@code null} constructor signifies that a
+   * {@link Proxy} is created for the pair.
+   */
+  private static final ClassValue<ClassValue<MethodHandle>> wrapperClassToConstructors = new ClassValue<ClassValue<MethodHandle>>() {
+    @Override
+    protected ClassValue<MethodHandle> computeValue(final Class<?> wrapperClass) {
+      return new ClassValue<MethodHandle>() {
+        @Override
+        protected MethodHandle computeValue(final Class<?> objClass) {
+          return generate(objClass, wrapperClass);
+        }
+      };
+    }
+  };
+
+  private static final ClassValue<Field> wrapperFields = new ClassValue<Field>() {
+    @Override
+    protected Field computeValue(final Class<?> type) {
+      if (!type.getName().startsWith(PREFIX))
+        return null;
+
+      try {
+        final Field field = type.getDeclaredField("wrapper");
+        field.setAccessible(true);
+        return field;
+      }
+      catch (final NoSuchFieldException e) {
+        return null;
+      }
+    }
+  };
+
+  private WrapperFactory() {
+  }
+
+  @SuppressWarnings("unchecked")
+  static <T>T wrap(final T obj, final T wrapper) {
+    if (obj == null || wrapper == null || obj == wrapper)
+      return wrapper;
+
+    final Class<?> objClass = obj.getClass();
+    final MethodHandle constructor = wrapperClassToConstructors.get(wrapper.getClass()).get(objClass);
+    if (constructor == null)
+      return (T)Proxy.newProxyInstance(objClass.getClassLoader(), getAllInterfaces(objClass), new WrapperInvocationHandler(obj, wrapper));
+
+    try {
+      return (T)(Object)constructor.invokeExact((Object)obj, (Object)wrapper);
+    }
+    catch (final RuntimeException | Error e) {
+      throw e;
+    }
+    catch (final Throwable t) {
+      throw new IllegalStateException(t);
+    }
+  }
+
+  static boolean isWrapper(final Object obj, final Class<?> wrapperClass) {
+    final Object wrapper;
+    final Field field = wrapperFields.get(obj.getClass());
+    if (field != null) {
+      try {
+        wrapper = field.get(obj);
+      }
+      catch (final IllegalAccessException e) {
+        throw new IllegalStateException(e);
+      }
+    }
+    else if (Proxy.isProxyClass(obj.getClass()) && Proxy.getInvocationHandler(obj) instanceof WrapperInvocationHandler) {
+      wrapper = ((WrapperInvocationHandler)Proxy.getInvocationHandler(obj)).wrapper;
+    }
+    else {
+      return false;
+    }
+
+    return wrapperClass == null || wrapperClass.isInstance(wrapper);
+  }
+
+  private static void addInterfaces(final Class<?> cls, final LinkedHashSet<Class<?>> interfaces) {
+    for (final Class<?> i : cls.getInterfaces())
+      if (interfaces.add(i))
+        addInterfaces(i, interfaces);
+  }
+
+  private static Class<?>[] getAllInterfaces(Class<?> cls) {
+    final LinkedHashSet<Class<?>> interfaces = new LinkedHashSet<>();
+    do
+      addInterfaces(cls, interfaces);
+    while ((cls = cls.getSuperclass()) != null);
+    return interfaces.toArray(new Class<?>[interfaces.size()]);
+  }
+
+  private static boolean isObjectMethod(final Method method) {
+    try {
+      Object.class.getMethod(method.getName(), method.getParameterTypes());
+      return true;
+    }
+    catch (final NoSuchMethodException e) {
+      return false;
+    }
+  }
+
+  private static Method getDeclaredMethodDeep(Class<?> cls, final String name, final Class<?>[] parameterTypes) {
+    do {
+      try {
+        return cls.getDeclaredMethod(name, parameterTypes);
+      }
+      catch (final NoSuchMethodException e) {
+      }
+    }
+    while ((cls = cls.getSuperclass()) != null);
+    return null;
+  }
+
+  /**
+   * Returns the constructor of a new concrete wrapper class for the specified
+   * object class and tracing wrapper class, or {@code null} if a concrete
+   * wrapper class cannot be generated.
+   */
+  private static MethodHandle generate(final Class<?> objClass, final Class<?> wrapperClass) {
+    final Class<?>[] interfaces = getAllInterfaces(objClass);
+    final LinkedHashMap<String,Method> signatureToMethod = new LinkedHashMap<>();
+    final HashMap<String,Boolean> signatureToWrapper = new HashMap<>();
+    for (final Class<?> i : interfaces) {
+      if (!Modifier.isPublic(i.getModifiers()))
+        return null;
+
+      for (final Method method : i.getMethods()) {
+        if (Modifier.isStatic(method.getModifiers()) || isObjectMethod(method))
+          continue;
+
+        final String signature = method.getName() + Arrays.toString(method.getParameterTypes());
+        final boolean toWrapper = method.getDeclaringClass().isAssignableFrom(wrapperClass);
+        if (!toWrapper && getDeclaredMethodDeep(wrapperClass, method.getName(), method.getParameterTypes()) != null)
+          return null;
+
+        if (!signatureToMethod.containsKey(signature) || toWrapper && !signatureToWrapper.get(signature)) {
+          signatureToMethod.put(signature, method);
+          signatureToWrapper.put(signature, toWrapper);
+        }
+      }
+    }
+
+    try {
+      DynamicType.Builder<?> builder = byteBuddy
+        .subclass(Object.class, ConstructorStrategy.Default.NO_CONSTRUCTORS)
+        .name(PREFIX + nextId.getAndIncrement())
+        .modifiers(Visibility.PUBLIC, TypeManifestation.FINAL)
+        .implement(interfaces)
+        .defineField("obj", Object.class, Visibility.PRIVATE, FieldManifestation.FINAL)
+        .defineField("wrapper", Object.class, Visibility.PRIVATE, FieldManifestation.FINAL)
+        .defineConstructor(Visibility.PUBLIC)
+        .withParameters(Object.class, Object.class)
+        .intercept(MethodCall.invoke(Object.class.getConstructor()).andThen(FieldAccessor.ofField("obj").setsArgumentAt(0)).andThen(FieldAccessor.ofField("wrapper").setsArgumentAt(1)));
+
+      // As per Proxy, the methods of Object are invoked on the tracing wrapper
+      builder = builder
+        .method(isEquals().or(isHashCode()).or(isToString()))
+        .intercept(MethodCall.invokeSelf().onField("wrapper").withAllArguments());
+
+      for (final Map.Entry<String,Method> entry : signatureToMethod.entrySet()) {
+        final Method method = entry.getValue();
+        builder = builder
+          .method(named(method.getName()).and(takesArguments(method.getParameterTypes())))
+          .intercept(new Delegation(method, signatureToWrapper.get(entry.getKey()) ? "wrapper" : "obj"));
+      }
+
+      final Class<?> cls = builder.make().load(objClass.getClassLoader(), ClassLoadingStrategy.Default.WRAPPER).getLoaded();
+      return MethodHandles.publicLookup().unreflectConstructor(cls.getConstructor(Object.class, Object.class)).asType(CONSTRUCTOR_TYPE);
+    }
+    catch (final Exception | LinkageError e) {
+      if (logger.isLoggable(Level.FINE))
+        logger.log(Level.FINE, "Unable to generate wrapper of " + objClass.getName() + " with " + wrapperClass.getName(), e);
+
+      return null;
+    }
+  }
+
+  /**
+   * An {@link Implementation} that invokes an interface method on the object
+   * in a field of type {@link Object}, which is cast to the interface.
+   */
+  private static final class Delegation implements Implementation {
+    private final MethodDescription method;
+    private final String fieldName;
+
+    private Delegation(final Method method, final String fieldName) {
+      this.method = new MethodDescription.ForLoadedMethod(method);
+      this.fieldName = fieldName;
+    }
+
+    @Override
+    public InstrumentedType prepare(final InstrumentedType instrumentedType) {
+      return instrumentedType;
+    }
+
+    @Override
+    public ByteCodeAppender appender(final Target target) {
+      final FieldDescription field = target.getInstrumentedType().getDeclaredFields().filter(named(fieldName)).getOnly();
+      return new ByteCodeAppender.Simple(
+        MethodVariableAccess.loadThis(),
+        FieldAccess.forField(field).read(),
+        TypeCasting.to(method.getDeclaringType()),
+        MethodVariableAccess.allArgumentsOf(method),
+        MethodInvocation.invoke(method),
+        MethodReturn.of(method.getReturnType()));
+    }
+  }
+
+  /**
+   * The {@link InvocationHandler} of a {@link Proxy} wrapper, as per
+   * {@code io.opentracing.contrib.common.WrapperProxy}.
+   */
+  private static final class WrapperInvocationHandler implements InvocationHandler {
+    private final Object obj;
+    private final Object wrapper;
+
+    private WrapperInvocationHandler(final Object obj, final Object wrapper) {
+      this.obj = obj;
+      this.wrapper = wrapper;
+    }
+
+    @Override
+    public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
+      try {
+        if (method.getDeclaringClass().isAssignableFrom(wrapper.getClass()))
+          return method.invoke(wrapper, args);
+
+        final Method wrapperMethod = getDeclaredMethodDeep(wrapper.getClass(), method.getName(), method.getParameterTypes());
+        if (wrapperMethod != null) {
+          wrapperMethod.setAccessible(true);
+          return wrapperMethod.invoke(wrapper, args);
+        }
+
+        return method.invoke(obj, args);
+      }
+      catch (final InvocationTargetException e) {
+        throw e.getCause();
+      }
+    }
+  }
+}
\ No newline at end of file
@@ -0,0 +1,116 @@
+/* Copyright 2020 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.opentracing.contrib.specialagent;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Measures the per-call overhead of {@link AgentRule#isAllowed(String,String)}
+ * against the previous implementation, which read three separate
+ * {@code ThreadLocal}s holding boxed values.
+ * <p>
+ * Run with: {@code mvn test-compile exec:exec -Dexec.executable=java
+ * -Dexec.classpathScope=test
+ * -Dexec.args="-cp %classpath io.opentracing.contrib.specialagent.AgentRuleBenchmark"}
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AgentRuleBenchmark {
+  private static final String className = AgentRuleBenchmark.class.getName();
+  private static final String origin = "public void io.opentracing.contrib.specialagent.AgentRuleBenchmark.isAllowed()";
+
+  /**
+   * The implementation of {@link AgentRule#isAllowed(String,String)} prior to
+   * the introduction of {@link AgentRule.ThreadState}.
+   */
+  static class Previous {
+    private static final ThreadLocal<Boolean> isThreadInstrumentable = new InheritableThreadLocal<Boolean>() {
+      @Override
+      protected Boolean initialValue() {
+        return Boolean.TRUE;
+      }
+    };
+
+    private static final ThreadLocal<Integer> entryCounter = new ThreadLocal<Integer>() {
+      @Override
+      protected Integer initialValue() {
+        return 0;
+      }
+    };
+
+    private static final ThreadLocal<String> currentAgentRuleClass = new ThreadLocal<>();
+    private static final Logger logger = Logger.getLogger(Previous.class);
+
+    static boolean isAllowed(final String className, final String origin) {
+      final boolean allowed = entryCounter.get() == 0 && isThreadInstrumentable.get();
+      if (allowed) {
+        if (logger.isLoggable(Level.FINER))
+          logger.finer("-------> Intercept [" + className.substring(className.lastIndexOf('.') + 1) + "@" + Thread.currentThread().getName() + "]: " + origin);
+
+        currentAgentRuleClass.set(className);
+      }
+      else if (logger.isLoggable(Level.FINEST)) {
+        logger.finest("-------> Intercept [" + className.substring(className.lastIndexOf('.') + 1) + "@" + Thread.currentThread().getName() + "] DROP: " + origin);
+      }
+
+      return allowed;
+    }
+  }
+
+  @Setup
+  public void setup() {
+    AgentRule.$Access.configure(null, Collections.singletonMap(className, "benchmark"));
+    AgentRule.$Access.load();
+    AgentRule.$Access.init();
+  }
+
+  @Benchmark
+  public boolean previous() {
+    return Previous.isAllowed(className, origin);
+  }
+
+  @Benchmark
+  public boolean current() {
+    return AgentRule.isAllowed(className, origin);
+  }
+
+  public static void main(final String[] args) throws RunnerException {
+    new Runner(new OptionsBuilder()
+      .include(AgentRuleBenchmark.class.getSimpleName())
+      .addProfiler(GCProfiler.class)
+      .build()).run();
+  }
+}
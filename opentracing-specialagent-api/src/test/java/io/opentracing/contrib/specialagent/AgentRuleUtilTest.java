@@ -17,9 +17,123 @@ package io.opentracing.contrib.specialagent;
 
 import static org.junit.Assert.*;
 
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+
 import org.junit.Test;
 
 public class AgentRuleUtilTest {
+  private static final String className = AgentRuleUtilTest.class.getName();
+  private static final String testCallStack = className + ".testCallStack";
+
+  private static boolean containsFromFrame1(final CallStack callStack, final String name) {
+    return callStack.contains(1, 2, false, new String[] {name});
+  }
+
+  @Test
+  public void testCallStack() {
+    final List<CallStack> callStacks = new ArrayList<>();
+    callStacks.add(new CallStack.ThrowableCallStack());
+    try {
+      callStacks.add(new CallStack.JavaLangAccessCallStack());
+    }
+    catch (final Throwable t) {
+    }
+
+    try {
+      callStacks.add(new CallStack.StackWalkerCallStack());
+    }
+    catch (final Throwable t) {
+    }
+
+    for (final CallStack callStack : callStacks) {
+      final String message = callStack.getClass().getSimpleName();
+      assertTrue(message, callStack.contains(0, 1, false, new String[] {"a.b", testCallStack}));
+      assertFalse(message, callStack.contains(1, 2, false, new String[] {testCallStack}));
+      assertFalse(message, callStack.contains(1, Integer.MAX_VALUE, false, new String[] {testCallStack}));
+      assertTrue(message, callStack.contains(0, Integer.MAX_VALUE, true, new String[] {className}));
+      assertFalse(message, callStack.contains(0, 1, false, new String[] {className + ".testCallStac"}));
+      assertFalse(message, callStack.contains(0, Integer.MAX_VALUE, false, new String[] {"no.such.Class.method"}));
+      assertTrue(message, containsFromFrame1(callStack, testCallStack));
+    }
+
+    assertTrue(AgentRuleUtil.callerEquals(0, testCallStack));
+    assertTrue(AgentRuleUtil.callerEquals(0, 10, testCallStack));
+    assertFalse(AgentRuleUtil.callerEquals(1, 10, testCallStack));
+    assertTrue(AgentRuleUtil.callerClassEquals(0, 1, className));
+  }
+
+  public static class Task implements Runnable, Comparable<Task> {
+    @Override
+    public void run() {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public int compareTo(final Task o) {
+      return 7;
+    }
+  }
+
+  interface Hidden {
+    String hidden();
+  }
+
+  public static class HiddenTask extends Task implements Hidden {
+    @Override
+    public String hidden() {
+      return "hidden";
+    }
+  }
+
+  public static class TracedRunnable implements Runnable {
+    private final Runnable runnable;
+    private int runs;
+
+    public TracedRunnable(final Runnable runnable) {
+      this.runnable = runnable;
+    }
+
+    @Override
+    public void run() {
+      ++runs;
+    }
+
+    @Override
+    public String toString() {
+      return "traced " + runnable.getClass().getSimpleName();
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private static void assertWrapper(final Runnable obj, final boolean proxy) {
+    final TracedRunnable traced = new TracedRunnable(obj);
+    final Runnable wrapped = AgentRuleUtil.wrap(obj, traced);
+    assertEquals(proxy, Proxy.isProxyClass(wrapped.getClass()));
+    assertTrue(AgentRuleUtil.isWrapper(wrapped, TracedRunnable.class));
+    assertTrue(AgentRuleUtil.isWrapper(wrapped, null));
+    assertFalse(AgentRuleUtil.isWrapper(wrapped, Task.class));
+    assertFalse(AgentRuleUtil.isWrapper(obj, null));
+
+    wrapped.run();
+    assertEquals(1, traced.runs);
+    assertEquals(7, ((Comparable<Task>)wrapped).compareTo(null));
+    assertEquals(traced.toString(), wrapped.toString());
+    assertEquals(wrapped.getClass(), AgentRuleUtil.wrap(obj, new TracedRunnable(obj)).getClass());
+  }
+
+  @Test
+  public void testWrap() {
+    assertWrapper(new Task(), false);
+    assertWrapper(new HiddenTask(), true);
+    assertEquals("hidden", ((Hidden)AgentRuleUtil.wrap((Runnable)new HiddenTask(), new TracedRunnable(null))).hidden());
+
+    final TracedRunnable traced = new TracedRunnable(null);
+    assertSame(traced, AgentRuleUtil.wrap(null, traced));
+    assertSame(traced, AgentRuleUtil.wrap(traced, traced));
+  }
+
   @Test
   public void testSubArray() {
     try {
@@ -0,0 +1,122 @@
+/* Copyright 2020 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.opentracing.contrib.specialagent;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Measures the cost of {@link AgentRuleUtil#callerEquals(int,int,String)}
+ * against the previous implementation, which materialized the full call stack
+ * with {@link Thread#getStackTrace()} and concatenated the class and method
+ * name of each frame. The {@code bounded} benchmarks check frames
+ * {@code [2, 10)}, as is done by the Integration Rules, and the {@code full}
+ * benchmarks check the entire call stack, as is done by
+ * {@code SpecialAgent#linkRule}. Neither finds a match, which is the common
+ * case. The {@code depth} parameter adds frames to the call stack.
+ * <p>
+ * Run with: {@code mvn test-compile exec:exec -Dexec.executable=java
+ * -Dexec.classpathScope=test
+ * -Dexec.args="-cp %classpath io.opentracing.contrib.specialagent.CallStackBenchmark"}
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CallStackBenchmark {
+  private static final String name = ClassLoader.class.getName() + ".defineClass";
+
+  /**
+   * The implementation of {@link AgentRuleUtil#callerEquals(int,int,String)}
+   * prior to the introduction of {@link CallStack}.
+   */
+  static class Previous {
+    static boolean callerEquals(int startFrame, int endFrame, final String name) {
+      startFrame += 2;
+      endFrame += 2;
+
+      final StackTraceElement[] stackTraceElements = Thread.currentThread().getStackTrace();
+      if (stackTraceElements.length <= startFrame)
+        return false;
+
+      if (stackTraceElements.length < endFrame)
+        endFrame = stackTraceElements.length;
+
+      for (int i = startFrame; i < endFrame; ++i) {
+        final StackTraceElement stackTraceElement = stackTraceElements[i];
+        final String element = stackTraceElement.getClassName() + "." + stackTraceElement.getMethodName();
+        if (element.equals(name))
+          return true;
+      }
+
+      return false;
+    }
+  }
+
+  @Param({"0", "50"})
+  public int depth;
+
+  private static boolean previous(final int depth, final int endFrame) {
+    return depth == 0 ? Previous.callerEquals(2, endFrame, name) : previous(depth - 1, endFrame);
+  }
+
+  private static boolean current(final int depth, final int endFrame) {
+    return depth == 0 ? AgentRuleUtil.callerEquals(2, endFrame, name) : current(depth - 1, endFrame);
+  }
+
+  @Benchmark
+  public boolean previousBounded() {
+    return previous(depth, 10);
+  }
+
+  @Benchmark
+  public boolean currentBounded() {
+    return current(depth, 10);
+  }
+
+  @Benchmark
+  public boolean previousFull() {
+    return previous(depth, Integer.MAX_VALUE);
+  }
+
+  @Benchmark
+  public boolean currentFull() {
+    return current(depth, Integer.MAX_VALUE);
+  }
+
+  public static void main(final String[] args) throws RunnerException {
+    new Runner(new OptionsBuilder()
+      .include(CallStackBenchmark.class.getSimpleName())
+      .addProfiler(GCProfiler.class)
+      .build()).run();
+  }
+}
\ No newline at end of file
@@ -49,7 +49,15 @@ public class ThreadLineageTest {
   private static void startTracerThreads(final CountDownLatch latch) throws Exception {
     final Class<?> cls = Adapter.tracerClassLoader.loadClass("io.opentracing.contrib.specialagent.TestTracer");
     assertEquals("Tracer class should be loaded from tracer class loader", Adapter.tracerClassLoader, cls.getClassLoader());
-    cls.getMethod("start", CountDownLatch.class).invoke(null, latch);
+    // Mark the current thread as constructing threads of the tracer, as is done by TracerExclusionAgent
+    final ThreadLocalCounter entryCounter = AgentRule.$Access.entryCounter();
+    entryCounter.increment();
+    try {
+      cls.getMethod("start", CountDownLatch.class).invoke(null, latch);
+    }
+    finally {
+      entryCounter.decrement();
+    }
   }
 
   @Test
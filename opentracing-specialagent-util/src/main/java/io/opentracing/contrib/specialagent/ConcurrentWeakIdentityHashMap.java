@@ -136,8 +136,10 @@ public class ConcurrentWeakIdentityHashMap<K,V>extends AbstractMap<K,V> implemen
       while (iterator.hasNext()) {
         final Map.Entry<Key<K>,V> entry = iterator.next();
         final K key = entry.getKey().get();
-        if (key == null)
+        if (key == null) {
           iterator.remove();
+          continue;
+        }
 
         next = new Entry(key, entry.getValue());
         return true;
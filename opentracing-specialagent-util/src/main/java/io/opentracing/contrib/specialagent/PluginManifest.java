@@ -15,6 +15,7 @@
 
 package io.opentracing.contrib.specialagent;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
@@ -28,7 +29,6 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.Enumeration;
-import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.Map;
@@ -37,6 +37,7 @@ import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
 
 public class PluginManifest {
   private static final Logger logger = Logger.getLogger(PluginManifest.class);
@@ -151,6 +152,46 @@ public class PluginManifest {
     }
   };
 
+  private static BiFunction<ZipInputStream,ZipEntry,String> zipToClassName = new BiFunction<ZipInputStream,ZipEntry,String>() {
+    @Override
+    public String apply(final ZipInputStream t, final ZipEntry u) {
+      try {
+        return new String(AssembleUtil.readBytes(t));
+      }
+      catch (final IOException e) {
+        throw new IllegalStateException(e);
+      }
+    }
+  };
+
+  /**
+   * Returns the {@link PluginManifest} of the specified JAR {@code file}, read
+   * from the provided {@code bytes} of its contents, so that a JAR that is
+   * already in memory need not be opened again.
+   *
+   * @param file The JAR file with which the {@link PluginManifest} is to be
+   *          associated.
+   * @param bytes The contents of the JAR file.
+   * @return The {@link PluginManifest} of the specified JAR {@code file}, or
+   *         {@code null} if the JAR is neither an Integration Rule nor a Trace
+   *         Exporter.
+   * @throws IllegalStateException If an {@link IOException} has occurred.
+   */
+  public static PluginManifest getPluginManifest(final File file, final byte[] bytes) {
+    try (final ZipInputStream in = new ZipInputStream(new ByteArrayInputStream(bytes))) {
+      for (ZipEntry entry; (entry = in.getNextEntry()) != null;) {
+        final PluginManifest pluginManifest = getPluginManifestFromEntry(file, entry.getName(), in, entry, zipToClassName);
+        if (pluginManifest != null)
+          return pluginManifest;
+      }
+
+      return null;
+    }
+    catch (final IOException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
   public static PluginManifest getPluginManifest(final File file) {
     if (file.isDirectory()) {
       final PluginManifest[] pluginManifest = new PluginManifest[1];
@@ -194,11 +235,16 @@ public class PluginManifest {
   private URL fingerprintUrl;
   private int priority = -1;
 
-  private PluginManifest(final File file, final Type type, final String name, final String adapterClassName) {
+  PluginManifest(final File file, final Type type, final String name, final String adapterClassName, final int priority) {
     this.file = file.getAbsoluteFile();
     this.type = type;
     this.name = name;
     this.adapterClassName = adapterClassName;
+    this.priority = priority;
+  }
+
+  private PluginManifest(final File file, final Type type, final String name, final String adapterClassName) {
+    this(file, type, name, adapterClassName, -1);
   }
 
   public int getPriority() {
@@ -253,12 +299,6 @@ public class PluginManifest {
     }
   }
 
-  private final HashMap<ClassLoader,Boolean> classLoaderToCompatibility = new HashMap<>();
-
-  public Map<ClassLoader,Boolean> getClassLoaderToCompatibility() {
-    return classLoaderToCompatibility;
-  }
-
   @Override
   public int hashCode() {
     return file.hashCode();
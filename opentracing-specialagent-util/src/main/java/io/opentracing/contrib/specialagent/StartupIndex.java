@@ -0,0 +1,347 @@
+/* Copyright 2020 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.opentracing.contrib.specialagent;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.JarURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * A precomputed index of the JARs embedded under
+ * {@link UtilConstants#META_INF_PLUGIN_PATH} in the SpecialAgent JAR, which is
+ * written by the {@code AssembleMojo} to
+ * {@link UtilConstants#META_INF_PLUGIN_INDEX}.
+ * <p>
+ * For each embedded JAR, the index holds its {@link PluginManifest} (with the
+ * priority of the plugin), and for each Integration Rule the version and the
+ * resolved names of the dependencies from its {@code dependencies.tgf}, and
+ * the contents of its {@code otarules.mf}. Reading the index at startup
+ * replaces the scanning and parsing of each of these files, as the contents of
+ * the SpecialAgent JAR are immutable.
+ */
+public final class StartupIndex {
+  private static final int MAGIC = 0x5341_4958;
+  private static final int VERSION = 1;
+
+  private static final String DEPENDENCIES_TGF = "dependencies.tgf";
+  private static final String OTARULES_MF = "otarules.mf";
+
+  /**
+   * An entry of the {@link StartupIndex}, representing an embedded JAR.
+   */
+  public static final class Entry {
+    private final String fileName;
+    private final PluginManifest.Type type;
+    private final String name;
+    private final String adapterClassName;
+    private final int priority;
+    private final String version;
+    private final String[] dependencies;
+    private final String rules;
+
+    private Entry(final String fileName, final PluginManifest.Type type, final String name, final String adapterClassName, final int priority, final String version, final String[] dependencies, final String rules) {
+      this.fileName = fileName;
+      this.type = type;
+      this.name = name;
+      this.adapterClassName = adapterClassName;
+      this.priority = priority;
+      this.version = version;
+      this.dependencies = dependencies;
+      this.rules = rules;
+    }
+
+    /**
+     * @param file The extracted file of this entry.
+     * @return The {@link PluginManifest} of this entry for the specified
+     *         extracted {@code file}, or {@code null} if the JAR of this entry
+     *         is neither an Integration Rule nor a Trace Exporter.
+     */
+    public PluginManifest getPluginManifest(final File file) {
+      return type == null ? null : new PluginManifest(file, type, name, adapterClassName, priority);
+    }
+
+    /**
+     * @return The version of the Integration Rule from its
+     *         {@code dependencies.tgf}, or {@code null} if the JAR of this
+     *         entry does not have a {@code dependencies.tgf}.
+     */
+    public String getVersion() {
+      return version;
+    }
+
+    /**
+     * Returns the files in the specified array that are dependencies of the
+     * Integration Rule of this entry, in the order of the array. This method
+     * selects files by name, as does
+     * {@link MavenUtil#filterRuleURLs(File[],String,boolean,String...)}.
+     *
+     * @param files The files from which to select the dependencies.
+     * @return The files in the specified array that are dependencies of the
+     *         Integration Rule of this entry, or {@code null} if the JAR of
+     *         this entry does not have a {@code dependencies.tgf}, or if none
+     *         of the dependencies is in the specified array.
+     */
+    public File[] getDependencyFiles(final File[] files) {
+      if (dependencies == null)
+        return null;
+
+      final HashSet<String> names = new HashSet<>(Arrays.asList(dependencies));
+      final ArrayList<File> dependencyFiles = new ArrayList<>(dependencies.length);
+      for (final File file : files)
+        if (names.contains(file.getName()))
+          dependencyFiles.add(file);
+
+      return dependencyFiles.size() == 0 ? null : dependencyFiles.toArray(new File[dependencyFiles.size()]);
+    }
+
+    /**
+     * @return The contents of the {@code otarules.mf} of this entry, or
+     *         {@code null} if the JAR of this entry does not have an
+     *         {@code otarules.mf}.
+     */
+    public String getRules() {
+      return rules;
+    }
+
+    @Override
+    public String toString() {
+      return fileName;
+    }
+  }
+
+  /**
+   * Builds the {@link StartupIndex} of the JARs in the specified directory.
+   *
+   * @param dir The directory of the JARs to be embedded under
+   *          {@link UtilConstants#META_INF_PLUGIN_PATH}.
+   * @return The {@link StartupIndex} of the JARs in the specified directory.
+   * @throws IOException If an I/O error has occurred.
+   */
+  public static StartupIndex build(final File dir) throws IOException {
+    final File[] files = dir.listFiles();
+    final StartupIndex index = new StartupIndex();
+    if (files == null)
+      return index;
+
+    Arrays.sort(files);
+    for (final File file : files) {
+      if (!file.isFile() || !file.getName().endsWith(".jar"))
+        continue;
+
+      final PluginManifest pluginManifest = PluginManifest.getPluginManifest(file);
+      int priority = -1;
+      if (pluginManifest != null) {
+        try {
+          priority = pluginManifest.getPriority();
+        }
+        catch (final IllegalStateException e) {
+          // The priority is resolved at runtime, if the JAR has no pom.xml
+        }
+      }
+
+      String version = null;
+      String[] dependencies = null;
+      String rules = null;
+      try (final ZipFile zipFile = new ZipFile(file)) {
+        final ZipEntry tgfEntry = zipFile.getEntry(DEPENDENCIES_TGF);
+        if (tgfEntry != null) {
+          final String dependenciesTgf = read(zipFile, tgfEntry);
+          final String firstLine = dependenciesTgf.substring(0, dependenciesTgf.indexOf('\n'));
+          version = firstLine.substring(firstLine.lastIndexOf(':') + 1);
+          final File[] dependencyFiles = MavenUtil.filterRuleURLs(files, dependenciesTgf, true, "compile");
+          if (dependencyFiles != null) {
+            dependencies = new String[dependencyFiles.length];
+            for (int i = 0; i < dependencyFiles.length; ++i)
+              dependencies[i] = dependencyFiles[i].getName();
+          }
+        }
+
+        final ZipEntry rulesEntry = zipFile.getEntry(OTARULES_MF);
+        if (rulesEntry != null)
+          rules = read(zipFile, rulesEntry);
+      }
+
+      final String fileName = file.getName();
+      index.fileNameToEntry.put(fileName, pluginManifest == null ? new Entry(fileName, null, null, null, -1, version, dependencies, rules) : new Entry(fileName, pluginManifest.type, pluginManifest.name, pluginManifest.adapterClassName, priority, version, dependencies, rules));
+    }
+
+    return index;
+  }
+
+  private static String read(final ZipFile zipFile, final ZipEntry entry) throws IOException {
+    try (final InputStream in = zipFile.getInputStream(entry)) {
+      return new String(AssembleUtil.readBytes(in));
+    }
+  }
+
+  /**
+   * Returns the {@link StartupIndex} at {@link UtilConstants#META_INF_PLUGIN_INDEX}
+   * in the specified {@code ClassLoader}, or {@code null} if the index is not
+   * present in a JAR of the {@code ClassLoader}. As is the case for the
+   * embedded JARs, an index that is not inside a JAR is not considered.
+   *
+   * @param classLoader The {@code ClassLoader}.
+   * @return The {@link StartupIndex} at
+   *         {@link UtilConstants#META_INF_PLUGIN_INDEX} in the specified
+   *         {@code ClassLoader}, or {@code null} if the index is not present in
+   *         a JAR of the {@code ClassLoader}.
+   * @throws IOException If an I/O error has occurred.
+   */
+  public static StartupIndex find(final ClassLoader classLoader) throws IOException {
+    final URL resource = classLoader.getResource(UtilConstants.META_INF_PLUGIN_INDEX);
+    if (resource == null)
+      return null;
+
+    final URLConnection connection = resource.openConnection();
+    if (!(connection instanceof JarURLConnection))
+      return null;
+
+    connection.setUseCaches(false);
+    try (final InputStream in = connection.getInputStream()) {
+      return read(in);
+    }
+  }
+
+  /**
+   * Returns the {@link StartupIndex} read from the specified
+   * {@code InputStream}, or {@code null} if the stream does not hold an index
+   * of this version.
+   *
+   * @param in The {@code InputStream}.
+   * @return The {@link StartupIndex} read from the specified
+   *         {@code InputStream}, or {@code null} if the stream does not hold an
+   *         index of this version.
+   * @throws IOException If an I/O error has occurred.
+   */
+  public static StartupIndex read(final InputStream in) throws IOException {
+    final DataInputStream data = new DataInputStream(in);
+    if (data.readInt() != MAGIC || data.readInt() != VERSION)
+      return null;
+
+    final PluginManifest.Type[] types = PluginManifest.Type.values();
+    final StartupIndex index = new StartupIndex();
+    for (int i = 0, size = data.readInt(); i < size; ++i) {
+      final String fileName = readString(data);
+      final int type = data.readByte();
+      final String name = readString(data);
+      final String adapterClassName = readString(data);
+      final int priority = data.readInt();
+      final String version = readString(data);
+      final int length = data.readInt();
+      final String[] dependencies = length == -1 ? null : new String[length];
+      for (int j = 0; j < length; ++j)
+        dependencies[j] = readString(data);
+
+      final String rules = readString(data);
+      index.fileNameToEntry.put(fileName, new Entry(fileName, type == -1 ? null : types[type], name, adapterClassName, priority, version, dependencies, rules));
+    }
+
+    return index;
+  }
+
+  private static String readString(final DataInputStream in) throws IOException {
+    final int length = in.readInt();
+    if (length == -1)
+      return null;
+
+    final byte[] bytes = new byte[length];
+    in.readFully(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  private static void writeString(final DataOutputStream out, final String string) throws IOException {
+    if (string == null) {
+      out.writeInt(-1);
+    }
+    else {
+      final byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+      out.writeInt(bytes.length);
+      out.write(bytes);
+    }
+  }
+
+  private final LinkedHashMap<String,Entry> fileNameToEntry = new LinkedHashMap<>();
+
+  private StartupIndex() {
+  }
+
+  /**
+   * Returns the {@link Entry} for the specified extracted {@code file}, or
+   * {@code null} if the file is not in this index.
+   *
+   * @param file The extracted file.
+   * @return The {@link Entry} for the specified extracted {@code file}, or
+   *         {@code null} if the file is not in this index.
+   */
+  public Entry getEntry(final File file) {
+    return fileNameToEntry.get(file.getName());
+  }
+
+  /**
+   * @return The entries of this index, in the order of the file names.
+   */
+  public Collection<Entry> getEntries() {
+    return fileNameToEntry.values();
+  }
+
+  /**
+   * Writes this index to the specified {@code OutputStream}.
+   *
+   * @param out The {@code OutputStream}.
+   * @throws IOException If an I/O error has occurred.
+   */
+  public void write(final OutputStream out) throws IOException {
+    final DataOutputStream data = new DataOutputStream(out);
+    data.writeInt(MAGIC);
+    data.writeInt(VERSION);
+    data.writeInt(fileNameToEntry.size());
+    for (final Entry entry : fileNameToEntry.values()) {
+      writeString(data, entry.fileName);
+      data.writeByte(entry.type == null ? -1 : entry.type.ordinal());
+      writeString(data, entry.name);
+      writeString(data, entry.adapterClassName);
+      data.writeInt(entry.priority);
+      writeString(data, entry.version);
+      data.writeInt(entry.dependencies == null ? -1 : entry.dependencies.length);
+      if (entry.dependencies != null)
+        for (final String dependency : entry.dependencies)
+          writeString(data, dependency);
+
+      writeString(data, entry.rules);
+    }
+
+    data.flush();
+  }
+
+  @Override
+  public String toString() {
+    return fileNameToEntry.keySet().toString();
+  }
+}
@@ -19,6 +19,7 @@ public final class UtilConstants {
   public static final String FINGERPRINT_FILE = "fingerprint.bin";
   public static final String META_INF_PLUGIN_PATH = "META-INF/plugins/";
   public static final String META_INF_ISO_PATH = "META-INF/iso/";
+  public static final String META_INF_PLUGIN_INDEX = "META-INF/plugins.idx";
   public static final String META_INF_TEST_MANIFEST = META_INF_PLUGIN_PATH + "TEST-MANIFEST.MF";
 
   private UtilConstants() {
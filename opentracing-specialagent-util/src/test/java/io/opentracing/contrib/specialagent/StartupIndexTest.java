@@ -0,0 +1,101 @@
+/* Copyright 2020 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.opentracing.contrib.specialagent;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link StartupIndex}.
+ */
+public class StartupIndexTest {
+  private static void newJar(final File file, final String ... entries) throws IOException {
+    try (final JarOutputStream out = new JarOutputStream(new FileOutputStream(file))) {
+      for (int i = 0; i < entries.length; i += 2) {
+        out.putNextEntry(new JarEntry(entries[i]));
+        out.write(entries[i + 1].getBytes(StandardCharsets.UTF_8));
+        out.closeEntry();
+      }
+    }
+  }
+
+  @Test
+  public void testBuildAndRead() throws IOException {
+    final File dir = Files.createTempDirectory("specialagent").toFile();
+    try {
+      final File ruleJar = new File(dir, "foo-rule-1.0.0.jar");
+      newJar(ruleJar,
+        "sa.rule.name.foo", "io.opentracing.contrib.specialagent.FooAdapter",
+        "dependencies.tgf", "1 com.example:foo-rule:jar:1.0.0\n2 com.example:foo-lib:jar:2.0.0:compile (optional)\n#\n",
+        "otarules.mf", "com.example.FooAgentRule com.example.Foo\n",
+        "META-INF/maven/com.example/foo-rule/pom.xml", "<project><properties><sa.rule.priority>7</sa.rule.priority></properties></project>");
+      final File libJar = new File(dir, "foo-lib-2.0.0.jar");
+      newJar(libJar, "com/example/Foo.class", "");
+      final File otherJar = new File(dir, "other-3.0.0.jar");
+      newJar(otherJar, "com/example/Other.class", "");
+
+      final ByteArrayOutputStream out = new ByteArrayOutputStream();
+      StartupIndex.build(dir).write(out);
+      final StartupIndex index = StartupIndex.read(new ByteArrayInputStream(out.toByteArray()));
+      assertNotNull(index);
+      assertEquals(3, index.getEntries().size());
+
+      final File extractDir = new File(dir, "extracted");
+      final File extractedRule = new File(extractDir, ruleJar.getName());
+      final StartupIndex.Entry ruleEntry = index.getEntry(extractedRule);
+      final PluginManifest pluginManifest = ruleEntry.getPluginManifest(extractedRule);
+      assertEquals(extractedRule.getAbsoluteFile(), pluginManifest.file);
+      assertEquals(PluginManifest.Type.INSTRUMENTATION, pluginManifest.type);
+      assertEquals("foo", pluginManifest.name);
+      assertEquals("io.opentracing.contrib.specialagent.FooAdapter", pluginManifest.adapterClassName);
+      assertEquals(7, pluginManifest.getPriority());
+      assertEquals("1.0.0", ruleEntry.getVersion());
+      assertEquals("com.example.FooAgentRule com.example.Foo\n", ruleEntry.getRules());
+
+      final File extractedLib = new File(extractDir, libJar.getName());
+      final File extractedOther = new File(extractDir, otherJar.getName());
+      assertArrayEquals(new File[] {extractedRule, extractedLib}, ruleEntry.getDependencyFiles(new File[] {extractedRule, extractedOther, extractedLib}));
+
+      final StartupIndex.Entry libEntry = index.getEntry(extractedLib);
+      assertNull(libEntry.getPluginManifest(extractedLib));
+      assertNull(libEntry.getVersion());
+      assertNull(libEntry.getDependencyFiles(new File[] {extractedLib}));
+      assertNull(libEntry.getRules());
+
+      assertNull(index.getEntry(new File(extractDir, "unknown.jar")));
+      assertNull(StartupIndex.read(new ByteArrayInputStream(new byte[8])));
+    }
+    finally {
+      AssembleUtil.recurseDir(dir, new Predicate<File>() {
+        @Override
+        public boolean test(final File t) {
+          return t.delete();
+        }
+      });
+    }
+  }
+}
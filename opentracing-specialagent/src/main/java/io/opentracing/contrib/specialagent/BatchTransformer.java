@@ -0,0 +1,212 @@
+/* Copyright 2020 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.opentracing.contrib.specialagent;
+
+import java.lang.instrument.ClassFileTransformer;
+import java.lang.instrument.IllegalClassFormatException;
+import java.lang.instrument.Instrumentation;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.security.ProtectionDomain;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import net.bytebuddy.agent.builder.AgentBuilder;
+import net.bytebuddy.agent.builder.AgentBuilder.RedefinitionStrategy;
+import net.bytebuddy.agent.builder.ResettableClassFileTransformer;
+
+/**
+ * A single {@link ClassFileTransformer} that delegates to the transformers of
+ * all {@link AgentBuilder}s installed by the {@link ByteBuddyManager}, which is
+ * enabled with the {@code -Dsa.rules.batch} system property.
+ * <p>
+ * Each {@link AgentBuilder} is installed with a {@link RedefinitionStrategy}
+ * that only collects the loaded classes matched by its rules, instead of
+ * retransforming them. The {@link AgentBuilder} is installed on a view of the
+ * {@link Instrumentation} that adds its transformer to this
+ * {@code BatchTransformer}, rather than registering it with the
+ * {@link Instrumentation}. The collected classes of all {@link AgentBuilder}s
+ * are then retransformed in a single call to
+ * {@link Instrumentation#retransformClasses(Class...)}, instead of one call for
+ * each {@link AgentBuilder}. The installation of each {@link AgentBuilder}
+ * still matches its rules against all loaded classes.
+ * <p>
+ * The transformers are invoked in the order in which their
+ * {@link AgentBuilder}s were installed, and an error in one transformer does
+ * not prevent the invocation of the others. The collected classes are weakly
+ * referenced until they are retransformed, so that collecting them does not
+ * prevent the unloading of their class loaders.
+ */
+final class BatchTransformer implements ClassFileTransformer {
+  private static final Logger logger = Logger.getLogger(BatchTransformer.class);
+
+  private final Instrumentation inst;
+  private final CopyOnWriteArrayList<ClassFileTransformer> transformers = new CopyOnWriteArrayList<>();
+  private final Set<Class<?>> candidates = Collections.newSetFromMap(new ConcurrentWeakIdentityHashMap<Class<?>,Boolean>());
+
+  private final RedefinitionStrategy.BatchAllocator collector = new RedefinitionStrategy.BatchAllocator() {
+    @Override
+    public Iterable<? extends List<Class<?>>> batch(final List<Class<?>> types) {
+      synchronized (candidates) {
+        candidates.addAll(types);
+      }
+
+      return Collections.emptyList();
+    }
+  };
+
+  /**
+   * A view of the {@link Instrumentation} on which the {@link AgentBuilder}s
+   * are installed, which adds and removes transformers to and from this
+   * {@code BatchTransformer}, and delegates all other methods to the
+   * {@link Instrumentation}.
+   */
+  private final Instrumentation batchInst;
+
+  /**
+   * The transformer of an {@link AgentBuilder} that is installed into this
+   * {@code BatchTransformer}. Resetting it removes it from this
+   * {@code BatchTransformer}, and retransforms the classes it had transformed.
+   */
+  private final class InstalledTransformer extends ResettableClassFileTransformer.AbstractBase {
+    private final ResettableClassFileTransformer transformer;
+
+    private InstalledTransformer(final ResettableClassFileTransformer transformer) {
+      this.transformer = transformer;
+    }
+
+    @Override
+    public byte[] transform(final ClassLoader loader, final String className, final Class<?> classBeingRedefined, final ProtectionDomain protectionDomain, final byte[] classfileBuffer) throws IllegalClassFormatException {
+      return transformer.transform(loader, className, classBeingRedefined, protectionDomain, classfileBuffer);
+    }
+
+    @Override
+    public boolean reset(final Instrumentation instrumentation, final ResettableClassFileTransformer classFileTransformer, final RedefinitionStrategy redefinitionStrategy, final RedefinitionStrategy.DiscoveryStrategy redefinitionDiscoveryStrategy, final RedefinitionStrategy.BatchAllocator redefinitionBatchAllocator, final RedefinitionStrategy.Listener redefinitionListener) {
+      return transformer.reset(batchInst, transformer, redefinitionStrategy, redefinitionDiscoveryStrategy, redefinitionBatchAllocator, redefinitionListener);
+    }
+  }
+
+  /**
+   * Creates a new {@code BatchTransformer}, and registers it with the
+   * specified {@link Instrumentation}.
+   *
+   * @param inst The {@link Instrumentation}.
+   */
+  BatchTransformer(final Instrumentation inst) {
+    this.inst = inst;
+    this.batchInst = (Instrumentation)Proxy.newProxyInstance(Instrumentation.class.getClassLoader(), new Class<?>[] {Instrumentation.class}, new InvocationHandler() {
+      @Override
+      public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
+        if ("addTransformer".equals(method.getName())) {
+          transformers.add((ClassFileTransformer)args[0]);
+          return null;
+        }
+
+        if ("removeTransformer".equals(method.getName()))
+          return transformers.remove(args[0]);
+
+        try {
+          return method.invoke(inst, args);
+        }
+        catch (final InvocationTargetException e) {
+          throw e.getCause();
+        }
+      }
+    });
+
+    inst.addTransformer(this, true);
+  }
+
+  /**
+   * Installs the specified {@link AgentBuilder} into this
+   * {@code BatchTransformer}. The loaded classes matched by the rules of the
+   * {@link AgentBuilder} are retransformed upon the next call to
+   * {@link #retransform()}.
+   *
+   * @param builder The {@link AgentBuilder}.
+   * @param decorator The {@link AgentBuilder.TransformerDecorator} with which
+   *          to decorate the transformer of the {@link AgentBuilder}, or
+   *          {@code null}.
+   * @return The transformer of the {@link AgentBuilder}, which is removed from
+   *         this {@code BatchTransformer} when it is reset.
+   */
+  ResettableClassFileTransformer installOn(final AgentBuilder builder, final AgentBuilder.TransformerDecorator decorator) {
+    final AgentBuilder collectingBuilder = builder
+      .with(RedefinitionStrategy.RETRANSFORMATION)
+      .with(collector);
+
+    return new InstalledTransformer(decorator != null ? collectingBuilder.installOn(batchInst, decorator) : collectingBuilder.installOn(batchInst));
+  }
+
+  /**
+   * Retransforms the loaded classes that were matched by the
+   * {@link AgentBuilder}s installed since the last call to this method, in a
+   * single batch. If the batch fails, the classes are retransformed one by
+   * one, so that a failure of one class does not prevent the retransformation
+   * of the others.
+   */
+  void retransform() {
+    final Class<?>[] classes;
+    synchronized (candidates) {
+      // Classes that have been unloaded since they were collected are skipped
+      classes = candidates.toArray(new Class<?>[0]);
+      candidates.clear();
+    }
+
+    if (classes.length == 0)
+      return;
+
+    final long startTime = System.nanoTime();
+    try {
+      inst.retransformClasses(classes);
+    }
+    catch (final Throwable t) {
+      logger.log(Level.WARNING, "Retransformation of " + classes.length + " classes failed, retrying one by one", t);
+      for (final Class<?> cls : classes) {
+        try {
+          inst.retransformClasses(cls);
+        }
+        catch (final Throwable t2) {
+          logger.log(Level.SEVERE, "Unable to retransform: " + cls.getName(), t2);
+        }
+      }
+    }
+
+    if (logger.isLoggable(Level.FINE))
+      logger.fine("Retransformed " + classes.length + " classes in " + ((System.nanoTime() - startTime) / 1000) + "us");
+  }
+
+  @Override
+  public byte[] transform(final ClassLoader loader, final String className, final Class<?> classBeingRedefined, final ProtectionDomain protectionDomain, final byte[] classfileBuffer) {
+    byte[] bytecode = null;
+    for (final ClassFileTransformer transformer : transformers) {
+      try {
+        final byte[] transformed = transformer.transform(loader, className, classBeingRedefined, protectionDomain, bytecode != null ? bytecode : classfileBuffer);
+        if (transformed != null)
+          bytecode = transformed;
+      }
+      catch (final Throwable t) {
+        logger.log(Level.SEVERE, "Unable to transform: " + className, t);
+      }
+    }
+
+    return bytecode;
+  }
+}
\ No newline at end of file
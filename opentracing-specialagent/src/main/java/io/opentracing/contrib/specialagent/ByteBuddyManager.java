@@ -21,16 +21,25 @@ import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.lang.instrument.ClassFileTransformer;
 import java.lang.instrument.Instrumentation;
 import java.lang.reflect.InvocationTargetException;
 import java.net.URL;
+import java.security.ProtectionDomain;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Enumeration;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
 import net.bytebuddy.ByteBuddy;
 import net.bytebuddy.agent.builder.AgentBuilder;
@@ -61,7 +70,28 @@ public class ByteBuddyManager extends Manager {
     }
   };
 
+  /**
+   * Whether {@link AgentRule}s of rule JARs that declare trigger classes in
+   * their index are instantiated and installed only when one of the trigger
+   * classes is first seen.
+   */
+  static final String LAZY = "sa.rules.lazy";
+
+  /**
+   * Whether the transformers of all {@link AgentBuilder}s are installed into a
+   * single {@link BatchTransformer}, and the loaded classes matched by their
+   * rules are retransformed in a single batch.
+   */
+  static final String BATCH = "sa.rules.batch";
+
+  private final boolean lazy = AssembleUtil.isSystemProperty(LAZY, null);
+  private final boolean batch = AssembleUtil.isSystemProperty(BATCH, null);
+  private final Map<String,List<LazyIntegrationRule>> triggerToLazyRules = new HashMap<>();
   private TransformationListener transformationListener;
+  private TransformationCache transformationCache;
+  private TriggerListener triggerListener;
+  private BatchTransformer batchTransformer;
+  private ClassLoader pluginsClassLoader;
 
   private AgentBuilder newBuilder(final Instrumentation inst, final PluginManifest pluginManifest, final Event[] events) {
     // Prepare the builder to be used to implement transformations in AgentRule(s)
@@ -107,75 +137,109 @@ public class ByteBuddyManager extends Manager {
   private final Set<String> loadedRules = new HashSet<>();
 
   @Override
-  int scanRules(final Instrumentation inst, final ClassLoader pluginsClassLoader, final PluginManifest.Directory pluginManifestDirectory, final List<IntegrationRule> integrationRules, final Map<String,String> classNameToName) throws IOException {
+  int scanRules(final Instrumentation inst, final ClassLoader pluginsClassLoader, final PluginManifest.Directory pluginManifestDirectory, final Map<File,StartupIndex.Entry> pluginFileToIndexEntry, final List<IntegrationRule> integrationRules, final Map<String,String> classNameToName) throws IOException {
     int noDeferrers = 0;
     AgentRule agentRule = null;
+    if (transformationCache == null) {
+      transformationCache = TransformationCache.create(inst, pluginManifestDirectory);
+      StartupReport.setTransformationCache(transformationCache);
+    }
+
+    this.pluginsClassLoader = pluginsClassLoader;
+
     try {
-      // Prepare the agent rules
-      final Enumeration<URL> enumeration = pluginsClassLoader.getResources(file);
-      while (enumeration.hasMoreElements()) {
-        final URL scriptUrl = enumeration.nextElement();
-        final File ruleJar = AssembleUtil.getSourceLocation(scriptUrl, file);
+      // Find the rule indexes of the rule JARs that are not in the StartupIndex
+      final HashMap<File,URL> ruleJarToUrl = new HashMap<>();
+      if (pluginFileToIndexEntry.size() < pluginManifestDirectory.size()) {
+        final Enumeration<URL> enumeration = pluginsClassLoader.getResources(file);
+        while (enumeration.hasMoreElements()) {
+          final URL scriptUrl = enumeration.nextElement();
+          final File ruleJar = AssembleUtil.getSourceLocation(scriptUrl, file).getAbsoluteFile();
+          if (!pluginFileToIndexEntry.containsKey(ruleJar))
+            ruleJarToUrl.put(ruleJar, scriptUrl);
+        }
+      }
+
+      // Prepare the agent rules, in the order of the rule JARs in the pluginsClassLoader
+      for (final File pluginFile : pluginManifestDirectory.keySet()) {
+        final long startTime = System.nanoTime();
+        final File ruleJar = pluginFile.getAbsoluteFile();
+        final StartupIndex.Entry indexEntry = pluginFileToIndexEntry.get(ruleJar);
+        final List<String[]> entries;
+        if (indexEntry != null) {
+          if (indexEntry.getRules() == null)
+            continue;
+
+          entries = readEntries(new StringReader(indexEntry.getRules()));
+        }
+        else {
+          final URL scriptUrl = ruleJarToUrl.get(ruleJar);
+          if (scriptUrl == null)
+            continue;
+
+          entries = readEntries(new InputStreamReader(scriptUrl.openStream()));
+        }
+
         if (logger.isLoggable(Level.FINEST))
           logger.finest("Dereferencing index for " + ruleJar);
 
         final PluginManifest pluginManifest = pluginManifestDirectory.get(ruleJar);
+        if (lazy && hasTriggers(entries)) {
+          // The rules are installed upon a trigger, but the adapter of the
+          // plugin is loaded now, in order for the tracer to be registered
+          if (scanLazyRules(pluginManifest, entries, classNameToName))
+            integrationRules.add(new IntegrationRule(pluginManifest, null, null));
+          StartupReport.get(pluginManifest).addScanTime(System.nanoTime() - startTime);
+          continue;
+        }
+
         List<AgentRule> deferrers = null;
         List<AgentRule> agentRules = null;
-        try (final BufferedReader reader = new BufferedReader(new InputStreamReader(scriptUrl.openStream()))) {
-          for (String line; (line = reader.readLine()) != null;) {
-            line = line.trim();
-            if (line.length() == 0 || line.charAt(0) == '#')
-              continue;
+        for (final String[] entry : entries) {
+          final String line = entry[0];
+          if (loadedRules.contains(line)) {
+            if (logger.isLoggable(Level.FINE))
+              logger.fine("Skipping loaded rule: " + line);
 
-            if (loadedRules.contains(line)) {
-              if (logger.isLoggable(Level.FINE))
-                logger.fine("Skipping loaded rule: " + line);
-
-              continue;
-            }
-
-            final Class<?> agentClass = pluginsClassLoader.loadClass(line);
-            if (!AgentRule.class.isAssignableFrom(agentClass)) {
-              logger.severe("Class " + agentClass.getName() + " does not implement " + AgentRule.class);
-              continue;
-            }
+            continue;
+          }
 
-            final String simpleClassName = line.substring(line.lastIndexOf('.') + 1);
-            final String suffix = pluginManifest.name + "#" + simpleClassName + ".disable";
-            if (AssembleUtil.isSystemProperty("sa.integration." + suffix, "sa.instrumentation.plugin." + suffix)) {
-              if (logger.isLoggable(Level.FINE))
-                logger.fine("Skipping rule: " + line);
+          final Class<?> agentClass = pluginsClassLoader.loadClass(line);
+          if (!AgentRule.class.isAssignableFrom(agentClass)) {
+            logger.severe("Class " + agentClass.getName() + " does not implement " + AgentRule.class);
+            continue;
+          }
 
-              continue;
-            }
+          if (isDisabled(pluginManifest, line))
+            continue;
 
-            if (AgentRule.class.isAssignableFrom(agentClass)) {
-              if (logger.isLoggable(Level.FINE))
-                logger.fine("Installing rule: " + line);
+          if (AgentRule.class.isAssignableFrom(agentClass)) {
+            if (logger.isLoggable(Level.FINE))
+              logger.fine("Installing rule: " + line);
 
-              classNameToName.put(agentClass.getName(), pluginManifest.name);
-              agentRule = (AgentRule)agentClass.getConstructor().newInstance();
-              AgentRule.$Access.setPluginManifest(agentRule, pluginManifest);
-              if (agentRule.isDeferrable(inst)) {
-                if (deferrers == null)
-                  deferrers = new ArrayList<>(1);
+            classNameToName.put(agentClass.getName(), pluginManifest.name);
+            agentRule = (AgentRule)agentClass.getConstructor().newInstance();
+            AgentRule.$Access.setPluginManifest(agentRule, pluginManifest);
+            if (agentRule.isDeferrable(inst)) {
+              if (deferrers == null)
+                deferrers = new ArrayList<>(1);
 
-                ++noDeferrers;
-                deferrers.add(agentRule);
-              }
-              else {
-                if (agentRules == null)
-                  agentRules = new ArrayList<>(1);
+              ++noDeferrers;
+              deferrers.add(agentRule);
+            }
+            else {
+              if (agentRules == null)
+                agentRules = new ArrayList<>(1);
 
-                agentRules.add(agentRule);
-              }
+              agentRules.add(agentRule);
             }
           }
         }
 
         if (deferrers != null || agentRules != null)
           integrationRules.add(new IntegrationRule(pluginManifest, deferrers, agentRules));
+
+        StartupReport.get(pluginManifest).addScanTime(System.nanoTime() - startTime);
       }
     }
     catch (final UnsupportedClassVersionError | InvocationTargetException e) {
@@ -191,6 +255,114 @@ public class ByteBuddyManager extends Manager {
     return noDeferrers;
   }
 
+  /**
+   * Returns the entries of the rule index read from the specified
+   * {@code Reader}, which is closed by this method. Each entry is an array
+   * having the {@link AgentRule} class name at index 0, followed by the names
+   * of its trigger classes (if any).
+   *
+   * @param in The {@code Reader} of the rule index.
+   * @return The entries of the rule index read from the specified
+   *         {@code Reader}.
+   * @throws IOException If an I/O error has occurred.
+   */
+  static List<String[]> readEntries(final Reader in) throws IOException {
+    final List<String[]> entries = new ArrayList<>();
+    try (final BufferedReader reader = new BufferedReader(in)) {
+      for (String line; (line = reader.readLine()) != null;) {
+        line = line.trim();
+        if (line.length() != 0 && line.charAt(0) != '#')
+          entries.add(line.split("\\s+"));
+      }
+    }
+
+    return entries;
+  }
+
+  /**
+   * @param entries The entries of a rule index.
+   * @return Whether each of the specified entries declares at least one trigger
+   *         class.
+   */
+  private static boolean hasTriggers(final List<String[]> entries) {
+    if (entries.size() == 0)
+      return false;
+
+    for (final String[] entry : entries)
+      if (entry.length < 2)
+        return false;
+
+    return true;
+  }
+
+  private static boolean isDisabled(final PluginManifest pluginManifest, final String className) {
+    final String simpleClassName = className.substring(className.lastIndexOf('.') + 1);
+    final String suffix = pluginManifest.name + "#" + simpleClassName + ".disable";
+    if (!AssembleUtil.isSystemProperty("sa.integration." + suffix, "sa.instrumentation.plugin." + suffix))
+      return false;
+
+    if (logger.isLoggable(Level.FINE))
+      logger.fine("Skipping rule: " + className);
+
+    return true;
+  }
+
+  /**
+   * Registers the {@link AgentRule}s of the specified entries to be
+   * instantiated and installed when one of their trigger classes is first
+   * seen, instead of being instantiated immediately.
+   *
+   * @param pluginManifest The {@link PluginManifest} of the rule JAR.
+   * @param entries The entries of the rule index of the rule JAR.
+   * @param classNameToName A {@link Map} of class names to plugin names to be
+   *          filled by this method.
+   * @return Whether any {@link AgentRule} was registered.
+   */
+  private boolean scanLazyRules(final PluginManifest pluginManifest, final List<String[]> entries, final Map<String,String> classNameToName) {
+    final LazyIntegrationRule lazyRule = new LazyIntegrationRule(pluginManifest);
+    for (final String[] entry : entries) {
+      if (loadedRules.contains(entry[0]) || isDisabled(pluginManifest, entry[0]))
+        continue;
+
+      if (logger.isLoggable(Level.FINE))
+        logger.fine("Deferring rule until trigger: " + entry[0]);
+
+      classNameToName.put(entry[0], pluginManifest.name);
+      lazyRule.classNames.add(entry[0]);
+      for (int i = 1; i < entry.length; ++i) {
+        List<LazyIntegrationRule> lazyRules = triggerToLazyRules.get(entry[i].replace('.', '/'));
+        if (lazyRules == null)
+          triggerToLazyRules.put(entry[i].replace('.', '/'), lazyRules = new ArrayList<>(1));
+
+        if (!lazyRules.contains(lazyRule))
+          lazyRules.add(lazyRule);
+      }
+    }
+
+    return lazyRule.classNames.size() > 0;
+  }
+
+  /**
+   * Installs the specified {@link AgentBuilder} on the provided
+   * {@link Instrumentation} (or into the {@link BatchTransformer}, if
+   * enabled), with its transformer decorated by the
+   * {@link TransformationCache}, if enabled.
+   *
+   * @param builder The {@link AgentBuilder}.
+   * @param inst The {@link Instrumentation}.
+   * @param identity The identity of the transformer in the
+   *          {@link TransformationCache}, which must not depend on the order
+   *          in which the rules are installed.
+   */
+  private void installOn(final AgentBuilder builder, final Instrumentation inst, final String identity) {
+    if (batchTransformer != null)
+      batchTransformer.installOn(builder, transformationCache != null ? transformationCache.newDecorator(identity) : null);
+    else if (transformationCache != null)
+      builder.installOn(inst, transformationCache.newDecorator(identity));
+    else
+      builder.installOn(inst);
+  }
+
   private boolean loadedDefaultRules;
 
   private void loadDefaultRules(final Instrumentation inst, final String[] tracerExcludedClasses) {
@@ -198,23 +370,56 @@ public class ByteBuddyManager extends Manager {
       return;
 
     loadedDefaultRules = true;
+    if (batch)
+      batchTransformer = new BatchTransformer(inst);
 
     // Load ClassLoaderAgent
-    ClassLoaderAgent.premain(newBuilder(null, null, null)).installOn(inst);
+    final AgentBuilder classLoaderAgent = ClassLoaderAgent.premain(newBuilder(null, null, null));
+    if (batchTransformer != null)
+      batchTransformer.installOn(classLoaderAgent, null);
+    else
+      classLoaderAgent.installOn(inst);
 
     // Load TracerExclusionAgent
     final AgentBuilder builder = TracerExclusionAgent.premain(tracerExcludedClasses, newBuilder(null, null, null));
-    if (builder != null)
-      builder.installOn(inst);
+    if (builder != null) {
+      if (batchTransformer != null)
+        batchTransformer.installOn(builder, null);
+      else
+        builder.installOn(inst);
+    }
+
+    // The default rules must be in effect before the rules are linked, and are
+    // therefore retransformed in a batch of their own
+    if (batchTransformer != null)
+      batchTransformer.retransform();
   }
 
   @Override
   void loadRules(final Instrumentation inst, boolean loadDeferrers, final List<IntegrationRule> integrationRules, final String[] tracerExcludedClasses, final Event[] events) {
     // Ensure default rules are loaded
     loadDefaultRules(inst, tracerExcludedClasses);
+    installRules(inst, loadDeferrers, integrationRules, events);
+    if (!loadDeferrers && triggerToLazyRules.size() > 0 && triggerListener == null) {
+      triggerListener = new TriggerListener(inst, events);
+      inst.addTransformer(triggerListener);
+      triggerListener.triggerLoaded(inst.getAllLoadedClasses());
+    }
+  }
 
+  /**
+   * Installs the {@link AgentRule}s of the specified {@link IntegrationRule}s.
+   *
+   * @param inst The {@code Instrumentation} instance.
+   * @param loadDeferrers Whether to install the deferrers, instead of the rules.
+   * @param integrationRules The {@link IntegrationRule}s.
+   * @param events Manager events to log.
+   */
+  private void installRules(final Instrumentation inst, final boolean loadDeferrers, final List<IntegrationRule> integrationRules, final Event[] events) {
     boolean hasGlobal1 = false;
     boolean hasGlobal2 = false;
+    final StringBuilder globalIdentity1 = new StringBuilder("global1");
+    final StringBuilder globalIdentity2 = new StringBuilder("global2");
     AgentBuilder chainedGlobalBuilder1 = newBuilder(inst, null, events);
     AgentBuilder chainedGlobalBuilder2 = newBuilder(inst, null, events);
 
@@ -223,6 +428,8 @@ public class ByteBuddyManager extends Manager {
       for (final IntegrationRule integrationRule : integrationRules) {
         final List<AgentRule> agentRules = loadDeferrers ? integrationRule.getDeferrers() : integrationRule.getAgentRules();
         if (agentRules != null) {
+          final String pluginName = integrationRule.getPluginManifest().name;
+          final long startTime = System.nanoTime();
           boolean hasLocal1 = false;
           boolean hasLocal2 = false;
           AgentBuilder chainedLocalBuilder1 = newBuilder(inst, null, events);
@@ -230,10 +437,10 @@ public class ByteBuddyManager extends Manager {
           for (final AgentRule agentRule : agentRules) {
             loadedRules.add(agentRule.getClass().getName());
             try {
-              final AgentBuilder[] unchainedBuilders = agentRule.buildAgentUnchained(newBuilder(inst, integrationRule.getPluginManifest(), events));
+              final AgentBuilder[] unchainedBuilders = agentRule.buildAgentUnchained(newBuilder(inst, integrationRule.getPluginManifest(), events), inst);
               if (unchainedBuilders != null)
-                for (final AgentBuilder unchainedBuilder : unchainedBuilders)
-                  unchainedBuilder.installOn(inst);
+                for (int i = 0; i < unchainedBuilders.length; ++i)
+                  installOn(unchainedBuilders[i], inst, pluginName + "#" + agentRule.getClass().getName() + "#" + i);
 
               AgentBuilder builder = agentRule.buildAgentChainedLocal1(chainedLocalBuilder1);
               if (builder != null) {
@@ -251,12 +458,14 @@ public class ByteBuddyManager extends Manager {
               if (builder != null) {
                 hasGlobal1 = true;
                 chainedGlobalBuilder1 = builder;
+                globalIdentity1.append('#').append(agentRule.getClass().getName());
               }
 
               builder = agentRule.buildAgentChainedGlobal2(chainedGlobalBuilder2);
               if (builder != null) {
                 hasGlobal2 = true;
                 chainedGlobalBuilder2 = builder;
+                globalIdentity2.append('#').append(agentRule.getClass().getName());
               }
             }
             catch (final Exception e) {
@@ -265,18 +474,260 @@ public class ByteBuddyManager extends Manager {
           }
 
           if (hasLocal1)
-            chainedLocalBuilder1.installOn(inst);
+            installOn(chainedLocalBuilder1, inst, pluginName + "#local1");
 
           if (hasLocal2)
-            chainedLocalBuilder2.installOn(inst);
+            installOn(chainedLocalBuilder2, inst, pluginName + "#local2");
+
+          StartupReport.get(integrationRule.getPluginManifest()).addInstallTime(System.nanoTime() - startTime);
         }
       }
 
+      // The chained global builders span the rules of all plugins, and are
+      // therefore reported as a phase of their own
+      final long startTime = System.nanoTime();
       if (hasGlobal1)
-        chainedGlobalBuilder1.installOn(inst);
+        installOn(chainedGlobalBuilder1, inst, globalIdentity1.toString());
 
       if (hasGlobal2)
-        chainedGlobalBuilder2.installOn(inst);
+        installOn(chainedGlobalBuilder2, inst, globalIdentity2.toString());
+
+      if (hasGlobal1 || hasGlobal2)
+        StartupReport.phase("installGlobalRules", startTime);
+    }
+
+    if (batchTransformer != null) {
+      final long startTime = System.nanoTime();
+      batchTransformer.retransform();
+      StartupReport.phase("retransformBatch", startTime);
+    }
+  }
+
+  /**
+   * The {@link AgentRule} class names of a rule JAR, which are instantiated
+   * and installed when one of their trigger classes is first seen.
+   */
+  private static class LazyIntegrationRule {
+    private final PluginManifest pluginManifest;
+    private final List<String> classNames = new ArrayList<>(1);
+    private volatile boolean loaded;
+
+    private LazyIntegrationRule(final PluginManifest pluginManifest) {
+      this.pluginManifest = pluginManifest;
+    }
+  }
+
+  private static boolean isLoaded(final List<LazyIntegrationRule> lazyRules) {
+    for (final LazyIntegrationRule lazyRule : lazyRules)
+      if (!lazyRule.loaded)
+        return false;
+
+    return true;
+  }
+
+  private static final int TRIGGER_RETRANSFORM_ATTEMPTS = 10;
+  private static final long TRIGGER_RETRANSFORM_DELAY = 10;
+
+  private static final ThreadFactory triggerThreadFactory = new ThreadFactory() {
+    @Override
+    public Thread newThread(final Runnable r) {
+      final Thread thread = new Thread(r, "specialagent-trigger");
+      thread.setDaemon(true);
+      return thread;
+    }
+  };
+
+  /**
+   * A lightweight {@link ClassFileTransformer} that only matches the names of
+   * loaded classes against the trigger classes of the
+   * {@link LazyIntegrationRule}s, and installs the rules of a
+   * {@link LazyIntegrationRule} when one of its trigger classes is first seen.
+   * <p>
+   * The rules are installed synchronously in the {@link #transform} callback
+   * of the trigger class, so that they apply to all classes that are loaded
+   * thereafter. The trigger class itself is being defined, and is not visible
+   * to the installed rules, so it is retransformed by a single queue thread.
+   * The advice of the rules thereby applies to the trigger class from shortly
+   * after it is defined. A trigger that is seen while the current thread is
+   * installing rules (i.e. a class that is loaded by the installation) is
+   * queued to the same thread, which installs its rules after the current
+   * installation.
+   */
+  private class TriggerListener implements ClassFileTransformer {
+    private final Instrumentation inst;
+    private final Event[] events;
+    private ScheduledExecutorService executor;
+    private boolean installing;
+
+    private TriggerListener(final Instrumentation inst, final Event[] events) {
+      this.inst = inst;
+      this.events = events;
+    }
+
+    private synchronized ScheduledExecutorService getExecutor() {
+      return executor != null ? executor : (executor = Executors.newSingleThreadScheduledExecutor(triggerThreadFactory));
+    }
+
+    @Override
+    public byte[] transform(final ClassLoader loader, final String className, final Class<?> classBeingRedefined, final ProtectionDomain protectionDomain, final byte[] classfileBuffer) {
+      if (className == null || classBeingRedefined != null)
+        return null;
+
+      final List<LazyIntegrationRule> lazyRules = triggerToLazyRules.get(className);
+      if (lazyRules == null || isLoaded(lazyRules))
+        return null;
+
+      synchronized (this) {
+        if (!installing) {
+          if (load(className, lazyRules))
+            retransformLater(className, loader);
+
+          return null;
+        }
+      }
+
+      getExecutor().execute(new Runnable() {
+        @Override
+        public void run() {
+          if (load(className, lazyRules))
+            retransform(className, loader, TRIGGER_RETRANSFORM_ATTEMPTS);
+        }
+      });
+
+      return null;
+    }
+
+    private void retransformLater(final String trigger, final ClassLoader classLoader) {
+      getExecutor().execute(new Runnable() {
+        @Override
+        public void run() {
+          retransform(trigger, classLoader, TRIGGER_RETRANSFORM_ATTEMPTS);
+        }
+      });
+    }
+
+    /**
+     * Retransforms the trigger class of the specified name and
+     * {@code ClassLoader}, in order for the rules that it triggered to apply
+     * to it. The class is resolved from its {@code ClassLoader}, which waits
+     * for its definition to complete. If the class is not resolvable by name
+     * from its {@code ClassLoader}, the loaded classes are searched, and if the
+     * class is not yet visible to {@link Instrumentation}, the
+     * retransformation is rescheduled.
+     *
+     * @param trigger The name of the trigger class.
+     * @param classLoader The {@code ClassLoader} of the trigger class.
+     * @param attempts The number of remaining attempts.
+     */
+    private void retransform(final String trigger, final ClassLoader classLoader, final int attempts) {
+      final String className = trigger.replace('/', '.');
+      Class<?> triggerClass = null;
+      try {
+        final Class<?> cls = Class.forName(className, false, classLoader);
+        if (cls.getClassLoader() == classLoader)
+          triggerClass = cls;
+      }
+      catch (final ClassNotFoundException | LinkageError e) {
+      }
+
+      if (triggerClass == null) {
+        for (final Class<?> cls : inst.getAllLoadedClasses()) {
+          if (cls.getClassLoader() == classLoader && className.equals(cls.getName())) {
+            triggerClass = cls;
+            break;
+          }
+        }
+      }
+
+      if (triggerClass != null) {
+        try {
+          if (inst.isModifiableClass(triggerClass))
+            inst.retransformClasses(triggerClass);
+        }
+        catch (final Throwable t) {
+          logger.log(Level.SEVERE, "Unable to retransform trigger class: " + className, t);
+        }
+
+        return;
+      }
+
+      if (attempts > 1) {
+        getExecutor().schedule(new Runnable() {
+          @Override
+          public void run() {
+            retransform(trigger, classLoader, attempts - 1);
+          }
+        }, TRIGGER_RETRANSFORM_DELAY, TimeUnit.MILLISECONDS);
+      }
+      else if (logger.isLoggable(Level.FINE)) {
+        logger.fine("Trigger class was not loaded: " + className);
+      }
+    }
+
+    /**
+     * Installs the rules of the {@link LazyIntegrationRule}s having a trigger
+     * class among the specified loaded classes.
+     *
+     * @param classes The loaded classes.
+     */
+    private void triggerLoaded(final Class<?>[] classes) {
+      for (final Class<?> cls : classes) {
+        final String className = cls.getName().replace('.', '/');
+        final List<LazyIntegrationRule> lazyRules = triggerToLazyRules.get(className);
+        if (lazyRules != null)
+          load(className, lazyRules);
+      }
+    }
+
+    /**
+     * Instantiates and installs the {@link AgentRule}s of the specified
+     * {@link LazyIntegrationRule}s that have not yet been loaded. Classes that
+     * are already loaded are retransformed by the installation.
+     *
+     * @param trigger The name of the trigger class.
+     * @param lazyRules The {@link LazyIntegrationRule}s.
+     * @return Whether rules were installed.
+     */
+    private synchronized boolean load(final String trigger, final List<LazyIntegrationRule> lazyRules) {
+      List<IntegrationRule> integrationRules = null;
+      for (final LazyIntegrationRule lazyRule : lazyRules) {
+        if (lazyRule.loaded)
+          continue;
+
+        lazyRule.loaded = true;
+        if (logger.isLoggable(Level.FINE))
+          logger.fine("Loading rules of " + lazyRule.pluginManifest.name + " triggered by: " + trigger.replace('/', '.'));
+
+        final List<AgentRule> agentRules = new ArrayList<>(lazyRule.classNames.size());
+        for (final String className : lazyRule.classNames) {
+          try {
+            final AgentRule agentRule = (AgentRule)pluginsClassLoader.loadClass(className).getConstructor().newInstance();
+            AgentRule.$Access.setPluginManifest(agentRule, lazyRule.pluginManifest);
+            agentRules.add(agentRule);
+          }
+          catch (final ClassCastException | ReflectiveOperationException e) {
+            logger.log(Level.SEVERE, "Unable to instantiate: " + className, e);
+          }
+        }
+
+        if (integrationRules == null)
+          integrationRules = new ArrayList<>(1);
+
+        integrationRules.add(new IntegrationRule(lazyRule.pluginManifest, null, agentRules));
+      }
+
+      if (integrationRules == null)
+        return false;
+
+      installing = true;
+      try {
+        installRules(inst, false, integrationRules, events);
+      }
+      finally {
+        installing = false;
+      }
+
+      return true;
     }
   }
 
@@ -305,24 +756,49 @@ public class ByteBuddyManager extends Manager {
       // FIXME: Should remove the `pluginManifest != null` condition, because a pluginManifest here should be required!
       // FIXME: How to communicate an error here? Cause ByteBuddy swallows all exceptions in this context.
       final PluginManifest pluginManifest = this.pluginManifest != null ? this.pluginManifest : AgentRule.getPluginManifest(typeDescription);
-      if (pluginManifest != null && !SpecialAgent.linkRule(pluginManifest, classLoader))
-        throw new IncompatiblePluginException(typeDescription.getName());
-
-      if (classLoader != null) {
-        try {
-          final JavaModule unnamedModule = JavaModule.of(ClassLoader.class.getMethod("getUnnamedModule").invoke(classLoader));
-          if (!module.canRead(unnamedModule)) {
-            module.modify(inst, Collections.singleton(unnamedModule), Collections.EMPTY_MAP, Collections.EMPTY_MAP, Collections.EMPTY_SET, Collections.EMPTY_MAP);
-            if (logger.isLoggable(Level.FINEST))
-              logger.finest("Added module reads: " + module + " -> " + unnamedModule);
-          }
+      if (pluginManifest != null) {
+        final boolean compatible = SpecialAgent.linkRule(pluginManifest, classLoader);
+        StartupReport.get(pluginManifest).onMatch(loaded, compatible);
+        if (!compatible) {
+          TransformationCache.onIncompatible(pluginManifest);
+          throw new IncompatiblePluginException(typeDescription.getName());
         }
-        catch (final NoSuchMethodException e) {
-        }
-        catch (final Throwable t) {
-          logger.log(Level.SEVERE, t.getMessage(), t);
+
+        TransformationCache.onLink(pluginManifest);
+      }
+
+      if (module != null && module.isNamed())
+        TransformationCache.onNamedModule();
+
+      addReads(inst, classLoader, module);
+    }
+
+    /**
+     * Adds a reads edge from the specified module to the unnamed module of the
+     * specified class loader, so that the advice in the module is able to
+     * access the rule classes injected into the class loader.
+     *
+     * @param inst The {@link Instrumentation}.
+     * @param classLoader The class loader.
+     * @param module The module of the transformed class, or {@code null}.
+     */
+    static void addReads(final Instrumentation inst, final ClassLoader classLoader, final JavaModule module) {
+      if (classLoader == null || module == null)
+        return;
+
+      try {
+        final JavaModule unnamedModule = JavaModule.of(ClassLoader.class.getMethod("getUnnamedModule").invoke(classLoader));
+        if (!module.canRead(unnamedModule)) {
+          module.modify(inst, Collections.singleton(unnamedModule), Collections.EMPTY_MAP, Collections.EMPTY_MAP, Collections.EMPTY_SET, Collections.EMPTY_MAP);
+          if (logger.isLoggable(Level.FINEST))
+            logger.finest("Added module reads: " + module + " -> " + unnamedModule);
         }
       }
+      catch (final NoSuchMethodException e) {
+      }
+      catch (final Throwable t) {
+        logger.log(Level.SEVERE, t.getMessage(), t);
+      }
     }
 
     @Override
@@ -335,6 +811,14 @@ public class ByteBuddyManager extends Manager {
     public void onError(final String typeName, final ClassLoader classLoader, final JavaModule module, final boolean loaded, final Throwable throwable) {
       if (events[Event.ERROR.ordinal()] != null)
         log(Level.SEVERE, "Event::onError(" + typeName + ", " + AssembleUtil.getNameId(classLoader) + ", " + module + ", " + loaded + ")", throwable);
+
+      // An IncompatiblePluginException is already reported as incompatible
+      if (throwable instanceof IncompatiblePluginException)
+        return;
+
+      TransformationCache.onError();
+      if (pluginManifest != null)
+        StartupReport.get(pluginManifest).onError();
     }
 
     @Override
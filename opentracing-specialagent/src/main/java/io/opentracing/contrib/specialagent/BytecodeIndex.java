@@ -0,0 +1,140 @@
+/* Copyright 2020 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.opentracing.contrib.specialagent;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.FutureTask;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * An immutable table of the bytecode of the classes in a dependency JAR (or
+ * directory) of an Integration Rule, keyed by resource name. Each dependency
+ * path is read once, upon the first request of its {@code BytecodeIndex}, and
+ * the {@code BytecodeIndex} is shared by the {@link RuleClassLoader}s of all
+ * target class loaders.
+ */
+final class BytecodeIndex {
+  private static final Logger logger = Logger.getLogger(BytecodeIndex.class);
+  private static final ConcurrentHashMap<File,FutureTask<BytecodeIndex>> fileToIndex = new ConcurrentHashMap<>();
+
+  /**
+   * Returns the {@code BytecodeIndex} of the specified JAR file or directory.
+   *
+   * @param file The JAR file or directory.
+   * @return The {@code BytecodeIndex} of the specified JAR file or directory.
+   * @throws IllegalStateException If an I/O error has occurred.
+   */
+  static BytecodeIndex get(final File file) {
+    FutureTask<BytecodeIndex> index = fileToIndex.get(file);
+    if (index == null) {
+      final FutureTask<BytecodeIndex> newIndex = new FutureTask<>(new Callable<BytecodeIndex>() {
+        @Override
+        public BytecodeIndex call() throws IOException {
+          return new BytecodeIndex(file);
+        }
+      });
+
+      index = fileToIndex.putIfAbsent(file, newIndex);
+      if (index == null) {
+        index = newIndex;
+        newIndex.run();
+      }
+    }
+
+    return RuleClassLoader.await(index);
+  }
+
+  private final Map<String,byte[]> resourceToBytecode;
+
+  private BytecodeIndex(final File file) throws IOException {
+    final long startTime = System.nanoTime();
+    final HashMap<String,byte[]> resourceToBytecode = new HashMap<>();
+    if (file.isDirectory()) {
+      final Path path = file.toPath();
+      final IOException[] exception = new IOException[1];
+      AssembleUtil.recurseDir(file, new Predicate<File>() {
+        @Override
+        public boolean test(final File t) {
+          final String name = path.relativize(t.toPath()).toString().replace(File.separatorChar, '/');
+          if (t.isFile() && isClass(name)) {
+            try {
+              resourceToBytecode.put(name, Files.readAllBytes(t.toPath()));
+            }
+            catch (final IOException e) {
+              exception[0] = e;
+              return false;
+            }
+          }
+
+          return true;
+        }
+      });
+
+      if (exception[0] != null)
+        throw exception[0];
+    }
+    else if (file.isFile()) {
+      try (final ZipInputStream in = new ZipInputStream(new FileInputStream(file))) {
+        for (ZipEntry entry; (entry = in.getNextEntry()) != null;) {
+          final String name = entry.getName();
+          if (!entry.isDirectory() && isClass(name))
+            resourceToBytecode.put(name, AssembleUtil.readBytes(in));
+        }
+      }
+    }
+
+    this.resourceToBytecode = Collections.unmodifiableMap(resourceToBytecode);
+    if (logger.isLoggable(Level.FINE))
+      logger.fine("Indexed " + resourceToBytecode.size() + " classes of " + file + " in " + ((System.nanoTime() - startTime) / 1000) + "us");
+  }
+
+  private static boolean isClass(final String name) {
+    return name.endsWith(".class") && !name.startsWith("META-INF/") && !name.startsWith("module-info");
+  }
+
+  /**
+   * Returns the bytecode of the class by the specified resource name, or
+   * {@code null} if this index does not contain the class. The returned array
+   * is shared, and must not be modified.
+   *
+   * @param resourceName The resource name of the class.
+   * @return The bytecode of the class by the specified resource name, or
+   *         {@code null} if this index does not contain the class.
+   */
+  byte[] getBytecode(final String resourceName) {
+    return resourceToBytecode.get(resourceName);
+  }
+
+  /**
+   * Returns the resource names of the classes in this index.
+   *
+   * @return The resource names of the classes in this index.
+   */
+  Set<String> getResourceNames() {
+    return resourceToBytecode.keySet();
+  }
+}
\ No newline at end of file
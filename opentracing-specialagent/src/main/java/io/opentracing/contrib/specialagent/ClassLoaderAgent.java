@@ -127,7 +127,7 @@ public class ClassLoaderAgent {
 
     @Advice.OnMethodExit
     public static void exit(final @Advice.This ClassLoader thiz, final @Advice.Argument(0) String name, @Advice.Return(readOnly=false, typing=Typing.DYNAMIC) URL returned) {
-      if (returned != null || isExcluded(thiz))
+      if (returned != null || !SpecialAgent.isRuleResource(name) || isExcluded(thiz))
         return;
 
       final Set<String> visited;
@@ -153,7 +153,7 @@ public class ClassLoaderAgent {
 
     @Advice.OnMethodExit
     public static void exit(final @Advice.This ClassLoader thiz, final @Advice.Argument(0) String name, @Advice.Return(readOnly=false, typing=Typing.DYNAMIC) Enumeration<URL> returned) {
-      if (isExcluded(thiz))
+      if (!SpecialAgent.isRuleResource(name) || isExcluded(thiz))
         return;
 
       final Set<String> visited;
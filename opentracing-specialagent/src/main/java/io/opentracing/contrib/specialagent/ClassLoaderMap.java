@@ -15,45 +15,136 @@
 
 package io.opentracing.contrib.specialagent;
 
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
 import java.net.URLClassLoader;
 import java.util.concurrent.ConcurrentHashMap;
 
 /**
- * An implementation of {@link ConcurrentHashMap} that considers {@code null}
- * keys and values as the bootstrap class loader. Specifically, when
- * {@code key == null}, the key is set to {@link BootProxyClassLoader#INSTANCE};
- * when
- * {@code value instanceof URLClassLoader && value.getURLs().length == 0 && value.getParent() == null},
- * the value is set to {@code null}.
+ * A lock-free map of {@link ClassLoader} keys to values, backed by a
+ * {@link ConcurrentHashMap}. Keys are compared by identity, and are weakly
+ * referenced, so that the map itself does not retain the class loaders.
+ * Entries of class loaders that have been garbage collected are expunged upon
+ * subsequent modifications of the map.
+ * <p>
+ * <b>Note:</b> As with {@link java.util.WeakHashMap}, a value that strongly
+ * references its key keeps the key reachable for as long as the map is
+ * reachable. This is the case for the {@link RuleClassLoader}s held by
+ * {@link SpecialAgent}, whose parent is the key, and for the injections held
+ * by {@link RuleClassLoader}, which reference their target class loader. The
+ * class loaders in these maps are therefore not unloaded.
+ * <p>
+ * This map considers {@code null} keys as the bootstrap class loader.
+ * Specifically, when {@code key == null}, the key is set to
+ * {@link BootProxyClassLoader#INSTANCE}; when
+ * {@code key instanceof URLClassLoader && key.getURLs().length == 0 && key.getParent() == null},
+ * the key is considered to be a proxy of the bootstrap class loader.
  *
  * @param <T> The value type for the map.
  * @author Seva Safris
  */
-class ClassLoaderMap<T> extends ConcurrentHashMap<ClassLoader,T> {
-  private static final long serialVersionUID = 5515722666603482519L;
+class ClassLoaderMap<T> {
   private static final ClassLoader NULL = BootProxyClassLoader.INSTANCE;
 
   /**
-   * This method is modified to support value lookups where the key is a "proxy"
-   * class loader representing the bootstrap class loader. This pattern is used
-   * by ByteBuddy, whereby the proxy class loader is an {@code URLClassLoader}
-   * that has an empty classpath and a null parent.
+   * The key of an entry in the map, which weakly references its class loader.
+   */
+  private static final class WeakKey extends WeakReference<ClassLoader> {
+    private final int hashCode;
+
+    private WeakKey(final ClassLoader classLoader, final ReferenceQueue<ClassLoader> queue) {
+      super(classLoader, queue);
+      this.hashCode = System.identityHashCode(classLoader);
+    }
+
+    @Override
+    public int hashCode() {
+      return hashCode;
+    }
+
+    @Override
+    public boolean equals(final Object obj) {
+      if (obj == this)
+        return true;
+
+      final ClassLoader classLoader = get();
+      if (classLoader == null)
+        return false;
+
+      if (obj instanceof WeakKey)
+        return classLoader == ((WeakKey)obj).get();
+
+      return obj instanceof LookupKey && classLoader == ((LookupKey)obj).classLoader;
+    }
+  }
+
+  /**
+   * The key with which the map is queried, which does not need to be a
+   * {@link Reference}, because it is never stored in the map.
+   */
+  private static final class LookupKey {
+    private final ClassLoader classLoader;
+
+    private LookupKey(final ClassLoader classLoader) {
+      this.classLoader = classLoader;
+    }
+
+    @Override
+    public int hashCode() {
+      return System.identityHashCode(classLoader);
+    }
+
+    @Override
+    public boolean equals(final Object obj) {
+      return obj instanceof WeakKey ? classLoader == ((WeakKey)obj).get() : obj instanceof LookupKey && classLoader == ((LookupKey)obj).classLoader;
+    }
+  }
+
+  private final ConcurrentHashMap<Object,T> map = new ConcurrentHashMap<>();
+  private final ReferenceQueue<ClassLoader> queue = new ReferenceQueue<>();
+
+  /**
+   * Returns the value to which the specified class loader is mapped, or
+   * {@code null} if this map contains no mapping for the class loader.
    * <p>
-   * {@inheritDoc}
+   * This method supports value lookups where the key is a "proxy" class loader
+   * representing the bootstrap class loader. This pattern is used by
+   * ByteBuddy, whereby the proxy class loader is an {@code URLClassLoader}
+   * that has an empty classpath and a null parent.
+   *
+   * @param key The class loader.
+   * @return The value to which the specified class loader is mapped, or
+   *         {@code null} if this map contains no mapping for the class loader.
    */
-  @Override
-  @SuppressWarnings("unlikely-arg-type")
-  public T get(final Object key) {
-    T value = super.get(key == null ? NULL : key);
+  public T get(final ClassLoader key) {
+    final T value = map.get(new LookupKey(key == null ? NULL : key));
     if (value != null || !(key instanceof URLClassLoader))
       return value;
 
     final URLClassLoader classLoader = (URLClassLoader)key;
-    return classLoader.getURLs().length > 0 || classLoader.getParent() != null ? null : super.get(NULL);
+    return classLoader.getURLs().length > 0 || classLoader.getParent() != null ? null : map.get(new LookupKey(NULL));
   }
 
-  @Override
   public T put(final ClassLoader key, final T value) {
-    return super.put(key == null ? NULL : key, value);
+    expunge();
+    return map.put(new WeakKey(key == null ? NULL : key, queue), value);
+  }
+
+  public T putIfAbsent(final ClassLoader key, final T value) {
+    expunge();
+    return map.putIfAbsent(new WeakKey(key == null ? NULL : key, queue), value);
+  }
+
+  public boolean remove(final ClassLoader key, final T value) {
+    return map.remove(new LookupKey(key == null ? NULL : key), value);
+  }
+
+  /**
+   * Removes the entries of class loaders that have been garbage collected.
+   */
+  private void expunge() {
+    for (Reference<? extends ClassLoader> reference; (reference = queue.poll()) != null;)
+      map.remove(reference);
   }
 }
\ No newline at end of file
@@ -15,6 +15,7 @@
 
 package io.opentracing.contrib.specialagent;
 
+import java.io.File;
 import java.io.IOException;
 import java.lang.instrument.Instrumentation;
 import java.net.URL;
@@ -68,6 +69,10 @@ public abstract class Manager {
    *          all rule JARs.
    * @param pluginManifestDirectory Map between a JAR file and the associated
    *          {@link PluginManifest}.
+   * @param pluginFileToIndexEntry Map between a rule JAR file and its
+   *          {@link StartupIndex.Entry}, for the rule JARs that are in the
+   *          {@link StartupIndex}. Rule JARs that are not in the map are
+   *          scanned.
    * @param ruleJarToIndex A {@link Map} of rule JAR path to its index in the
    *          {@code allRulesClassLoader} classpath to be filled by this method.
    * @param classNameToName A {@link Map} of class names to plugin names to be
@@ -77,7 +82,7 @@ public abstract class Manager {
    *         {@link #loadRules(Instrumentation,Map,Event[])}.
    * @throws IOException If an I/O error has occurred.
    */
-  abstract int scanRules(Instrumentation inst, ClassLoader pluginsClassLoader, PluginManifest.Directory pluginManifestDirectory, List<IntegrationRule> integrationRules, Map<String,String> classNameToName) throws IOException;
+  abstract int scanRules(Instrumentation inst, ClassLoader pluginsClassLoader, PluginManifest.Directory pluginManifestDirectory, Map<File,StartupIndex.Entry> pluginFileToIndexEntry, List<IntegrationRule> integrationRules, Map<String,String> classNameToName) throws IOException;
 
   /**
    * Loads the rules of this {@code Manager} and associates relevant state in
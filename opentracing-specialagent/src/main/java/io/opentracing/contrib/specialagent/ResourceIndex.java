@@ -0,0 +1,206 @@
+/* Copyright 2020 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.opentracing.contrib.specialagent;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+/**
+ * An index of the names of all classes and resources in the dependency JARs of
+ * the Integration Rules, and a bounded per-{@link ClassLoader} cache of the
+ * names that were not found in the {@link RuleClassLoader}s linked to the
+ * {@link ClassLoader}. Class and resource lookups that are intercepted by
+ * {@link ClassLoaderAgent} for names that no Integration Rule provides are
+ * thereby resolved with a single hash lookup.
+ * <p>
+ * The cache of a {@link ClassLoader} is invalidated each time a
+ * {@link RuleClassLoader} is linked to the {@link ClassLoader} or to one of its
+ * parents, because only these are consulted in a lookup. Each
+ * {@link ClassLoader} thereby keeps a generation, which is incremented when a
+ * {@link RuleClassLoader} is linked to it, and a miss is recorded against the
+ * sum of the generations of the {@link ClassLoader} and its parents.
+ */
+final class ResourceIndex {
+  private static final Logger logger = Logger.getLogger(ResourceIndex.class);
+  private static final int MAX_MISSES = 4096;
+
+  private final HashSet<String> classNames = new HashSet<>();
+  private final HashSet<String> resourceNames = new HashSet<>();
+  private final ClassLoaderMap<AtomicInteger> classLoaderToGeneration = new ClassLoaderMap<>();
+  private final ClassLoaderMap<ConcurrentHashMap<String,Integer>> classLoaderToMisses = new ClassLoaderMap<>();
+
+  /**
+   * Creates a new {@code ResourceIndex} of the classes and resources in the
+   * specified JAR files and directories.
+   *
+   * @param files The JAR files and directories.
+   * @throws IOException If an I/O error has occurred.
+   */
+  ResourceIndex(final Collection<File> files) throws IOException {
+    for (final File file : files) {
+      if (file.isDirectory()) {
+        final Path path = file.toPath();
+        AssembleUtil.recurseDir(file, new Predicate<File>() {
+          @Override
+          public boolean test(final File t) {
+            if (t.isFile())
+              add(path.relativize(t.toPath()).toString().replace(File.separatorChar, '/'));
+
+            return true;
+          }
+        });
+      }
+      else if (file.isFile()) {
+        try (final JarFile jarFile = new JarFile(file)) {
+          final Enumeration<JarEntry> entries = jarFile.entries();
+          while (entries.hasMoreElements()) {
+            final JarEntry entry = entries.nextElement();
+            if (!entry.isDirectory())
+              add(entry.getName());
+          }
+        }
+      }
+    }
+
+    if (logger.isLoggable(Level.FINE))
+      logger.fine("Indexed " + classNames.size() + " classes and " + resourceNames.size() + " resources in " + files.size() + " rule dependency paths");
+  }
+
+  private void add(final String resourceName) {
+    resourceNames.add(resourceName);
+    if (resourceName.endsWith(".class") && !resourceName.startsWith("META-INF/") && !resourceName.startsWith("module-info"))
+      classNames.add(AssembleUtil.resourceToClassName(resourceName));
+  }
+
+  /**
+   * Returns whether any Integration Rule provides the class by the specified
+   * name.
+   *
+   * @param className The name of the class.
+   * @return Whether any Integration Rule provides the class by the specified
+   *         name.
+   */
+  boolean containsClass(final String className) {
+    return classNames.contains(className);
+  }
+
+  /**
+   * Returns whether any Integration Rule provides the resource by the
+   * specified name.
+   *
+   * @param resourceName The name of the resource.
+   * @return Whether any Integration Rule provides the resource by the
+   *         specified name.
+   */
+  boolean containsResource(final String resourceName) {
+    return resourceNames.contains(resourceName);
+  }
+
+  /**
+   * Returns the current generation of the cache of the specified
+   * {@link ClassLoader}, which is the sum of the generations of the
+   * {@link ClassLoader} and its parents, to be provided to
+   * {@link #addMiss(ClassLoader,String,int)} after a lookup.
+   *
+   * @param classLoader The {@link ClassLoader}.
+   * @return The current generation of the cache of the specified
+   *         {@link ClassLoader}.
+   */
+  int getGeneration(final ClassLoader classLoader) {
+    int generation = getGeneration0(null);
+    for (ClassLoader parent = classLoader; parent != null; parent = parent.getParent())
+      generation += getGeneration0(parent);
+
+    return generation;
+  }
+
+  private int getGeneration0(final ClassLoader classLoader) {
+    final AtomicInteger generation = classLoaderToGeneration.get(classLoader);
+    return generation == null ? 0 : generation.get();
+  }
+
+  /**
+   * Invalidates the caches of the specified {@link ClassLoader} and its
+   * descendants, because a {@link RuleClassLoader} was linked to the specified
+   * {@link ClassLoader}.
+   *
+   * @param classLoader The {@link ClassLoader} to which a
+   *          {@link RuleClassLoader} was linked.
+   */
+  void invalidate(final ClassLoader classLoader) {
+    AtomicInteger generation = classLoaderToGeneration.get(classLoader);
+    if (generation == null) {
+      final AtomicInteger exists = classLoaderToGeneration.putIfAbsent(classLoader, generation = new AtomicInteger());
+      if (exists != null)
+        generation = exists;
+    }
+
+    generation.incrementAndGet();
+  }
+
+  /**
+   * Returns whether a prior lookup of the specified name in the
+   * {@link RuleClassLoader}s linked to the specified {@link ClassLoader} (and
+   * its parents) was not found, and no {@link RuleClassLoader} was linked to
+   * the {@link ClassLoader} or its parents since.
+   *
+   * @param classLoader The {@link ClassLoader}.
+   * @param name The name of the class or resource.
+   * @return Whether a prior lookup of the specified name in the specified
+   *         {@link ClassLoader} was not found.
+   */
+  boolean isMiss(final ClassLoader classLoader, final String name) {
+    final ConcurrentHashMap<String,Integer> misses = classLoaderToMisses.get(classLoader);
+    if (misses == null)
+      return false;
+
+    final Integer generation = misses.get(name);
+    return generation != null && generation == getGeneration(classLoader);
+  }
+
+  /**
+   * Records that a lookup of the specified name in the
+   * {@link RuleClassLoader}s linked to the specified {@link ClassLoader} (and
+   * its parents) was not found.
+   *
+   * @param classLoader The {@link ClassLoader}.
+   * @param name The name of the class or resource.
+   * @param generation The generation of the cache of the {@link ClassLoader}
+   *          prior to the lookup, as returned by
+   *          {@link #getGeneration(ClassLoader)}.
+   */
+  void addMiss(final ClassLoader classLoader, final String name, final int generation) {
+    ConcurrentHashMap<String,Integer> misses = classLoaderToMisses.get(classLoader);
+    if (misses == null) {
+      final ConcurrentHashMap<String,Integer> exists = classLoaderToMisses.putIfAbsent(classLoader, misses = new ConcurrentHashMap<>());
+      if (exists != null)
+        misses = exists;
+    }
+    else if (misses.size() >= MAX_MISSES) {
+      misses.clear();
+    }
+
+    misses.put(name, generation);
+  }
+}
\ No newline at end of file
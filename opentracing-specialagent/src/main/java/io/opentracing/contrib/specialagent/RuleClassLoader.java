@@ -17,12 +17,24 @@ package io.opentracing.contrib.specialagent;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStreamReader;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.net.URL;
 import java.net.URLClassLoader;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.bytebuddy.jar.asm.ClassReader;
 
 /**
  * An {@link URLClassLoader} that encloses an Integration Rule, and provides the
@@ -38,6 +50,17 @@ class RuleClassLoader extends URLClassLoader {
   private static final Logger logger = Logger.getLogger(RuleClassLoader.class);
   private static final String SKIP_FINGERPRINT = "sa.fingerprint.skip";
   private static final boolean skipFingerprint = AssembleUtil.isSystemProperty(SKIP_FINGERPRINT, null);
+  static final String LAZY_INJECT = "sa.inject.lazy";
+  private static final boolean lazyInject = AssembleUtil.isSystemProperty(LAZY_INJECT, null);
+
+  private static final String RULES_MF = "otarules.mf";
+
+  /**
+   * Cache of the resource names of the classes that are loaded upon injection
+   * in {@link #LAZY_INJECT lazy injection} mode, keyed by the rule JAR, in
+   * order for them to be resolved once for all target {@code ClassLoader}s.
+   */
+  private static final ConcurrentHashMap<File,Set<String>> ruleJarToEagerResources = new ConcurrentHashMap<>();
 
   /**
    * Callback that is used to load a class by the specified resource path into
@@ -59,10 +82,70 @@ class RuleClassLoader extends URLClassLoader {
     }
   };
 
-  private final ClassLoaderMap<Boolean> compatibility = new ClassLoaderMap<>();
-  private final ClassLoaderMap<Boolean> injected = new ClassLoaderMap<>();
+  /**
+   * Sentinel for a fingerprint URL from which no fingerprint was read, because
+   * {@link ConcurrentHashMap} does not accept {@code null} values.
+   */
+  private static final Object NULL_FINGERPRINT = new Object();
+
+  /**
+   * Cache of deserialized {@code LibraryFingerprint} objects keyed by the
+   * {@code String} form of the fingerprint URL, in order for the
+   * fingerprint.bin of each Integration Rule to be deserialized only once,
+   * instead of once for each target {@code ClassLoader}.
+   */
+  private static final ConcurrentHashMap<String,Object> urlToFingerprint = new ConcurrentHashMap<>();
+  private static final AtomicLong fingerprintCacheHits = new AtomicLong();
+  private static final AtomicLong fingerprintCacheMisses = new AtomicLong();
+  private static final ConcurrentHashMap<String,AtomicLong> pluginNameToVerificationTime = new ConcurrentHashMap<>();
+  private static volatile Method fromFileMethod;
+  private static volatile Method isCompatibleMethod;
+
+  /**
+   * The injection of the classes of a {@code RuleClassLoader} into a target
+   * {@code ClassLoader}, which is performed by the first thread to request it.
+   * The thread that runs the injection is referenced only until the injection
+   * is complete, so that its context class loader and thread locals are not
+   * retained by the {@link #injected} map.
+   */
+  private static final class Injection extends FutureTask<Object> {
+    private volatile Thread owner = Thread.currentThread();
+
+    private Injection(final Callable<Object> callable) {
+      super(callable);
+    }
+
+    @Override
+    public void run() {
+      try {
+        super.run();
+      }
+      finally {
+        owner = null;
+      }
+    }
+  }
+
+  /**
+   * A complete {@link Injection}, for target class loaders that do not need to
+   * be injected.
+   */
+  private static final Injection INJECTED = new Injection(new Callable<Object>() {
+    @Override
+    public Object call() {
+      return null;
+    }
+  });
+
+  static {
+    INJECTED.run();
+  }
+
+  private final ClassLoaderMap<FutureTask<Boolean>> compatibility = new ClassLoaderMap<>();
+  private final ClassLoaderMap<Injection> injected = new ClassLoaderMap<>();
   private final PluginManifest pluginManifest;
   private final ClassLoader isoClassLoader;
+  private final File[] files;
 
   /**
    * Creates a new {@code RuleClassLoader} with the specified classpath URLs and
@@ -78,8 +161,48 @@ class RuleClassLoader extends URLClassLoader {
     super(AssembleUtil.toURLs(files), parent);
     this.pluginManifest = pluginManifest;
     this.isoClassLoader = isoClassLoader;
+    this.files = files;
     if (parent == null || parent == ClassLoader.getSystemClassLoader())
-      injected.put(parent, Boolean.TRUE);
+      injected.put(parent, INJECTED);
+  }
+
+  /**
+   * Waits if necessary for the specified {@link Future} to complete, and then
+   * returns its result. Interruption of the waiting thread is deferred until
+   * the {@link Future} is complete.
+   *
+   * @param <T> The type parameter of the result.
+   * @param future The {@link Future}.
+   * @return The result of the specified {@link Future}.
+   * @throws IllegalStateException If the computation of the {@link Future}
+   *           threw a checked exception.
+   */
+  static <T>T await(final Future<T> future) {
+    boolean interrupted = false;
+    try {
+      while (true) {
+        try {
+          return future.get();
+        }
+        catch (final InterruptedException e) {
+          interrupted = true;
+        }
+        catch (final ExecutionException e) {
+          final Throwable cause = e.getCause();
+          if (cause instanceof RuntimeException)
+            throw (RuntimeException)cause;
+
+          if (cause instanceof Error)
+            throw (Error)cause;
+
+          throw new IllegalStateException(cause);
+        }
+      }
+    }
+    finally {
+      if (interrupted)
+        Thread.currentThread().interrupt();
+    }
   }
 
   /**
@@ -91,38 +214,203 @@ class RuleClassLoader extends URLClassLoader {
    * will load all dependent classes that are also needed to be loaded, which
    * may belong to a different class loader (i.e. the parent, or parent's
    * parent, and so on).
+   * <p>
+   * The injection into each target {@code ClassLoader} is performed once, by
+   * the first thread to request it, without holding the monitor of the target
+   * {@code ClassLoader}. If the injection is in progress in another thread,
+   * the calling thread waits for it to complete only if {@code await} is
+   * {@code true}, because a thread that is loading a class (i.e. that may hold
+   * a class loading lock needed by the injection) must not wait.
    *
    * @param classLoader The target {@code ClassLoader} of the injection.
+   * @param await Whether to wait for an injection that is in progress in
+   *          another thread.
    */
-  void inject(final ClassLoader classLoader) {
-    if (injected.containsKey(classLoader))
-      return;
+  void inject(final ClassLoader classLoader, final boolean await) {
+    Injection injection = injected.get(classLoader);
+    if (injection == null) {
+      final Injection newInjection = new Injection(new Callable<Object>() {
+        @Override
+        public Object call() {
+          if (logger.isLoggable(Level.FINE))
+            logger.fine("RuleClassLoader<" + AssembleUtil.getNameId(RuleClassLoader.this) + ">.inject(" + AssembleUtil.getNameId(classLoader) + ")");
+
+          // Call Class.forName(...) for each class in ruleClassLoader to load in
+          // the caller's class loader. In lazy injection mode, only the AgentRule
+          // classes and the classes they reference are loaded, and all other
+          // classes are defined upon their first use via ClassLoaderAgent.LoadClass.
+          int injected = 0;
+          int deferred = 0;
+          for (final File file : files) {
+            for (final String resourceName : BytecodeIndex.get(file).getResourceNames()) {
+              if (isDeferred(resourceName)) {
+                ++deferred;
+              }
+              else {
+                loadClass.accept(resourceName, classLoader);
+                ++injected;
+              }
+            }
+          }
+
+          if (pluginManifest != null)
+            StartupReport.get(pluginManifest).onInject(injected, deferred);
+
+          if (lazyInject && logger.isLoggable(Level.FINE))
+            logger.fine("RuleClassLoader<" + AssembleUtil.getNameId(RuleClassLoader.this) + ">.inject(" + AssembleUtil.getNameId(classLoader) + "): " + injected + " classes injected, " + deferred + " classes deferred");
+
+          return null;
+        }
+      });
 
-    synchronized (classLoader) {
-      if (injected.containsKey(classLoader))
+      injection = injected.putIfAbsent(classLoader, newInjection);
+      if (injection == null) {
+        newInjection.run();
+        await(newInjection);
         return;
+      }
+    }
 
-      if (logger.isLoggable(Level.FINE))
-        logger.fine("RuleClassLoader<" + AssembleUtil.getNameId(this) + ">.inject(" + AssembleUtil.getNameId(classLoader) + ")");
+    if (await && !injection.isDone() && injection.owner != Thread.currentThread())
+      await(injection);
+  }
 
-      // Call Class.forName(...) for each class in ruleClassLoader to load in
-      // the caller's class loader.
-      try {
-        injected.put(classLoader, Boolean.FALSE);
-        AssembleUtil.<ClassLoader>forEachClass(getURLs(), classLoader, loadClass);
+  /**
+   * Returns whether the injection of classes into the specified
+   * {@code ClassLoader} is complete.
+   *
+   * @param classLoader The target {@code ClassLoader} of the injection.
+   * @return Whether the injection of classes into the specified
+   *         {@code ClassLoader} is complete.
+   */
+  boolean isClosed(final ClassLoader classLoader) {
+    final Injection injection = injected.get(classLoader);
+    return injection == INJECTED || !lazyInject && injection != null && injection.isDone();
+  }
+
+  /**
+   * Returns whether the injection of the class by the specified resource name
+   * is deferred until its first use, which is the case for all classes other
+   * than the classes of the Integration Rule in {@link #LAZY_INJECT lazy
+   * injection} mode.
+   *
+   * @param resourceName The resource name of the class.
+   * @return Whether the injection of the class by the specified resource name
+   *         is deferred until its first use.
+   */
+  private boolean isDeferred(final String resourceName) {
+    return lazyInject && !getEagerResources().contains(resourceName);
+  }
+
+  private volatile Set<String> eagerResources;
+
+  /**
+   * Returns the resource names of the classes that are loaded upon injection
+   * in {@link #LAZY_INJECT lazy injection} mode. These are the
+   * {@link AgentRule} classes declared in the {@code otarules.mf} of the
+   * Integration Rule (with their nested classes, which declare the advice),
+   * and the classes of this {@code RuleClassLoader} that these classes
+   * reference, such as the intercept classes that are invoked by the advice
+   * inlined into the target classes.
+   *
+   * @return The resource names of the classes that are loaded upon injection
+   *         in {@link #LAZY_INJECT lazy injection} mode.
+   * @throws IllegalStateException If an I/O error has occurred.
+   */
+  private Set<String> getEagerResources() {
+    if (eagerResources != null)
+      return eagerResources;
+
+    final URL rulesUrl = findResource(RULES_MF);
+    if (rulesUrl == null)
+      return eagerResources = Collections.emptySet();
+
+    try {
+      final File ruleJar = AssembleUtil.getSourceLocation(rulesUrl, RULES_MF);
+      Set<String> resources = ruleJarToEagerResources.get(ruleJar);
+      if (resources == null) {
+        resources = getEagerResources(rulesUrl);
+        final Set<String> exists = ruleJarToEagerResources.putIfAbsent(ruleJar, resources);
+        if (exists != null)
+          resources = exists;
       }
-      catch (final IOException e) {
-        throw new IllegalStateException(e);
+
+      return eagerResources = resources;
+    }
+    catch (final IOException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private Set<String> getEagerResources(final URL rulesUrl) throws IOException {
+    final List<String[]> entries = ByteBuddyManager.readEntries(new InputStreamReader(rulesUrl.openStream()));
+    final String[] prefixes = new String[entries.size()];
+    for (int i = 0; i < prefixes.length; ++i)
+      prefixes[i] = AssembleUtil.classNameToResource(entries.get(i)[0]);
+
+    // The AgentRule classes, and their nested classes
+    final HashSet<String> ruleResources = new HashSet<>();
+    for (final File file : files) {
+      for (final String resourceName : BytecodeIndex.get(file).getResourceNames()) {
+        for (final String prefix : prefixes) {
+          if (resourceName.equals(prefix) || resourceName.startsWith(prefix.substring(0, prefix.length() - 6) + "$")) {
+            ruleResources.add(resourceName);
+            break;
+          }
+        }
       }
-      finally {
-        injected.put(classLoader, Boolean.TRUE);
+    }
+
+    // The classes of this RuleClassLoader that are referenced by them
+    final HashSet<String> resources = new HashSet<>(ruleResources);
+    for (final String ruleResource : ruleResources) {
+      final ClassReader classReader = new ClassReader(findBytecode(ruleResource));
+      final char[] buffer = new char[classReader.getMaxStringLength()];
+      for (int i = 1; i < classReader.getItemCount(); ++i) {
+        final int offset = classReader.getItem(i);
+        // The tag of a CONSTANT_Class_info is 7
+        if (offset > 0 && classReader.readByte(offset - 1) == 7) {
+          final String resourceName = classReader.readUTF8(offset, buffer) + ".class";
+          if (findBytecode(resourceName) != null)
+            resources.add(resourceName);
+        }
       }
     }
+
+    if (logger.isLoggable(Level.FINE))
+      logger.fine("RuleClassLoader<" + AssembleUtil.getNameId(this) + ">.getEagerResources(): " + resources);
+
+    return Collections.unmodifiableSet(resources);
   }
 
-  boolean isClosed(final ClassLoader classLoader) {
-    final Boolean preLoaded = injected.get(classLoader);
-    return preLoaded != null && preLoaded;
+  /**
+   * Returns the bytecode of the class by the specified resource name in the
+   * classpath of this {@code RuleClassLoader} (without delegation to the
+   * parent class loader), or {@code null} if the class is not found. The
+   * bytecode is read from the {@link BytecodeIndex} of each classpath entry,
+   * which is shared by all {@code RuleClassLoader}s of the Integration Rule.
+   * The returned array must not be modified.
+   *
+   * @param resourceName The resource name of the class.
+   * @return The bytecode of the class by the specified resource name, or
+   *         {@code null} if the class is not found.
+   */
+  byte[] getBytecode(final String resourceName) {
+    final byte[] bytecode = findBytecode(resourceName);
+    if (bytecode != null && pluginManifest != null && isDeferred(resourceName))
+      StartupReport.get(pluginManifest).onDefineDeferred();
+
+    return bytecode;
+  }
+
+  private byte[] findBytecode(final String resourceName) {
+    for (final File file : files) {
+      final byte[] bytecode = BytecodeIndex.get(file).getBytecode(resourceName);
+      if (bytecode != null)
+        return bytecode;
+    }
+
+    return null;
   }
 
   /**
@@ -149,27 +437,111 @@ class RuleClassLoader extends URLClassLoader {
     if (classLoader == null)
       classLoader = BootProxyClassLoader.INSTANCE;
 
-    Boolean compatible = compatibility.get(classLoader);
-    if (compatible != null)
-      return compatible;
-
-    synchronized (classLoader) {
-      compatible = compatibility.get(classLoader);
-      if (compatible != null)
-        return compatible;
+    // Verify the compatibility with the target class loader once, whereby
+    // concurrent callers for the same class loader wait for the verification
+    // of the first caller.
+    FutureTask<Boolean> compatible = compatibility.get(classLoader);
+    if (compatible == null) {
+      final ClassLoader target = classLoader;
+      final FutureTask<Boolean> newCompatible = new FutureTask<>(new Callable<Boolean>() {
+        @Override
+        public Boolean call() throws ClassNotFoundException, IllegalAccessException, InvocationTargetException, IOException, NoSuchMethodException {
+          final boolean isCompatible = isFingerprintCompatible(target);
+          if (!isCompatible)
+            close();
 
-      try {
-        compatible = isFingerprintCompatible(classLoader);
-        if (!compatible)
-          close();
+          return isCompatible;
+        }
+      });
 
-        compatibility.put(classLoader, compatible);
-        return compatible;
-      }
-      catch (final ClassNotFoundException | IllegalAccessException | InvocationTargetException | IOException | NoSuchMethodException e) {
-        throw new IllegalStateException(e);
+      compatible = compatibility.putIfAbsent(classLoader, newCompatible);
+      if (compatible == null) {
+        compatible = newCompatible;
+        newCompatible.run();
       }
     }
+
+    try {
+      return await(compatible);
+    }
+    catch (final RuntimeException | Error e) {
+      // Allow the verification to be reattempted
+      compatibility.remove(classLoader, compatible);
+      throw e;
+    }
+  }
+
+  /**
+   * Adds the specified time to the total fingerprint verification time of the
+   * Integration Rule by the specified name.
+   *
+   * @param pluginName The name of the Integration Rule.
+   * @param nanos The verification time in nanoseconds.
+   * @return The specified verification time in nanoseconds.
+   */
+  private static long addVerificationTime(final String pluginName, final long nanos) {
+    AtomicLong total = pluginNameToVerificationTime.get(pluginName);
+    if (total == null) {
+      final AtomicLong exists = pluginNameToVerificationTime.putIfAbsent(pluginName, total = new AtomicLong());
+      if (exists != null)
+        total = exists;
+    }
+
+    total.addAndGet(nanos);
+    return nanos;
+  }
+
+  /**
+   * Returns the total fingerprint verification time in nanoseconds of the
+   * Integration Rule by the specified name, across all class loaders.
+   *
+   * @param pluginName The name of the Integration Rule.
+   * @return The total fingerprint verification time in nanoseconds of the
+   *         Integration Rule by the specified name.
+   */
+  static long getVerificationTime(final String pluginName) {
+    final AtomicLong total = pluginNameToVerificationTime.get(pluginName);
+    return total == null ? 0 : total.get();
+  }
+
+  /**
+   * Returns the {@code LibraryFingerprint} deserialized from the specified
+   * {@link URL}, or {@code null} if the URL is null or does not provide a
+   * fingerprint. The reflective lookups of {@code LibraryFingerprint} methods,
+   * as well as the deserialized fingerprints, are cached.
+   *
+   * @param url The {@link URL} of the fingerprint.bin resource.
+   * @return The {@code LibraryFingerprint} deserialized from the specified
+   *         {@link URL}, or {@code null} if the URL is null or does not provide
+   *         a fingerprint.
+   */
+  private Object getFingerprint(final URL url) throws ClassNotFoundException, IllegalAccessException, InvocationTargetException, NoSuchMethodException {
+    if (fromFileMethod == null) {
+      final Class<?> libraryFingerprintClass = isoClassLoader.loadClass("io.opentracing.contrib.specialagent.LibraryFingerprint");
+      isCompatibleMethod = libraryFingerprintClass.getDeclaredMethod("isCompatible", ClassLoader.class, boolean.class);
+      fromFileMethod = libraryFingerprintClass.getDeclaredMethod("fromFile", URL.class);
+    }
+
+    if (url == null)
+      return fromFileMethod.invoke(null, url);
+
+    final String key = url.toString();
+    Object fingerprint = urlToFingerprint.get(key);
+    if (fingerprint != null) {
+      fingerprintCacheHits.incrementAndGet();
+    }
+    else {
+      final long misses = fingerprintCacheMisses.incrementAndGet();
+      fingerprint = fromFileMethod.invoke(null, url);
+      final Object exists = urlToFingerprint.putIfAbsent(key, fingerprint == null ? NULL_FINGERPRINT : fingerprint);
+      if (exists != null)
+        fingerprint = exists;
+
+      if (logger.isLoggable(Level.FINE))
+        logger.fine("Fingerprint cache: " + urlToFingerprint.size() + " entries, " + fingerprintCacheHits.get() + " hits, " + misses + " misses");
+    }
+
+    return fingerprint == NULL_FINGERPRINT ? null : fingerprint;
   }
 
   private boolean isFingerprintCompatible(final ClassLoader classLoader) throws ClassNotFoundException, IllegalAccessException, InvocationTargetException, NoSuchMethodException {
@@ -180,21 +552,22 @@ class RuleClassLoader extends URLClassLoader {
       return true;
     }
 
-    final Class<?> libraryFingerprintClass = isoClassLoader.loadClass("io.opentracing.contrib.specialagent.LibraryFingerprint");
-    final Method fromFileMethod = libraryFingerprintClass.getDeclaredMethod("fromFile", URL.class);
-    final Object fingerprint = fromFileMethod.invoke(null, pluginManifest.getFingerprint());
+    final long startTime = System.nanoTime();
+    final Object fingerprint = getFingerprint(pluginManifest.getFingerprint());
     if (fingerprint != null) {
-      final Method isCompatibleMethod = libraryFingerprintClass.getDeclaredMethod("isCompatible", ClassLoader.class);
-      final List<?> errors = (List<?>)isCompatibleMethod.invoke(fingerprint, classLoader);
+      // All errors are only collected if they are to be logged, otherwise the
+      // verification stops at the first error
+      final List<?> errors = (List<?>)isCompatibleMethod.invoke(fingerprint, classLoader, logger.isLoggable(Level.FINE));
+      final long time = addVerificationTime(pluginManifest.name, System.nanoTime() - startTime);
       if (errors != null) {
         if (logger.isLoggable(Level.FINE))
-          logger.fine("Disallowing integration with \"" + pluginManifest.name + "\" due to \"" + UtilConstants.FINGERPRINT_FILE + " mismatch\" errors:\n" + AssembleUtil.toIndentedString(errors) + "\nin:\n" + AssembleUtil.toIndentedString(getURLs()));
+          logger.fine("Disallowing integration with \"" + pluginManifest.name + "\" due to \"" + UtilConstants.FINGERPRINT_FILE + " mismatch\" (verified in " + (time / 1000) + "us) errors:\n" + AssembleUtil.toIndentedString(errors) + "\nin:\n" + AssembleUtil.toIndentedString(getURLs()));
 
         return false;
       }
 
       if (logger.isLoggable(Level.FINE))
-        logger.fine("Allowing integration with \"" + pluginManifest.name + "\" due to \"" + UtilConstants.FINGERPRINT_FILE + " match\" for:\n" + AssembleUtil.toIndentedString(getURLs()));
+        logger.fine("Allowing integration with \"" + pluginManifest.name + "\" due to \"" + UtilConstants.FINGERPRINT_FILE + " match\" (verified in " + (time / 1000) + "us) for:\n" + AssembleUtil.toIndentedString(getURLs()));
 
       return true;
     }
@@ -30,9 +30,15 @@ import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.FutureTask;
 import java.util.jar.JarFile;
 import java.util.regex.Pattern;
 
@@ -54,7 +60,10 @@ public class SpecialAgent {
   private static final String DEFINE_CLASS = ClassLoader.class.getName() + ".defineClass";
   private static final PluginManifest.Directory pluginManifestDirectory = new PluginManifest.Directory();
   private static final ClassLoaderMap<List<RuleClassLoader>> classLoaderToRuleClassLoader = new ClassLoaderMap<>();
+  private static final ConcurrentHashMap<PluginManifest,ClassLoaderMap<FutureTask<RuleClassLoader>>> pluginManifestToLinks = new ConcurrentHashMap<>();
   private static final HashMap<File,File[]> pluginFileToDependencies = new HashMap<>();
+  private static final HashMap<File,StartupIndex.Entry> pluginFileToIndexEntry = new HashMap<>();
+  private static volatile ResourceIndex resourceIndex;
 
   private static PluginsClassLoader pluginsClassLoader;
   public static IsoClassLoader isoClassLoader;
@@ -149,7 +158,9 @@ public class SpecialAgent {
 
     // First, load system properties, in order to digest and absorb the
     // configuration properties into system properties.
+    long time = System.nanoTime();
     AssembleUtil.loadProperties();
+    time = StartupReport.phase("loadProperties", time);
 
     // Second, load the `BootLoaderAgent`, in order to allow the bootstrap
     // class loader to gain visibility of resources that are dynamically
@@ -158,9 +169,10 @@ public class SpecialAgent {
     // such classes become part of the bootstrap class loader, but access to
     // the resources for the bytecode of these classes is not provided.
     BootLoaderAgent.premain(inst, null);
+    StartupReport.phase("bootLoaderAgent", time);
 
     // Third, load the `AgentRule` class, in order to load
-    // `AgentRule.isThreadInstrumentable`, so that the lineage of threads can
+    // `AgentRule.threadState`, so that the lineage of threads can
     // be captured as early in the VM's lifecycle as possible.
     AgentRule.$Access.load();
 
@@ -171,6 +183,8 @@ public class SpecialAgent {
     final long startupTime = (System.currentTimeMillis() - startTime) / 10;
     if (logger.isLoggable(Level.FINE))
       logger.fine("Initialized SpecialAgent in " + (startupTime / 100d) + "s\n");
+
+    StartupReport.write();
   }
 
   /**
@@ -210,13 +224,28 @@ public class SpecialAgent {
     if (logger.isLoggable(Level.FINER))
       logger.finer("Trace Exporters are " + (allExportersEnabled ? "en" : "dis") + "abled");
 
+    // If `-Dsa.extract.dir` is specified, the embedded JARs are extracted to a
+    // stable directory that is reused across runs.
+    final String extractDir = System.getProperty(SpecialAgentUtil.EXTRACT_DIR);
+    final boolean reuseDestDir = extractDir != null;
     final Supplier<File> destDir = new Supplier<File>() {
       private File destDir;
 
       @Override
       public File get() {
+        if (destDir != null)
+          return destDir;
+
+        if (reuseDestDir) {
+          destDir = new File(extractDir);
+          if (!destDir.isDirectory() && !destDir.mkdirs())
+            throw new IllegalStateException("Unable to create directory: " + destDir);
+
+          return destDir;
+        }
+
         try {
-          return destDir == null ? destDir = Files.createTempDirectory("opentracing-specialagent").toFile() : destDir;
+          return destDir = Files.createTempDirectory("opentracing-specialagent").toFile();
         }
         catch (final IOException e) {
           throw new IllegalStateException(e);
@@ -224,6 +253,7 @@ public class SpecialAgent {
       }
     };
 
+    long time = System.nanoTime();
     if (ruleFiles != null) {
       // For AgentRunner execution...
       SpecialAgent.isoClassLoader = Objects.requireNonNull(isoClassLoader);
@@ -236,9 +266,9 @@ public class SpecialAgent {
       final ArrayList<URL> isoUrls = new ArrayList<>();
 
       // Process the ext JARs from AssembleUtil#META_INF_EXT_PATH
-      SpecialAgentUtil.findJarResources(UtilConstants.META_INF_ISO_PATH, destDir, new Predicate<File>() {
+      SpecialAgentUtil.findJarResources(UtilConstants.META_INF_ISO_PATH, destDir, reuseDestDir, false, new BiPredicate<File,PluginManifest>() {
         @Override
-        public boolean test(final File file) {
+        public boolean test(final File file, final PluginManifest pluginManifest) {
           try {
             isoUrls.add(new URL("file", "", file.getAbsolutePath()));
             return true;
@@ -252,11 +282,10 @@ public class SpecialAgent {
       SpecialAgent.isoClassLoader = new IsoClassLoader(isoUrls.toArray(new URL[isoUrls.size()]), ClassLoader.getSystemClassLoader());
 
       // Process the plugin JARs from AssembleUtil#META_INF_PLUGIN_PATH
-      final Predicate<File> loadPluginPredicate = new Predicate<File>() {
+      final BiPredicate<File,PluginManifest> loadPluginPredicate = new BiPredicate<File,PluginManifest>() {
         @Override
-        public boolean test(final File file) {
+        public boolean test(final File file, final PluginManifest pluginManifest) {
           // Then, identify whether the JAR is an Integration Rule or Trace Exporter
-          final PluginManifest pluginManifest = PluginManifest.getPluginManifest(file);
           boolean enablePlugin = true;
           if (pluginManifest != null) {
             final boolean isIntegration = pluginManifest.type == PluginManifest.Type.INSTRUMENTATION;
@@ -294,10 +323,29 @@ public class SpecialAgent {
       // First, load all plugins explicitly included with the `-Dsa.classpath=...` system property.
       if (classPaths != null)
         for (final File classPath : classPaths)
-          loadPluginPredicate.test(classPath);
+          loadPluginPredicate.test(classPath, PluginManifest.getPluginManifest(classPath));
+
+      // Then, load the plugins inside the SpecialAgent JAR, as per the index
+      // that is prebuilt by the AssembleMojo, or by scanning the JARs if the
+      // index is not present.
+      final StartupIndex startupIndex = StartupIndex.find(ClassLoader.getSystemClassLoader());
+      if (logger.isLoggable(Level.FINER))
+        logger.finer(startupIndex != null ? "Found " + UtilConstants.META_INF_PLUGIN_INDEX + ": " + startupIndex : "Could not find " + UtilConstants.META_INF_PLUGIN_INDEX);
+
+      SpecialAgentUtil.findJarResources(UtilConstants.META_INF_PLUGIN_PATH, destDir, reuseDestDir, startupIndex == null, startupIndex == null ? loadPluginPredicate : new BiPredicate<File,PluginManifest>() {
+        @Override
+        public boolean test(final File file, final PluginManifest pluginManifest) {
+          final StartupIndex.Entry entry = startupIndex.getEntry(file);
+          if (entry == null)
+            return loadPluginPredicate.test(file, PluginManifest.getPluginManifest(file));
 
-      // Then, load the plugins inside the SpecialAgent JAR.
-      SpecialAgentUtil.findJarResources(UtilConstants.META_INF_PLUGIN_PATH, destDir, loadPluginPredicate);
+          if (!loadPluginPredicate.test(file, entry.getPluginManifest(file)))
+            return false;
+
+          pluginFileToIndexEntry.put(file.getAbsoluteFile(), entry);
+          return true;
+        }
+      });
 
       if (pluginManifestDirectory.size() == 0)
         logger.warning("No JARs were found under " + UtilConstants.META_INF_PLUGIN_PATH + ", and ruleFiles == null");
@@ -307,6 +355,9 @@ public class SpecialAgent {
     final Enumeration<URL> instrumentationRules = manager.getResources();
     while (instrumentationRules.hasMoreElements()) {
       final File pluginFile = AssembleUtil.getSourceLocation(instrumentationRules.nextElement(), manager.file);
+      if (pluginManifestDirectory.containsKey(pluginFile))
+        continue;
+
       final PluginManifest pluginManifest = PluginManifest.getPluginManifest(pluginFile);
       pluginManifestDirectory.put(pluginManifest.file, pluginManifest);
     }
@@ -317,28 +368,92 @@ public class SpecialAgent {
       logger.finer("Loading " + pluginManifestDirectory.size() + " rule paths:\n" + AssembleUtil.toIndentedString(pluginManifestDirectory.keySet()));
 
     pluginsClassLoader = new PluginsClassLoader(pluginManifestDirectory.keySet());
+    time = StartupReport.phase("extraction", time);
 
     final HashMap<String,String> nameToVersion = new HashMap<>();
-    final int count = loadDependencies(pluginsClassLoader, nameToVersion) + loadDependencies(ClassLoader.getSystemClassLoader(), nameToVersion);
+    // The same dependencies.tgf may be visible from both class loaders (i.e.
+    // when run from a test), so the visited URLs are shared between the calls.
+    final HashSet<String> visitedUrls = new HashSet<>();
+    int count = loadIndexedDependencies(nameToVersion);
+    // Only scan the pluginsClassLoader if it has JARs that are not in the StartupIndex
+    if (pluginFileToIndexEntry.size() < pluginManifestDirectory.size())
+      count += loadDependencies(pluginsClassLoader, nameToVersion, visitedUrls);
+
+    count += loadDependencies(ClassLoader.getSystemClassLoader(), nameToVersion, visitedUrls);
     if (count == 0)
       logger.log(Level.SEVERE, "Could not find " + DEPENDENCIES_TGF + " in any rule JARs");
 
+    time = StartupReport.phase("loadDependencies", time);
+
+    final LinkedHashSet<File> dependencyFiles = new LinkedHashSet<>();
+    for (final File[] files : pluginFileToDependencies.values())
+      Collections.addAll(dependencyFiles, files);
+
+    resourceIndex = new ResourceIndex(dependencyFiles);
+    StartupReport.phase("indexResources", time);
+
     final Event[] events = SpecialAgentUtil.digestEventsProperty(System.getProperty(LOG_EVENTS_PROPERTY));
     loadRules(manager, events);
   }
 
+  /**
+   * Links the rule JARs in the {@link StartupIndex} with their dependencies, as
+   * resolved by the {@code AssembleMojo} from their dependencies.tgf files.
+   *
+   * @param nameToVersion Map of plugin names to versions to be filled by this
+   *          method.
+   * @return The number of rule JARs that were linked.
+   */
+  private static int loadIndexedDependencies(final Map<String,String> nameToVersion) {
+    int count = 0;
+    for (final Map.Entry<File,StartupIndex.Entry> entry : pluginFileToIndexEntry.entrySet()) {
+      final File jarFile = entry.getKey();
+      final StartupIndex.Entry indexEntry = entry.getValue();
+      if (indexEntry.getVersion() == null)
+        continue;
+
+      final PluginManifest pluginManifest = pluginManifestDirectory.get(jarFile);
+      if (pluginManifest == null)
+        throw new IllegalStateException("Expected to find " + PluginManifest.class.getSimpleName() + " for file: " + jarFile + " in: " + pluginManifestDirectory.keySet());
+
+      putVersion(nameToVersion, pluginManifest, indexEntry.getVersion());
+      final File[] dependencyFiles = indexEntry.getDependencyFiles(pluginsClassLoader.getFiles());
+      if (dependencyFiles == null)
+        throw new IllegalStateException("Could not find a rule JAR referenced in " + jarFile + " from: " + indexEntry);
+
+      if (logger.isLoggable(Level.FINEST))
+        logger.finest("Registering indexed dependencies for " + jarFile + ":\n" + AssembleUtil.toIndentedString(dependencyFiles));
+
+      ++count;
+      pluginFileToDependencies.put(jarFile, dependencyFiles);
+    }
+
+    return count;
+  }
+
+  private static void putVersion(final Map<String,String> nameToVersion, final PluginManifest pluginManifest, final String version) {
+    final String exists = nameToVersion.get(pluginManifest.name);
+    if (exists != null && !exists.equals(version))
+      throw new IllegalStateException("Illegal attempt to overwrite previously defined version for: " + pluginManifest.name);
+
+    nameToVersion.put(pluginManifest.name, version);
+  }
+
   /**
    * Loads all dependencies.tgf files, and cross-links the dependency references
    * with the matching rule JARs.
    *
    * @param classLoader The {@code ClassLoader} in which to search for
    *          dependencies.tgf files.
+   * @param nameToVersion Map of plugin names to versions to be filled by this
+   *          method.
+   * @param urls The set of dependencies.tgf URLs that have already been
+   *          visited, to be filled by this method.
    * @return The number of dependencies.tgf files that were loaded.
    */
-  private static int loadDependencies(final ClassLoader classLoader, final Map<String,String> nameToVersion) throws IOException {
+  private static int loadDependencies(final ClassLoader classLoader, final Map<String,String> nameToVersion, final Set<String> urls) throws IOException {
     int count = 0;
     final Enumeration<URL> enumeration = classLoader.getResources(DEPENDENCIES_TGF);
-    final HashSet<String> urls = new HashSet<>();
     while (enumeration.hasMoreElements()) {
       final URL url = enumeration.nextElement();
       if (urls.contains(url.toString()))
@@ -349,6 +464,8 @@ public class SpecialAgent {
         logger.finest("Found " + DEPENDENCIES_TGF + ": <" + AssembleUtil.getNameId(url) + ">" + url);
 
       final File jarFile = AssembleUtil.getSourceLocation(url, DEPENDENCIES_TGF);
+      if (pluginFileToIndexEntry.containsKey(jarFile.getAbsoluteFile()))
+        continue;
 
       final String dependenciesTgf = new String(AssembleUtil.readBytes(url));
       final String firstLine = dependenciesTgf.substring(0, dependenciesTgf.indexOf('\n'));
@@ -358,11 +475,7 @@ public class SpecialAgent {
       if (pluginManifest == null)
         throw new IllegalStateException("Expected to find " + PluginManifest.class.getSimpleName() + " for file: " + jarFile + " in: " + pluginManifestDirectory.keySet());
 
-      final String exists = nameToVersion.get(pluginManifest.name);
-      if (exists != null && !exists.equals(version))
-        throw new IllegalStateException("Illegal attempt to overwrite previously defined version for: " + pluginManifest.name);
-
-      nameToVersion.put(pluginManifest.name, version);
+      putVersion(nameToVersion, pluginManifest, version);
 
       final File[] dependencyFiles = MavenUtil.filterRuleURLs(pluginsClassLoader.getFiles(), dependenciesTgf, true, "compile");
       if (logger.isLoggable(Level.FINEST))
@@ -415,7 +528,16 @@ public class SpecialAgent {
       for (final IntegrationRule integraitonRule : integraitonRules) {
         final Class<?> cls = isoClassLoader.loadClass(integraitonRule.getPluginManifest().adapterClassName);
         if (adapterClasses.add(cls)) {
-          Collections.addAll(tracerExcludedClasses, ((Adapter)cls.getConstructor().newInstance()).loadTracer(isoClassLoader));
+          // Threads started by the tracer during its initialization are tracer
+          // threads, and are thereby marked to not be instrumentable.
+          final ThreadLocalCounter entryCounter = AgentRule.$Access.entryCounter();
+          entryCounter.increment();
+          try {
+            Collections.addAll(tracerExcludedClasses, ((Adapter)cls.getConstructor().newInstance()).loadTracer(isoClassLoader));
+          }
+          finally {
+            entryCounter.decrement();
+          }
         }
       }
     }
@@ -444,12 +566,18 @@ public class SpecialAgent {
         AgentRule.$Access.configure(new Runnable() {
           @Override
           public void run() {
+            final long time = System.nanoTime();
             manager.loadRules(inst, false, integrationRules, tracerExcludedClasses.size() == 0 ? null : tracerExcludedClasses.toArray(new String[tracerExcludedClasses.size()]), events);
+            StartupReport.phase("loadRules", time);
+            StartupReport.write();
           }
         }, classNameToName);
 
-        final int noDeferrers = manager.scanRules(inst, pluginsClassLoader, pluginManifestDirectory, integrationRules, classNameToName);
+        long time = System.nanoTime();
+        final int noDeferrers = manager.scanRules(inst, pluginsClassLoader, pluginManifestDirectory, pluginFileToIndexEntry, integrationRules, classNameToName);
+        time = StartupReport.phase("scanRules", time);
         loadAdapter(tracerExcludedClasses, integrationRules);
+        StartupReport.phase("loadAdapter", time);
         if (tracerExcludedClasses.size() == 0)
           logger.warning("No adapter was loaded!");
 
@@ -496,7 +624,9 @@ public class SpecialAgent {
 
           if (attachMode == AttachMode.STATIC_DEFERRED) {
             // Just load the deferrers
+            time = System.nanoTime();
             manager.loadRules(inst, true, integrationRules, tracerExcludedClasses.size() == 0 ? null : tracerExcludedClasses.toArray(new String[tracerExcludedClasses.size()]), events);
+            StartupReport.phase("loadDeferrers", time);
             return;
           }
         }
@@ -519,6 +649,24 @@ public class SpecialAgent {
     }
   }
 
+  /**
+   * Returns the {@link PluginManifest} of the enabled plugin with the specified
+   * name, or {@code null} if no such plugin is enabled.
+   *
+   * @param name The name of the plugin.
+   * @return The {@link PluginManifest} of the enabled plugin with the specified
+   *         name, or {@code null} if no such plugin is enabled.
+   */
+  static PluginManifest getPluginManifest(final String name) {
+    for (final File file : pluginManifestDirectory.keySet()) {
+      final PluginManifest pluginManifest = pluginManifestDirectory.get(file);
+      if (pluginManifest != null && pluginManifest.name.equals(name))
+        return pluginManifest;
+    }
+
+    return null;
+  }
+
   /**
    * Links the {@link AgentRule} at the specified {@code index} to the provided
    * target {@link ClassLoader classLoader}.
@@ -530,22 +678,94 @@ public class SpecialAgent {
    * @return Whether the Integration Rule was compatible and was successfully
    *         linked to the provided target {@link ClassLoader classLoader}.
    */
-  @SuppressWarnings("resource")
   public static boolean linkRule(final PluginManifest pluginManifest, final ClassLoader classLoader) {
-    final Map<ClassLoader,Boolean> classLoaderToCompatibility = pluginManifest.getClassLoaderToCompatibility();
-    Boolean compatible = classLoaderToCompatibility.get(classLoader);
+    ClassLoaderMap<FutureTask<RuleClassLoader>> links = pluginManifestToLinks.get(pluginManifest);
+    if (links == null) {
+      final ClassLoaderMap<FutureTask<RuleClassLoader>> exists = pluginManifestToLinks.putIfAbsent(pluginManifest, links = new ClassLoaderMap<>());
+      if (exists != null)
+        links = exists;
+    }
 
-    if (compatible != null && compatible) {
+    // Link the Integration Rule to the target class loader once, whereby
+    // concurrent callers for the same rule and class loader wait for the link
+    // of the first caller.
+    FutureTask<RuleClassLoader> link = links.get(classLoader);
+    final boolean cached;
+    if (link == null) {
+      final FutureTask<RuleClassLoader> newLink = new FutureTask<>(new Callable<RuleClassLoader>() {
+        @Override
+        public RuleClassLoader call() {
+          return link(pluginManifest, classLoader);
+        }
+      });
+
+      link = links.putIfAbsent(classLoader, newLink);
+      if (!(cached = link != null)) {
+        link = newLink;
+        newLink.run();
+      }
+    }
+    else {
+      cached = true;
+    }
+
+    final RuleClassLoader ruleClassLoader;
+    try {
+      ruleClassLoader = RuleClassLoader.await(link);
+    }
+    catch (final RuntimeException | Error e) {
+      // Allow the link to be reattempted
+      links.remove(classLoader, link);
+      throw e;
+    }
+
+    if (cached) {
       if (logger.isLoggable(Level.FINEST))
-        logger.finest("SpecialAgent.linkRule(\"" + pluginManifest.name + "\", " + AssembleUtil.getNameId(classLoader) + "): compatible = " + compatible + " [cached]");
+        logger.finest("SpecialAgent.linkRule(\"" + pluginManifest.name + "\", " + AssembleUtil.getNameId(classLoader) + "): compatible = " + (ruleClassLoader != null) + " [cached]");
+
+      return ruleClassLoader != null;
+    }
+
+    if (ruleClassLoader == null)
+      return false;
+
+    // If the callstack is coming from ClassLoader#defineClass, defer injection of
+    // classes, as injection from ClassLoader#defineClass may lead to LinkageError
+    // (duplicate class definition), or a ClassCircularityError.
+    if (AgentRuleUtil.callerEquals(0, Integer.MAX_VALUE, DEFINE_CLASS)) {
+      if (logger.isLoggable(Level.FINER))
+        logger.finer("[" + pluginManifest.name + "] Injection of integration classes deferred");
 
       return true;
     }
 
+    // Otherwise, inject the classes immediately.
+    if (logger.isLoggable(Level.FINER))
+      logger.finer("[" + pluginManifest.name + "] Injection of integration classes called");
+
+    ruleClassLoader.inject(classLoader, true);
+    return true;
+  }
+
+  /**
+   * Creates the {@link RuleClassLoader} of the specified {@link PluginManifest}
+   * for the provided target {@link ClassLoader classLoader}, and associates it
+   * with the target class loader if the Integration Rule is compatible.
+   *
+   * @param pluginManifest The {@link PluginManifest} to be linked to the
+   *          provided target {@link ClassLoader classLoader}.
+   * @param classLoader The target {@link ClassLoader classLoader} to which the
+   *          Integration Rule is to be linked.
+   * @return The {@link RuleClassLoader} of the Integration Rule, or
+   *         {@code null} if the Integration Rule is not compatible with the
+   *         provided target {@link ClassLoader classLoader}.
+   */
+  @SuppressWarnings("resource")
+  private static RuleClassLoader link(final PluginManifest pluginManifest, final ClassLoader classLoader) {
     // Find the Plugin File (identified by index passed to this method)
     final File pluginFile = pluginManifest.file;
     if (logger.isLoggable(Level.FINER))
-      logger.finer("SpecialAgent.linkRule(\"" + pluginManifest.name + "\", " + AssembleUtil.getNameId(classLoader) + "): compatible = " + compatible + ", RulePath: " + pluginFile);
+      logger.finer("SpecialAgent.linkRule(\"" + pluginManifest.name + "\", " + AssembleUtil.getNameId(classLoader) + "): RulePath: " + pluginFile);
 
     // Now find all the paths that pluginFile depends on, by reading dependencies.tgf
     final File[] pluginDependencyFiles = pluginFileToDependencies.get(pluginFile);
@@ -557,9 +777,7 @@ public class SpecialAgent {
 
     // Create an isolated (no parent class loader) URLClassLoader with the pluginDependencyFiles
     final RuleClassLoader ruleClassLoader = new RuleClassLoader(pluginManifest, isoClassLoader, classLoader, pluginDependencyFiles);
-    compatible = ruleClassLoader.isCompatible(classLoader);
-    classLoaderToCompatibility.put(classLoader, compatible);
-    if (!compatible) {
+    if (!ruleClassLoader.isCompatible(classLoader)) {
       try {
         ruleClassLoader.close();
       }
@@ -567,7 +785,7 @@ public class SpecialAgent {
         logger.log(Level.WARNING, "[" + pluginManifest.name + "] Failed to close " + RuleClassLoader.class.getSimpleName() + ": " + AssembleUtil.getNameId(ruleClassLoader), e);
       }
 
-      return false;
+      return null;
     }
 
     if (classLoader == null) {
@@ -604,38 +822,16 @@ public class SpecialAgent {
     // Associate the RuleClassLoader with the target class's class loader
     List<RuleClassLoader> ruleClassLoaders = classLoaderToRuleClassLoader.get(classLoader);
     if (ruleClassLoaders == null) {
-      synchronized (classLoaderToRuleClassLoader) {
-        ruleClassLoaders = classLoaderToRuleClassLoader.get(classLoader);
-        if (ruleClassLoaders == null) {
-          classLoaderToRuleClassLoader.put(classLoader, ruleClassLoaders = new IdentityList<>(new ArrayList<RuleClassLoader>()));
-        }
-      }
+      final List<RuleClassLoader> exists = classLoaderToRuleClassLoader.putIfAbsent(classLoader, ruleClassLoaders = new CopyOnWriteArrayList<>());
+      if (exists != null)
+        ruleClassLoaders = exists;
     }
 
-    synchronized (ruleClassLoaders) {
-      if (!ruleClassLoaders.contains(ruleClassLoader)) {
-        ruleClassLoaders.add(ruleClassLoader);
-      }
-    }
-
-    // If the callstack is coming from ClassLoader#defineClass, defer injection of
-    // classes, as injection from ClassLoader#defineClass may lead to LinkageError
-    // (duplicate class definition), or a ClassCircularityError.
-    for (final StackTraceElement stackTraceElement : Thread.currentThread().getStackTrace()) {
-      if (DEFINE_CLASS.equals(stackTraceElement.getClassName() + "." + stackTraceElement.getMethodName())) {
-        if (logger.isLoggable(Level.FINER))
-          logger.finer("[" + pluginManifest.name + "] Injection of integration classes deferred");
-
-        return true;
-      }
-    }
-
-    // Otherwise, inject the classes immediately.
-    if (logger.isLoggable(Level.FINER))
-      logger.finer("[" + pluginManifest.name + "] Injection of integration classes called");
+    ruleClassLoaders.add(ruleClassLoader);
+    if (resourceIndex != null)
+      resourceIndex.invalidate(classLoader);
 
-    ruleClassLoader.inject(classLoader);
-    return true;
+    return ruleClassLoader;
   }
 
   /**
@@ -693,7 +889,7 @@ public class SpecialAgent {
     public Boolean apply(final ClassLoader targetLoader, final String name, final List<RuleClassLoader> ruleClassLoaders, final ClassLoader contextLoader) {
       for (int i = 0; i < ruleClassLoaders.size(); ++i) {
         final RuleClassLoader ruleClassLoader = ruleClassLoaders.get(i);
-        ruleClassLoader.inject(contextLoader);
+        ruleClassLoader.inject(contextLoader, false);
       }
 
       return Boolean.TRUE;
@@ -741,14 +937,12 @@ public class SpecialAgent {
           continue;
         }
 
-        final URL resourceUrl = ruleClassLoader.getResource(resourceName);
-        if (resourceUrl == null)
+        final byte[] bytecode = ruleClassLoader.getBytecode(resourceName);
+        if (bytecode == null)
           continue;
 
-        // Return the resource's bytes
-        final byte[] bytecode = AssembleUtil.readBytes(resourceUrl);
         if (logger.isLoggable(Level.FINEST))
-          logger.finest(">>>>>>>> findClass(" + AssembleUtil.getNameId(targetLoader) + ", \"" + name + "\"): BYTECODE " + (bytecode != null ? "!" : "=") + "= null");
+          logger.finest(">>>>>>>> findClass(" + AssembleUtil.getNameId(targetLoader) + ", \"" + name + "\"): BYTECODE != null");
 
         return bytecode;
       }
@@ -780,7 +974,36 @@ public class SpecialAgent {
    *         {@code classLoader} and {@code name}.
    */
   public static byte[] findClass(final ClassLoader classLoader, final String name) {
-    return invoke(name, classLoader, findClass);
+    final ResourceIndex resourceIndex = SpecialAgent.resourceIndex;
+    if (resourceIndex == null)
+      return invoke(name, classLoader, findClass);
+
+    if (!resourceIndex.containsClass(name) || resourceIndex.isMiss(classLoader, name))
+      return null;
+
+    final int generation = resourceIndex.getGeneration(classLoader);
+    final byte[] bytecode = invoke(name, classLoader, findClass);
+    if (bytecode == null)
+      resourceIndex.addMiss(classLoader, name, generation);
+
+    return bytecode;
+  }
+
+  /**
+   * Returns whether the resource by the specified {@code name} may be provided
+   * by an Integration Rule. This method is called by the
+   * {@link ClassLoaderAgent} prior to {@link #findResource(ClassLoader,String)}
+   * and {@link #findResources(ClassLoader,String)}, in order for lookups of
+   * resources that are not provided by any Integration Rule to return
+   * immediately.
+   *
+   * @param name The name of the resource.
+   * @return Whether the resource by the specified {@code name} may be provided
+   *         by an Integration Rule.
+   */
+  public static boolean isRuleResource(final String name) {
+    final ResourceIndex resourceIndex = SpecialAgent.resourceIndex;
+    return resourceIndex == null || resourceIndex.containsResource(name);
   }
 
   /**
@@ -832,7 +1055,19 @@ public class SpecialAgent {
     if (logger.isLoggable(Level.FINEST))
       logger.finest(">>>>>>>> findResource(" + AssembleUtil.getNameId(classLoader) + ", \"" + name + "\")");
 
-    return invoke(name, classLoader, findResource);
+    final ResourceIndex resourceIndex = SpecialAgent.resourceIndex;
+    if (resourceIndex == null)
+      return invoke(name, classLoader, findResource);
+
+    if (!resourceIndex.containsResource(name) || resourceIndex.isMiss(classLoader, name))
+      return null;
+
+    final int generation = resourceIndex.getGeneration(classLoader);
+    final URL resource = invoke(name, classLoader, findResource);
+    if (resource == null)
+      resourceIndex.addMiss(classLoader, name, generation);
+
+    return resource;
   }
 
   /**
@@ -886,6 +1121,18 @@ public class SpecialAgent {
     if (logger.isLoggable(Level.FINEST))
       logger.finest(">>>>>>>> findResources(" + AssembleUtil.getNameId(classLoader) + ", \"" + name + "\")");
 
-    return invoke(name, classLoader, findResources);
+    final ResourceIndex resourceIndex = SpecialAgent.resourceIndex;
+    if (resourceIndex == null)
+      return invoke(name, classLoader, findResources);
+
+    if (!resourceIndex.containsResource(name) || resourceIndex.isMiss(classLoader, name))
+      return null;
+
+    final int generation = resourceIndex.getGeneration(classLoader);
+    final Enumeration<URL> resources = invoke(name, classLoader, findResources);
+    if (resources == null)
+      resourceIndex.addMiss(classLoader, name, generation);
+
+    return resources;
   }
 }
\ No newline at end of file
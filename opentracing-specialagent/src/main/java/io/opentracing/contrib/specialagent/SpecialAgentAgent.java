@@ -84,6 +84,21 @@ public class SpecialAgentAgent {
           return builder.visit(Advice.to(FindResources.class, BootLoaderAgent.cachedLocator).on(isStatic().and(named("findResources").and(returns(Enumeration.class).and(takesArguments(ClassLoader.class, String.class))))));
         }})
       .installOn(inst);
+
+    builder
+      .transform(new Transformer() {
+        @Override
+        public Builder<?> transform(final Builder<?> builder, final TypeDescription typeDescription, final ClassLoader classLoader, final JavaModule module) {
+          return builder.visit(Advice.to(IsRuleResource.class, BootLoaderAgent.cachedLocator).on(isStatic().and(named("isRuleResource").and(returns(boolean.class).and(takesArguments(String.class))))));
+        }})
+      .installOn(inst);
+  }
+
+  public static class IsRuleResource {
+    @Advice.OnMethodExit
+    public static void exit(@Advice.Return(readOnly=false) boolean returned) {
+      returned = true;
+    }
   }
 
   public static class FindClass {
@@ -18,30 +18,47 @@ package io.opentracing.contrib.specialagent;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
 import java.lang.management.ManagementFactory;
 import java.net.JarURLConnection;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.net.URLConnection;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
 import java.security.CodeSource;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Enumeration;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 import java.util.jar.Attributes;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
 import java.util.jar.JarInputStream;
 import java.util.jar.JarOutputStream;
 import java.util.jar.Manifest;
+import java.util.zip.CRC32;
 import java.util.zip.ZipEntry;
 
 /**
@@ -51,6 +68,7 @@ import java.util.zip.ZipEntry;
  */
 public final class SpecialAgentUtil {
   private static final Logger logger = Logger.getLogger(SpecialAgentUtil.class);
+  static final String EXTRACT_DIR = "sa.extract.dir";
 
   static File[] parseConfiguration(final Map<String,String> properties, final List<String> verbosePluginNames, final Map<String,Boolean> integrationRuleNameToEnable, final Map<String,Boolean> traceExporterNameToEnable) {
     final String[] deprecatedKeys = new String[] {"sa.instrumentation.plugin.include", "sa.instrumentation.plugin.", "sa.tracer.plugin."};
@@ -290,23 +308,40 @@ public final class SpecialAgentUtil {
    * a prefix path that match {@code path}, and the associated
    * {@link PluginManifest}.
    * <p>
-   * This method will add a shutdown hook to delete any temporary directory and
-   * file resources it created.
+   * The JAR files are extracted in parallel, and the {@code callback} is
+   * invoked in the order of the entries in the enclosing JAR as soon as each
+   * file is extracted, so that the processing of extracted files overlaps with
+   * the extraction of subsequent files. If {@code scanPluginManifests} is
+   * {@code true}, the {@link PluginManifest} of each file is read from the
+   * bytes of the extraction, and is provided to the {@code callback}.
+   * <p>
+   * If {@code reuse} is {@code false}, this method will add a shutdown hook to
+   * delete any temporary directory and file resources it created. If
+   * {@code reuse} is {@code true}, the files are extracted to a subdirectory of
+   * {@code destDir} named by the SHA-256 digest of the names and CRCs of the
+   * entries to be extracted, and files that were extracted by a previous run
+   * are reused if their CRC matches that of the entry.
    *
    * @param path The prefix path to match when finding resources.
    * @param destDir Callback that supplies the destDir.
-   * @param callback Callback function to process resource files.
+   * @param reuse Whether to reuse a stable, content-addressed subdirectory of
+   *          {@code destDir} across runs.
+   * @param scanPluginManifests Whether to read the {@link PluginManifest} of
+   *          each file.
+   * @param callback Callback function to process resource files, and their
+   *          {@link PluginManifest} if {@code scanPluginManifests} is
+   *          {@code true}.
    * @throws IllegalStateException If an illegal state occurs due to an
    *           {@link IOException}.
    */
-  static void findJarResources(final String path, final Supplier<File> destDir, Predicate<File> callback) {
+  static void findJarResources(final String path, final Supplier<File> destDir, final boolean reuse, final boolean scanPluginManifests, final BiPredicate<File,PluginManifest> callback) {
     try {
       final Enumeration<URL> resources = ClassLoader.getSystemClassLoader().getResources(path);
       if (!resources.hasMoreElements())
         return;
 
       final Set<URL> visitedResources = new HashSet<>();
-      File outDir = null;
+      File baseDir = null;
       do {
         final URL resource = resources.nextElement();
         if (visitedResources.contains(resource))
@@ -321,50 +356,318 @@ public final class SpecialAgentUtil {
 //        if (logger.isLoggable(Level.FINEST))
 //          logger.finest("SpecialAgent Rule Path: " + resource);
 
-        if (outDir == null)
-          outDir = destDir.get();
+        if (baseDir == null)
+          baseDir = destDir.get();
 
-        if (outDir == null) {
+        if (baseDir == null) {
 //          logger.severe("Unable to continue with null output directory");
           return;
         }
 
         final JarURLConnection jarURLConnection = (JarURLConnection)connection;
         jarURLConnection.setUseCaches(false);
-        final JarFile jarFile = jarURLConnection.getJarFile();
-        final Enumeration<JarEntry> jarEntries = jarFile.entries();
-        while (jarEntries.hasMoreElements()) {
-          final String jarEntry = jarEntries.nextElement().getName();
-          if (jarEntry.length() <= path.length() || !jarEntry.startsWith(path))
-            continue;
-
-          final int slash = jarEntry.lastIndexOf('/');
-          final String jarFileName = jarEntry.substring(slash + 1);
-
-          // First, extract the JAR into a temp dir
-          final File subDir = new File(outDir, jarEntry.substring(0, slash));
-          subDir.mkdirs();
-          final File file = new File(subDir, jarFileName);
-          if (!file.isDirectory() && !file.getName().endsWith(".jar"))
-            continue;
-
-          final URL jarUrl = new URL(resource, jarEntry.substring(path.length()));
-          Files.copy(jarUrl.openStream(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
-
-          if (!callback.test(file))
-            file.delete();
+        try (final JarFile jarFile = jarURLConnection.getJarFile()) {
+          extractJarResources(jarFile, path, baseDir, reuse, scanPluginManifests, callback);
         }
       }
       while (resources.hasMoreElements());
-
-      if (outDir != null)
-        deleteOnShutdown(outDir);
     }
     catch (final IOException e) {
       throw new IllegalStateException(e);
     }
   }
 
+  /**
+   * Period of disuse after which a content directory that is not the one of
+   * the current run is deleted, unless it is locked by a running agent.
+   */
+  static final long CONTENT_DIR_EXPIRY = 24 * 60 * 60 * 1000;
+
+  /**
+   * Suffix of the names of the lock files in a content directory. Each process
+   * that uses a content directory holds the lock of a lock file of its own in
+   * that directory for the lifetime of the process.
+   */
+  static final String LOCK_SUFFIX = ".lock";
+
+  /**
+   * The locks of the content directories of this process, which are held for
+   * the lifetime of the process.
+   */
+  private static final Map<File,FileLock> contentDirLocks = new HashMap<>();
+
+  /**
+   * Extracts the entries of the specified {@link JarFile} having a prefix path
+   * that match {@code path} to {@code baseDir}, as per
+   * {@link #findJarResources(String,Supplier,boolean,boolean,BiPredicate)}.
+   *
+   * @param jarFile The {@link JarFile}.
+   * @param path The prefix path to match.
+   * @param baseDir The base output directory.
+   * @param reuse Whether to reuse a stable, content-addressed subdirectory of
+   *          {@code baseDir} across runs.
+   * @param scanPluginManifests Whether to read the {@link PluginManifest} of
+   *          each file.
+   * @param callback Callback function to process resource files.
+   * @throws IOException If an I/O error has occurred.
+   */
+  static void extractJarResources(final JarFile jarFile, final String path, final File baseDir, final boolean reuse, final boolean scanPluginManifests, final BiPredicate<File,PluginManifest> callback) throws IOException {
+    final List<JarEntry> jarEntries = new ArrayList<>();
+    final MessageDigest digest = reuse ? newSha256() : null;
+    final Enumeration<JarEntry> enumeration = jarFile.entries();
+    while (enumeration.hasMoreElements()) {
+      final JarEntry jarEntry = enumeration.nextElement();
+      final String name = jarEntry.getName();
+      if (name.length() <= path.length() || !name.startsWith(path) || jarEntry.isDirectory() || !name.endsWith(".jar"))
+        continue;
+
+      jarEntries.add(jarEntry);
+      if (reuse) {
+        digest.update(name.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte)0);
+        digest.update(Long.toHexString(jarEntry.getCrc()).getBytes(StandardCharsets.UTF_8));
+        digest.update((byte)0);
+      }
+    }
+
+    if (!reuse) {
+      extract(jarFile, jarEntries, baseDir, false, scanPluginManifests, callback);
+      deleteOnShutdown(baseDir);
+      return;
+    }
+
+    final String prefix = getContentDirPrefix(path);
+    final File outDir = new File(baseDir, prefix + toHexString(digest.digest()));
+    lockContentDir(outDir);
+    extract(jarFile, jarEntries, outDir, true, scanPluginManifests, callback);
+    outDir.setLastModified(System.currentTimeMillis());
+    pruneContentDirs(baseDir, prefix, outDir, System.currentTimeMillis() - CONTENT_DIR_EXPIRY);
+  }
+
+  /**
+   * Returns the prefix of the names of the content directories for the
+   * specified resource path, i.e. {@code "plugins-"} for
+   * {@code "META-INF/plugins/"}.
+   *
+   * @param path The resource path.
+   * @return The prefix of the names of the content directories for the
+   *         specified resource path.
+   */
+  static String getContentDirPrefix(final String path) {
+    final int end = path.endsWith("/") ? path.length() - 1 : path.length();
+    return path.substring(path.lastIndexOf('/', end - 1) + 1, end) + "-";
+  }
+
+  /**
+   * Creates a lock file in the specified content directory, and locks it for
+   * the lifetime of the process, in order for the directory to not be pruned
+   * by other processes while it is in use.
+   *
+   * @param outDir The content directory of the current run.
+   * @throws IOException If an I/O error has occurred.
+   */
+  static synchronized void lockContentDir(final File outDir) throws IOException {
+    if (contentDirLocks.containsKey(outDir))
+      return;
+
+    outDir.mkdirs();
+    final File lockFile = File.createTempFile("specialagent", LOCK_SUFFIX, outDir);
+    lockFile.deleteOnExit();
+    final FileChannel channel = new RandomAccessFile(lockFile, "rw").getChannel();
+    final FileLock lock = channel.tryLock();
+    if (lock == null) {
+      channel.close();
+      throw new IOException("Unable to lock " + lockFile);
+    }
+
+    contentDirLocks.put(outDir, lock);
+  }
+
+  /**
+   * Returns whether the specified content directory is in use by a running
+   * process, i.e. whether the lock of any of its lock files is held.
+   *
+   * @param dir The content directory.
+   * @return Whether the specified content directory is in use by a running
+   *         process.
+   */
+  static synchronized boolean isContentDirLocked(final File dir) {
+    if (contentDirLocks.containsKey(dir))
+      return true;
+
+    final File[] files = dir.listFiles();
+    if (files == null)
+      return false;
+
+    for (final File file : files) {
+      if (!file.isFile() || !file.getName().endsWith(LOCK_SUFFIX))
+        continue;
+
+      try (final RandomAccessFile lockFile = new RandomAccessFile(file, "rw")) {
+        final FileLock lock = lockFile.getChannel().tryLock();
+        if (lock == null)
+          return true;
+
+        lock.release();
+      }
+      catch (final IOException | OverlappingFileLockException e) {
+        return true;
+      }
+    }
+
+    return false;
+  }
+
+  /**
+   * Deletes the subdirectories of {@code baseDir} having a name that starts
+   * with {@code prefix}, other than {@code outDir}, that were last used before
+   * {@code expiry}, and that are not locked by a running process.
+   *
+   * @param baseDir The base output directory.
+   * @param prefix The prefix of the names of the content directories.
+   * @param outDir The content directory of the current run.
+   * @param expiry The time before which a content directory is stale.
+   */
+  static void pruneContentDirs(final File baseDir, final String prefix, final File outDir, final long expiry) {
+    final File[] dirs = baseDir.listFiles();
+    if (dirs == null)
+      return;
+
+    for (final File dir : dirs) {
+      if (dir.isDirectory() && dir.getName().startsWith(prefix) && !dir.equals(outDir) && dir.lastModified() < expiry && !isContentDirLocked(dir))
+        AssembleUtil.recurseDir(dir, deletePredicate);
+    }
+  }
+
+  private static MessageDigest newSha256() {
+    try {
+      return MessageDigest.getInstance("SHA-256");
+    }
+    catch (final NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+  private static String toHexString(final byte[] bytes) {
+    final char[] chars = new char[bytes.length * 2];
+    for (int i = 0; i < bytes.length; ++i) {
+      chars[i * 2] = HEX_DIGITS[(bytes[i] >> 4) & 0xf];
+      chars[i * 2 + 1] = HEX_DIGITS[bytes[i] & 0xf];
+    }
+
+    return new String(chars);
+  }
+
+  private static long crc(final byte[] bytes) {
+    final CRC32 crc = new CRC32();
+    crc.update(bytes, 0, bytes.length);
+    return crc.getValue();
+  }
+
+  private static final int EXTRACT_THREADS = Math.max(1, Math.min(8, Runtime.getRuntime().availableProcessors()));
+
+  private static final ThreadFactory extractThreadFactory = new ThreadFactory() {
+    @Override
+    public Thread newThread(final Runnable r) {
+      final Thread thread = new Thread(r, "specialagent-extract");
+      thread.setDaemon(true);
+      return thread;
+    }
+  };
+
+  private static final class Extracted {
+    private final File file;
+    private final PluginManifest pluginManifest;
+
+    private Extracted(final File file, final PluginManifest pluginManifest) {
+      this.file = file;
+      this.pluginManifest = pluginManifest;
+    }
+  }
+
+  /**
+   * Extracts the specified entries of the provided {@link JarFile} to the
+   * specified output directory in parallel, and invokes the {@code callback}
+   * for each extracted file in the order of the specified entries.
+   *
+   * @param jarFile The {@link JarFile}.
+   * @param jarEntries The entries to extract.
+   * @param outDir The output directory.
+   * @param reuse Whether to reuse files that were extracted by a previous run.
+   * @param scanPluginManifests Whether to read the {@link PluginManifest} of
+   *          each file.
+   * @param callback Callback function to process resource files.
+   * @throws IOException If an I/O error has occurred.
+   */
+  private static void extract(final JarFile jarFile, final List<JarEntry> jarEntries, final File outDir, final boolean reuse, final boolean scanPluginManifests, final BiPredicate<File,PluginManifest> callback) throws IOException {
+    if (jarEntries.size() == 0)
+      return;
+
+    final ExecutorService executor = Executors.newFixedThreadPool(Math.min(EXTRACT_THREADS, jarEntries.size()), extractThreadFactory);
+    try {
+      final List<Future<Extracted>> futures = new ArrayList<>(jarEntries.size());
+      for (final JarEntry jarEntry : jarEntries) {
+        futures.add(executor.submit(new Callable<Extracted>() {
+          @Override
+          public Extracted call() throws IOException {
+            final String name = jarEntry.getName();
+            final File file = new File(outDir, name);
+            final File subDir = file.getParentFile();
+            subDir.mkdirs();
+            if (reuse && jarEntry.getCrc() != -1 && file.isFile() && file.length() == jarEntry.getSize()) {
+              final byte[] bytes = Files.readAllBytes(file.toPath());
+              if (crc(bytes) == jarEntry.getCrc())
+                return new Extracted(file, scanPluginManifests ? PluginManifest.getPluginManifest(file, bytes) : null);
+            }
+
+            final byte[] bytes;
+            try (final InputStream in = jarFile.getInputStream(jarEntry)) {
+              bytes = AssembleUtil.readBytes(in);
+            }
+
+            if (!reuse) {
+              Files.write(file.toPath(), bytes);
+            }
+            else {
+              // Extract to a temp file first, in order for concurrently
+              // starting processes to never see a partially written file
+              final Path tempFile = Files.createTempFile(subDir.toPath(), file.getName(), null);
+              Files.write(tempFile, bytes);
+              Files.move(tempFile, file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            }
+
+            return new Extracted(file, scanPluginManifests ? PluginManifest.getPluginManifest(file, bytes) : null);
+          }
+        }));
+      }
+
+      for (final Future<Extracted> future : futures) {
+        final Extracted extracted = future.get();
+        if (!callback.test(extracted.file, extracted.pluginManifest) && !reuse)
+          extracted.file.delete();
+      }
+    }
+    catch (final ExecutionException e) {
+      final Throwable cause = e.getCause();
+      if (cause instanceof IOException)
+        throw (IOException)cause;
+
+      if (cause instanceof RuntimeException)
+        throw (RuntimeException)cause;
+
+      throw new IllegalStateException(cause);
+    }
+    catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException(e);
+    }
+    finally {
+      executor.shutdownNow();
+    }
+  }
+
   private static Set<File> deleteDirs;
 
   private static final Predicate<File> deletePredicate = new Predicate<File>() {
@@ -0,0 +1,246 @@
+/* Copyright 2020 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.opentracing.contrib.specialagent;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Collector of the timings of the phases of {@link SpecialAgent} startup, and
+ * of the per-plugin counts of matched, transformed and retransformed types.
+ * If the {@code -Dsa.startup.report=<file>} system property is specified, the
+ * collected report is written to the file in JSON format when the
+ * {@link SpecialAgent} has initialized, when deferred rules are loaded, and
+ * again when the VM shuts down. All times in the report are in microseconds.
+ */
+final class StartupReport {
+  static final String REPORT = "sa.startup.report";
+
+  private static final Logger logger = Logger.getLogger(StartupReport.class);
+  private static final Map<String,AtomicLong> phaseToTime = new LinkedHashMap<>();
+  private static final ConcurrentHashMap<String,Plugin> nameToPlugin = new ConcurrentHashMap<>();
+  private static final long startTime = System.currentTimeMillis();
+  private static TransformationCache transformationCache;
+  private static boolean shutdownHookAdded;
+
+  /**
+   * The counts and times recorded for a plugin.
+   */
+  static final class Plugin {
+    private final AtomicInteger matched = new AtomicInteger();
+    private final AtomicInteger transformed = new AtomicInteger();
+    private final AtomicInteger retransformed = new AtomicInteger();
+    private final AtomicInteger incompatible = new AtomicInteger();
+    private final AtomicInteger errors = new AtomicInteger();
+    private final AtomicInteger injectedClasses = new AtomicInteger();
+    private final AtomicInteger deferredClasses = new AtomicInteger();
+    private final AtomicInteger definedClasses = new AtomicInteger();
+    private final AtomicLong scanTime = new AtomicLong();
+    private final AtomicLong installTime = new AtomicLong();
+
+    /**
+     * Records a type matched by the rules of this plugin.
+     *
+     * @param loaded Whether the type was loaded prior to its transformation
+     *          (i.e. it was retransformed).
+     * @param compatible Whether the plugin was found to be compatible with the
+     *          class loader of the type.
+     */
+    void onMatch(final boolean loaded, final boolean compatible) {
+      matched.incrementAndGet();
+      if (!compatible)
+        incompatible.incrementAndGet();
+      else if (loaded)
+        retransformed.incrementAndGet();
+      else
+        transformed.incrementAndGet();
+    }
+
+    void onError() {
+      errors.incrementAndGet();
+    }
+
+    /**
+     * Records an injection of the classes of this plugin into a class loader.
+     *
+     * @param injected The number of classes that were loaded upon injection.
+     * @param deferred The number of classes whose loading was deferred until
+     *          their first use.
+     */
+    void onInject(final int injected, final int deferred) {
+      injectedClasses.addAndGet(injected);
+      deferredClasses.addAndGet(deferred);
+    }
+
+    /**
+     * Records the definition of a deferred class upon its first use.
+     */
+    void onDefineDeferred() {
+      definedClasses.incrementAndGet();
+    }
+
+    void addScanTime(final long nanos) {
+      scanTime.addAndGet(nanos);
+    }
+
+    void addInstallTime(final long nanos) {
+      installTime.addAndGet(nanos);
+    }
+  }
+
+  /**
+   * Returns the {@link Plugin} record for the specified {@link PluginManifest}.
+   *
+   * @param pluginManifest The {@link PluginManifest}.
+   * @return The {@link Plugin} record for the specified {@link PluginManifest}.
+   */
+  static Plugin get(final PluginManifest pluginManifest) {
+    Plugin plugin = nameToPlugin.get(pluginManifest.name);
+    if (plugin == null) {
+      final Plugin exists = nameToPlugin.putIfAbsent(pluginManifest.name, plugin = new Plugin());
+      if (exists != null)
+        plugin = exists;
+    }
+
+    return plugin;
+  }
+
+  /**
+   * Adds the time elapsed since {@code startTime} to the specified phase.
+   *
+   * @param name The name of the phase.
+   * @param startTime The start time of the phase, as returned by
+   *          {@link System#nanoTime()}.
+   * @return The present value of {@link System#nanoTime()}, to be used as the
+   *         start time of a subsequent phase.
+   */
+  static long phase(final String name, final long startTime) {
+    final long now = System.nanoTime();
+    synchronized (phaseToTime) {
+      final AtomicLong time = phaseToTime.get(name);
+      if (time == null)
+        phaseToTime.put(name, new AtomicLong(now - startTime));
+      else
+        time.addAndGet(now - startTime);
+    }
+
+    return now;
+  }
+
+  static void setTransformationCache(final TransformationCache transformationCache) {
+    StartupReport.transformationCache = transformationCache;
+  }
+
+  /**
+   * Writes the report to the file specified by the {@code -Dsa.startup.report}
+   * system property, if specified. The first invocation of this method
+   * registers a shutdown hook that writes the report once more when the VM
+   * shuts down, so as to include the types that are transformed after
+   * startup.
+   */
+  static synchronized void write() {
+    final String path = System.getProperty(REPORT);
+    if (path == null)
+      return;
+
+    if (!shutdownHookAdded) {
+      shutdownHookAdded = true;
+      Runtime.getRuntime().addShutdownHook(new Thread() {
+        @Override
+        public void run() {
+          write();
+        }
+      });
+    }
+
+    final File file = new File(path);
+    try {
+      Files.write(file.toPath(), toJson().getBytes("UTF-8"));
+      if (logger.isLoggable(Level.FINE))
+        logger.fine("Wrote startup report to: " + file.getAbsolutePath());
+    }
+    catch (final IOException e) {
+      logger.log(Level.WARNING, "Unable to write startup report to: " + file.getAbsolutePath(), e);
+    }
+  }
+
+  private static String toJson() {
+    final StringBuilder builder = new StringBuilder();
+    builder.append("{\n  \"startTime\": ").append(startTime);
+    builder.append(",\n  \"phases\": [");
+    synchronized (phaseToTime) {
+      boolean first = true;
+      for (final Map.Entry<String,AtomicLong> entry : phaseToTime.entrySet()) {
+        builder.append(first ? "\n" : ",\n");
+        builder.append("    {\"name\": ");
+        appendString(builder, entry.getKey());
+        builder.append(", \"time\": ").append(entry.getValue().get() / 1000).append('}');
+        first = false;
+      }
+    }
+
+    builder.append("\n  ],\n  \"plugins\": [");
+    boolean first = true;
+    for (final Map.Entry<String,Plugin> entry : new TreeMap<>(nameToPlugin).entrySet()) {
+      final Plugin plugin = entry.getValue();
+      builder.append(first ? "\n" : ",\n");
+      builder.append("    {\"name\": ");
+      appendString(builder, entry.getKey());
+      builder.append(", \"matched\": ").append(plugin.matched.get());
+      builder.append(", \"transformed\": ").append(plugin.transformed.get());
+      builder.append(", \"retransformed\": ").append(plugin.retransformed.get());
+      builder.append(", \"incompatible\": ").append(plugin.incompatible.get());
+      builder.append(", \"errors\": ").append(plugin.errors.get());
+      builder.append(", \"injectedClasses\": ").append(plugin.injectedClasses.get());
+      builder.append(", \"avoidedClasses\": ").append(Math.max(0, plugin.deferredClasses.get() - plugin.definedClasses.get()));
+      builder.append(", \"scanTime\": ").append(plugin.scanTime.get() / 1000);
+      builder.append(", \"installTime\": ").append(plugin.installTime.get() / 1000);
+      builder.append(", \"verificationTime\": ").append(RuleClassLoader.getVerificationTime(entry.getKey()) / 1000).append('}');
+      first = false;
+    }
+
+    builder.append("\n  ]");
+    if (transformationCache != null)
+      builder.append(",\n  \"transformationCache\": {\"hits\": ").append(transformationCache.getHits()).append(", \"misses\": ").append(transformationCache.getMisses()).append('}');
+
+    return builder.append("\n}\n").toString();
+  }
+
+  private static void appendString(final StringBuilder builder, final String value) {
+    builder.append('"');
+    for (int i = 0; i < value.length(); ++i) {
+      final char ch = value.charAt(i);
+      if (ch == '"' || ch == '\\')
+        builder.append('\\').append(ch);
+      else if (ch < ' ')
+        builder.append(String.format("\\u%04x", (int)ch));
+      else
+        builder.append(ch);
+    }
+
+    builder.append('"');
+  }
+
+  private StartupReport() {
+  }
+}
\ No newline at end of file
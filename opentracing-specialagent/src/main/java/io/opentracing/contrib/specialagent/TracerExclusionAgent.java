@@ -19,33 +19,74 @@ import static io.opentracing.contrib.specialagent.DefaultAgentRule.*;
 import static net.bytebuddy.matcher.ElementMatchers.*;
 
 import io.opentracing.contrib.specialagent.DefaultAgentRule.DefaultLevel;
+import java.util.concurrent.ThreadFactory;
+
 import net.bytebuddy.agent.builder.AgentBuilder;
 import net.bytebuddy.agent.builder.AgentBuilder.Identified.Narrowable;
 import net.bytebuddy.agent.builder.AgentBuilder.Transformer;
 import net.bytebuddy.asm.Advice;
+import net.bytebuddy.description.method.MethodDescription;
 import net.bytebuddy.description.type.TypeDescription;
 import net.bytebuddy.dynamic.DynamicType.Builder;
+import net.bytebuddy.matcher.ElementMatcher;
 import net.bytebuddy.utility.JavaModule;
 
+/**
+ * Excludes the code of the tracer from instrumentation, by incrementing the
+ * per-thread entry counter of {@link AgentRule} upon the entry into a boundary
+ * method of the tracer, and decrementing it upon exit.
+ * <p>
+ * Only the methods at which the tracer performs work that may invoke
+ * instrumented code (i.e. the reporting of a span upon {@code finish}, the
+ * propagation of a context upon {@code inject} or {@code extract}) are
+ * guarded. Accessors and mutators, such as {@code setTag}, {@code log} and
+ * {@code withTag}, are invoked many times per span, and are not guarded.
+ * <p>
+ * The threads of the tracer are marked in the same manner, so that
+ * {@link AgentRule} determines their state without inspecting the call stack:
+ * the counter is incremented while a {@link ThreadFactory} of the tracer
+ * constructs a thread, and while a {@link Thread} subclass of the tracer runs.
+ * The threads that are constructed by a marked thread are thereby not
+ * instrumentable.
+ */
 public class TracerExclusionAgent {
   public static final ThreadLocalCounter entryCounter = AgentRule.$Access.entryCounter();
 
-  public static AgentBuilder premain(final String[] traceExcludedClasses, final AgentBuilder builder) {
-    log("\n<<<<<<<<<<<<<<< Installing TracerExclusionAgent >>>>>>>>>>>>>>>>\n", null, DefaultLevel.FINE);
-    if (traceExcludedClasses == null || traceExcludedClasses.length == 0)
-      return null;
+  private static final ElementMatcher<MethodDescription> boundaryMethods = isPublic().and(not(isStatic())).and(named("start").or(named("startManual")).or(named("startActive")).or(named("finish")).or(named("close")).or(named("activate")).or(named("activateSpan")).or(named("inject")).or(named("extract")));
 
+  private static final ElementMatcher<MethodDescription> threadMethods = isPublic().and(not(isStatic())).and(not(isAbstract())).and(named("run").and(takesArguments(0)).and(isDeclaredBy(isSubTypeOf(Thread.class))).or(named("newThread").and(takesArguments(Runnable.class)).and(isDeclaredBy(isSubTypeOf(ThreadFactory.class)))));
+
+  private static final ElementMatcher<ClassLoader> tracerClassLoader = new ElementMatcher<ClassLoader>() {
+    @Override
+    public boolean matches(final ClassLoader target) {
+      return target != null && target == Adapter.tracerClassLoader;
+    }
+  };
+
+  public static AgentBuilder premain(final String[] traceExcludedClasses, AgentBuilder builder) {
+    log("\n<<<<<<<<<<<<<<< Installing TracerExclusionAgent >>>>>>>>>>>>>>>>\n", null, DefaultLevel.FINE);
     try {
-      final Narrowable narrowable = builder
+      builder = builder
+        .type(not(isInterface()).and(isSubTypeOf(Thread.class).or(isSubTypeOf(ThreadFactory.class))), tracerClassLoader)
+        .transform(new Transformer() {
+          @Override
+          public Builder<?> transform(final Builder<?> builder, final TypeDescription typeDescription, final ClassLoader classLoader, final JavaModule module) {
+            return builder.visit(Advice.to(TracerExclusionAgent.class).on(threadMethods));
+          }});
+
+      if (traceExcludedClasses == null || traceExcludedClasses.length == 0)
+        return builder;
+
+      Narrowable narrowable = builder
         .type(hasSuperType(named(traceExcludedClasses[0])));
 
       for (int i = 1; i < traceExcludedClasses.length; ++i)
-        narrowable.or(hasSuperType(named(traceExcludedClasses[i])));
+        narrowable = narrowable.or(hasSuperType(named(traceExcludedClasses[i])));
 
       return narrowable.transform(new Transformer() {
         @Override
         public Builder<?> transform(final Builder<?> builder, final TypeDescription typeDescription, final ClassLoader classLoader, final JavaModule module) {
-          return builder.visit(Advice.to(TracerExclusionAgent.class).on(isPublic().and(any())));
+          return builder.visit(Advice.to(TracerExclusionAgent.class).on(boundaryMethods));
         }});
     }
     finally {
@@ -55,11 +96,11 @@ public class TracerExclusionAgent {
 
   @Advice.OnMethodEnter
   public static void enter() {
-    entryCounter.set(entryCounter.get() + 1);
+    entryCounter.increment();
   }
 
-  @Advice.OnMethodExit
+  @Advice.OnMethodExit(onThrowable = Throwable.class)
   public static void exit() {
-    entryCounter.set(entryCounter.get() - 1);
+    entryCounter.decrement();
   }
 }
\ No newline at end of file
@@ -0,0 +1,830 @@
+/* Copyright 2020 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.opentracing.contrib.specialagent;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.instrument.IllegalClassFormatException;
+import java.lang.instrument.Instrumentation;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.CodeSource;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.ProtectionDomain;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+import net.bytebuddy.agent.builder.AgentBuilder;
+import net.bytebuddy.agent.builder.AgentBuilder.RedefinitionStrategy;
+import net.bytebuddy.agent.builder.ResettableClassFileTransformer;
+import net.bytebuddy.jar.asm.ClassReader;
+import net.bytebuddy.utility.JavaModule;
+
+/**
+ * An opt-in on-disk cache of the results of the {@code ClassFileTransformer}s
+ * installed by the {@link ByteBuddyManager}, which is enabled with the
+ * {@code -Dsa.cache.dir=${DIR}} system property.
+ * <p>
+ * Each transformer installed by the {@link ByteBuddyManager} is decorated with
+ * a {@link CachingTransformer} that is identified by the name of its plugin,
+ * the {@link AgentRule} class, and the index of its builder, which do not
+ * depend on the order in which the transformers are installed. The result of
+ * a transformation (i.e. the transformed bytecode, or the fact that the class
+ * was not transformed) is recorded against the digest of the class name, the
+ * name of its class loader type, the input bytecode, and the bytecode of its
+ * superclasses and interfaces, as resolved by its class loader, because the
+ * matchers of the rules depend on the supertypes of the class. Supertypes in
+ * {@code java.*} packages are included by name only. On a subsequent run, a
+ * recorded result is served directly, thus skipping the type matching and the
+ * weaving of advice in ByteBuddy.
+ * <p>
+ * A recorded result also includes the plugins that were linked to the class
+ * loader, and the plugins that were found to be incompatible with the class
+ * loader. On a hit, the plugins are linked again (thus verifying the
+ * fingerprint of each plugin against the present class loader), and the result
+ * is only served if each plugin is still compatible (or incompatible) with the
+ * class loader, as recorded. The side effects of the
+ * {@link ByteBuddyManager.TransformationListener} are also replayed on a hit.
+ * <p>
+ * All entries are kept under a "namespace" subdirectory that is named by the
+ * digest of the agent version, the contents of the enabled rule JARs, and the
+ * system properties that configure the rules. Therefore, a change to the
+ * agent, a rule, the set of enabled rules, or the configuration of the rules
+ * leads to a new namespace (and the deletion of the stale namespaces), and a
+ * change to the bytecode of a target class or of its supertypes leads to a new
+ * entry key.
+ */
+final class TransformationCache {
+  private static final Logger logger = Logger.getLogger(TransformationCache.class);
+  static final String CACHE_DIR = "sa.cache.dir";
+  private static final String CACHE_FILE = "transformations.bin";
+  private static final int MAGIC = 0x5341_5444;
+
+  /**
+   * The prefixes of the system properties that configure the rules, and
+   * thereby affect the results of the transformations.
+   */
+  private static final String[] RULE_PROPERTY_PREFIXES = {"sa.integration.", "sa.instrumentation.plugin.", "sa.fingerprint."};
+  private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+  /**
+   * Returns a new {@code TransformationCache} if the {@code -Dsa.cache.dir}
+   * system property is specified, otherwise {@code null}.
+   *
+   * @param inst The {@link Instrumentation}.
+   * @param pluginManifestDirectory The {@link PluginManifest.Directory} of the
+   *          enabled plugins, from which the namespace digest is computed.
+   * @return A new {@code TransformationCache} if the {@code -Dsa.cache.dir}
+   *         system property is specified, otherwise {@code null}.
+   */
+  static TransformationCache create(final Instrumentation inst, final PluginManifest.Directory pluginManifestDirectory) {
+    final String cacheDir = System.getProperty(CACHE_DIR);
+    if (cacheDir == null)
+      return null;
+
+    try {
+      final TransformationCache cache = new TransformationCache(inst, new File(cacheDir), namespace(pluginManifestDirectory.keySet(), System.getProperties()));
+      Runtime.getRuntime().addShutdownHook(new Thread() {
+        @Override
+        public void run() {
+          cache.flush();
+        }
+      });
+
+      return cache;
+    }
+    catch (final IOException e) {
+      logger.log(Level.WARNING, "Disabling transformation cache in " + cacheDir, e);
+      return null;
+    }
+  }
+
+  private static String toHex(final byte[] bytes) {
+    final char[] chars = new char[bytes.length * 2];
+    for (int i = 0; i < bytes.length; ++i) {
+      chars[i * 2] = HEX[(bytes[i] >> 4) & 0xf];
+      chars[i * 2 + 1] = HEX[bytes[i] & 0xf];
+    }
+
+    return new String(chars);
+  }
+
+  private static MessageDigest newDigest() {
+    try {
+      return MessageDigest.getInstance("SHA-1");
+    }
+    catch (final NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private static long crc(final File file) throws IOException {
+    final CRC32 crc = new CRC32();
+    try (final InputStream in = new FileInputStream(file)) {
+      final byte[] buffer = new byte[8192];
+      for (int len; (len = in.read(buffer)) != -1;)
+        crc.update(buffer, 0, len);
+    }
+
+    return crc.getValue();
+  }
+
+  /**
+   * Returns the namespace digest computed from the version and location of the
+   * agent, the contents of the specified rule files, and the rule properties
+   * (i.e. {@code sa.integration.*}) among the specified system properties.
+   *
+   * @param ruleFiles The rule files.
+   * @param properties The system properties.
+   * @return The namespace digest.
+   * @throws IOException If an I/O error has occurred.
+   */
+  static String namespace(final Collection<File> ruleFiles, final Properties properties) throws IOException {
+    final StringBuilder builder = new StringBuilder();
+    builder.append(SpecialAgent.class.getPackage().getImplementationVersion());
+    final CodeSource codeSource = SpecialAgent.class.getProtectionDomain().getCodeSource();
+    if (codeSource != null && "file".equals(codeSource.getLocation().getProtocol())) {
+      final File agentJar = new File(codeSource.getLocation().getPath());
+      builder.append('|').append(agentJar.length()).append('|').append(agentJar.lastModified());
+    }
+
+    for (final File ruleFile : ruleFiles) {
+      builder.append('\n').append(ruleFile.getName());
+      if (ruleFile.isFile())
+        builder.append('|').append(ruleFile.length()).append('|').append(crc(ruleFile));
+      else
+        builder.append('|').append(ruleFile.getAbsolutePath()).append('|').append(ruleFile.lastModified());
+    }
+
+    // The rule properties are sorted, because the iteration order of
+    // Properties is not defined
+    final TreeMap<String,String> ruleProperties = new TreeMap<>();
+    for (final String key : properties.stringPropertyNames())
+      for (final String prefix : RULE_PROPERTY_PREFIXES)
+        if (key.startsWith(prefix))
+          ruleProperties.put(key, properties.getProperty(key));
+
+    for (final Map.Entry<String,String> property : ruleProperties.entrySet())
+      builder.append('\n').append(property.getKey()).append('=').append(property.getValue());
+
+    return toHex(newDigest().digest(builder.toString().getBytes("UTF-8")));
+  }
+
+  /**
+   * The recorded result of a transformer for a class, which is only kept if
+   * the class was transformed, or if the transformation had side effects that
+   * need to be replayed.
+   */
+  private static final class Result {
+    private final byte[] bytecode;
+    private final String[] linked;
+    private final String[] incompatible;
+    private final boolean named;
+
+    private Result(final byte[] bytecode, final String[] linked, final String[] incompatible, final boolean named) {
+      this.bytecode = bytecode;
+      this.linked = linked;
+      this.incompatible = incompatible;
+      this.named = named;
+    }
+  }
+
+  /**
+   * The recorded results of the transformers for a class, with a bit set for
+   * each transformer id that has been evaluated.
+   */
+  private static final class Entry {
+    private final BitSet evaluated;
+    private final Map<Integer,Result> results;
+
+    private Entry(final BitSet evaluated, final Map<Integer,Result> results) {
+      this.evaluated = evaluated;
+      this.results = results;
+    }
+
+    private Entry() {
+      this(new BitSet(), new HashMap<Integer,Result>(1));
+    }
+  }
+
+  /**
+   * The side effects of the {@link ByteBuddyManager.TransformationListener}
+   * during the transformation of a class by a {@link CachingTransformer}.
+   */
+  private static final class Recording {
+    private final List<PluginManifest> linked = new ArrayList<>(1);
+    private List<PluginManifest> incompatible;
+    private boolean named;
+    private boolean error;
+
+    private static String[] toNames(final List<PluginManifest> pluginManifests) {
+      if (pluginManifests == null || pluginManifests.size() == 0)
+        return null;
+
+      final String[] names = new String[pluginManifests.size()];
+      for (int i = 0; i < names.length; ++i)
+        names[i] = pluginManifests.get(i).name;
+
+      return names;
+    }
+
+    private Result toResult(final byte[] bytecode) {
+      final String[] linkedNames = bytecode == null ? null : toNames(linked);
+      final String[] incompatibleNames = toNames(incompatible);
+      return bytecode == null && incompatibleNames == null ? null : new Result(bytecode, linkedNames, incompatibleNames, named);
+    }
+  }
+
+  /**
+   * A {@link ResettableClassFileTransformer} that serves the recorded results
+   * of the decorated transformer, and records the results of the decorated
+   * transformer on a cache miss.
+   */
+  private final class CachingTransformer extends ResettableClassFileTransformer.AbstractBase {
+    private final ResettableClassFileTransformer transformer;
+    private final String identity;
+    private volatile int id = -1;
+
+    private CachingTransformer(final ResettableClassFileTransformer transformer, final String identity) {
+      this.transformer = transformer;
+      this.identity = identity;
+    }
+
+    private int getId() {
+      return id != -1 ? id : (id = idOf(identity));
+    }
+
+    @Override
+    public byte[] transform(final ClassLoader loader, final String className, final Class<?> classBeingRedefined, final ProtectionDomain protectionDomain, final byte[] classfileBuffer) throws IllegalClassFormatException {
+      if (className == null || loader != null && loader == Adapter.tracerClassLoader)
+        return transformer.transform(loader, className, classBeingRedefined, protectionDomain, classfileBuffer);
+
+      final int id = getId();
+      final String key = key(loader, className, classfileBuffer);
+      final Entry entry = getEntry(key);
+      final boolean evaluated;
+      final Result result;
+      synchronized (entry) {
+        evaluated = entry.evaluated.get(id);
+        result = evaluated ? entry.results.get(id) : null;
+      }
+
+      if (evaluated && replay(result, loader, classBeingRedefined)) {
+        hits.incrementAndGet();
+        return result == null ? null : result.bytecode;
+      }
+
+      misses.incrementAndGet();
+      final Recording previous = recording.get();
+      final Recording current = new Recording();
+      recording.set(current);
+      final byte[] bytecode;
+      try {
+        bytecode = transformer.transform(loader, className, classBeingRedefined, protectionDomain, classfileBuffer);
+      }
+      finally {
+        recording.set(previous);
+      }
+
+      // An erroneous transformation is not recorded, so that it is reported
+      // again on the next run
+      if (current.error)
+        return bytecode;
+
+      synchronized (entry) {
+        entry.evaluated.set(id);
+        final Result newResult = current.toResult(bytecode);
+        if (newResult != null)
+          entry.results.put(id, newResult);
+        else
+          entry.results.remove(id);
+
+        dirty = true;
+      }
+
+      return bytecode;
+    }
+
+    @Override
+    public boolean reset(final Instrumentation instrumentation, final ResettableClassFileTransformer classFileTransformer, final RedefinitionStrategy redefinitionStrategy, final RedefinitionStrategy.DiscoveryStrategy redefinitionDiscoveryStrategy, final RedefinitionStrategy.BatchAllocator redefinitionBatchAllocator, final RedefinitionStrategy.Listener redefinitionListener) {
+      return transformer.reset(instrumentation, classFileTransformer, redefinitionStrategy, redefinitionDiscoveryStrategy, redefinitionBatchAllocator, redefinitionListener);
+    }
+  }
+
+  /**
+   * Replays the side effects of the {@link ByteBuddyManager.TransformationListener}
+   * for the specified recorded result, and returns whether the result can be
+   * served. A result cannot be served if a plugin that was linked to the class
+   * loader is no longer compatible with it, if a plugin that was incompatible
+   * with the class loader has become compatible with it (i.e. a library in the
+   * class loader has changed), or if the class is defined in a named module
+   * that is not yet known.
+   *
+   * @param result The recorded result, or {@code null} if the class was not
+   *          transformed.
+   * @param loader The class loader of the class.
+   * @param classBeingRedefined The class being retransformed, or {@code null}
+   *          if the class is being loaded.
+   * @return Whether the specified result can be served.
+   */
+  private boolean replay(final Result result, final ClassLoader loader, final Class<?> classBeingRedefined) {
+    if (result == null)
+      return true;
+
+    // The module of a class that is being loaded is not provided to this
+    // transformer, so the module reads edge cannot be replayed
+    if (result.named && classBeingRedefined == null)
+      return false;
+
+    final PluginManifest[] incompatible = getPluginManifests(result.incompatible);
+    final PluginManifest[] linked = getPluginManifests(result.linked);
+    if (incompatible == null || linked == null)
+      return false;
+
+    for (final PluginManifest pluginManifest : incompatible)
+      if (SpecialAgent.linkRule(pluginManifest, loader))
+        return false;
+
+    for (final PluginManifest pluginManifest : linked)
+      if (!SpecialAgent.linkRule(pluginManifest, loader))
+        return false;
+
+    final boolean loaded = classBeingRedefined != null;
+    for (final PluginManifest pluginManifest : incompatible)
+      StartupReport.get(pluginManifest).onMatch(loaded, false);
+
+    for (final PluginManifest pluginManifest : linked)
+      StartupReport.get(pluginManifest).onMatch(loaded, true);
+
+    if (result.named)
+      ByteBuddyManager.TransformationListener.addReads(inst, loader, JavaModule.ofType(classBeingRedefined));
+
+    return true;
+  }
+
+  private static final PluginManifest[] NO_PLUGINS = {};
+
+  /**
+   * @param pluginNames The plugin names, or {@code null}.
+   * @return The {@link PluginManifest}s by the specified names, or
+   *         {@code null} if a plugin by one of the names is not loaded.
+   */
+  private static PluginManifest[] getPluginManifests(final String[] pluginNames) {
+    if (pluginNames == null)
+      return NO_PLUGINS;
+
+    final PluginManifest[] pluginManifests = new PluginManifest[pluginNames.length];
+    for (int i = 0; i < pluginNames.length; ++i)
+      if ((pluginManifests[i] = SpecialAgent.getPluginManifest(pluginNames[i])) == null)
+        return null;
+
+    return pluginManifests;
+  }
+
+  /**
+   * Thread-local digest of the last {@code classfileBuffer} and its class
+   * loader, because the JVM passes the same array to each subsequent
+   * {@code ClassFileTransformer} that does not transform the class.
+   */
+  private static final ThreadLocal<Object[]> lastDigest = new ThreadLocal<Object[]>() {
+    @Override
+    protected Object[] initialValue() {
+      return new Object[3];
+    }
+  };
+
+  /**
+   * The digests of the supertypes of the transformed classes, by class loader
+   * and internal name, which are computed once per run.
+   */
+  private static final ClassLoaderMap<ConcurrentHashMap<String,String>> supertypeDigests = new ClassLoaderMap<>();
+
+  /**
+   * Thread-local {@link Recording} of the side effects of the
+   * {@link ByteBuddyManager.TransformationListener} while a
+   * {@link CachingTransformer} delegates to its transformer.
+   */
+  private static final ThreadLocal<Recording> recording = new ThreadLocal<>();
+
+  /**
+   * Callback from the {@link ByteBuddyManager.TransformationListener} to record
+   * a {@link PluginManifest} that was linked in the current transformation.
+   *
+   * @param pluginManifest The {@link PluginManifest} that was linked.
+   */
+  static void onLink(final PluginManifest pluginManifest) {
+    final Recording current = recording.get();
+    if (current != null && !current.linked.contains(pluginManifest))
+      current.linked.add(pluginManifest);
+  }
+
+  /**
+   * Callback from the {@link ByteBuddyManager.TransformationListener} to record
+   * a {@link PluginManifest} that was found to be incompatible in the current
+   * transformation.
+   *
+   * @param pluginManifest The {@link PluginManifest} that is incompatible.
+   */
+  static void onIncompatible(final PluginManifest pluginManifest) {
+    final Recording current = recording.get();
+    if (current == null)
+      return;
+
+    if (current.incompatible == null)
+      current.incompatible = new ArrayList<>(1);
+
+    if (!current.incompatible.contains(pluginManifest))
+      current.incompatible.add(pluginManifest);
+  }
+
+  /**
+   * Callback from the {@link ByteBuddyManager.TransformationListener} to record
+   * that the class of the current transformation is defined in a named module.
+   */
+  static void onNamedModule() {
+    final Recording current = recording.get();
+    if (current != null)
+      current.named = true;
+  }
+
+  /**
+   * Callback from the {@link ByteBuddyManager.TransformationListener} to record
+   * that the current transformation has failed.
+   */
+  static void onError() {
+    final Recording current = recording.get();
+    if (current != null)
+      current.error = true;
+  }
+
+  private final Instrumentation inst;
+  private final File namespaceDir;
+  private final List<String> identities = new ArrayList<>();
+  private final ConcurrentHashMap<String,Integer> identityToId = new ConcurrentHashMap<>();
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+  private volatile ConcurrentHashMap<String,Entry> entries;
+  private volatile boolean dirty;
+
+  private TransformationCache(final Instrumentation inst, final File dir, final String namespace) throws IOException {
+    this.inst = inst;
+    this.namespaceDir = new File(dir, namespace);
+    if (!namespaceDir.isDirectory() && !namespaceDir.mkdirs())
+      throw new IOException("Unable to create directory: " + namespaceDir);
+
+    // Delete the stale namespaces of previous versions of the agent or rules
+    final File[] namespaceDirs = dir.listFiles();
+    if (namespaceDirs != null) {
+      for (final File staleDir : namespaceDirs) {
+        if (staleDir.isDirectory() && !staleDir.equals(namespaceDir)) {
+          if (logger.isLoggable(Level.FINE))
+            logger.fine("Deleting stale transformation cache: " + staleDir);
+
+          AssembleUtil.recurseDir(staleDir, new Predicate<File>() {
+            @Override
+            public boolean test(final File t) {
+              return t.delete();
+            }
+          });
+          staleDir.delete();
+        }
+      }
+    }
+
+    if (logger.isLoggable(Level.FINE))
+      logger.fine("Using transformation cache: " + namespaceDir);
+  }
+
+  /**
+   * Returns a new {@link AgentBuilder.TransformerDecorator} that decorates the
+   * transformer of an {@link AgentBuilder} with a {@link CachingTransformer}.
+   *
+   * @param identity The identity of the transformer, which must be unique
+   *          among the transformers of this cache, and stable across runs
+   *          (i.e. it must not depend on the order of installation).
+   * @return A new {@link AgentBuilder.TransformerDecorator}.
+   */
+  AgentBuilder.TransformerDecorator newDecorator(final String identity) {
+    return new AgentBuilder.TransformerDecorator() {
+      @Override
+      public ResettableClassFileTransformer decorate(final ResettableClassFileTransformer classFileTransformer) {
+        return new CachingTransformer(classFileTransformer, identity);
+      }
+    };
+  }
+
+  /**
+   * Returns the id of the specified transformer identity, which indexes the
+   * {@link Entry#evaluated} bits. The ids of the identities are recorded with
+   * the entries.
+   *
+   * @param identity The identity of the transformer.
+   * @return The id of the specified transformer identity.
+   */
+  private int idOf(final String identity) {
+    getEntries();
+    final Integer id = identityToId.get(identity);
+    if (id != null)
+      return id;
+
+    synchronized (identities) {
+      final Integer exists = identityToId.get(identity);
+      if (exists != null)
+        return exists;
+
+      identities.add(identity);
+      identityToId.put(identity, identities.size() - 1);
+      return identities.size() - 1;
+    }
+  }
+
+  private static String key(final ClassLoader loader, final String className, final byte[] classfileBuffer) {
+    final Object[] last = lastDigest.get();
+    final String digest;
+    if (last[0] == classfileBuffer && last[1] == loader) {
+      digest = (String)last[2];
+    }
+    else {
+      final MessageDigest messageDigest = newDigest();
+      messageDigest.update(classfileBuffer);
+      if (loader != null)
+        updateSupertypes(loader, classfileBuffer, messageDigest);
+
+      digest = toHex(messageDigest.digest());
+      last[0] = classfileBuffer;
+      last[1] = loader;
+      last[2] = digest;
+    }
+
+    return className + '|' + (loader == null ? "null" : loader.getClass().getName()) + '|' + digest;
+  }
+
+  /**
+   * Updates the specified {@link MessageDigest} with the digests of the
+   * superclass and interfaces of the class of the specified bytecode.
+   *
+   * @param loader The {@link ClassLoader} of the class.
+   * @param bytecode The bytecode of the class.
+   * @param messageDigest The {@link MessageDigest} to update.
+   */
+  private static void updateSupertypes(final ClassLoader loader, final byte[] bytecode, final MessageDigest messageDigest) {
+    final ClassReader classReader;
+    try {
+      classReader = new ClassReader(bytecode);
+    }
+    catch (final RuntimeException e) {
+      return;
+    }
+
+    final String superName = classReader.getSuperName();
+    if (superName != null)
+      updateSupertype(loader, superName, messageDigest);
+
+    for (final String name : classReader.getInterfaces())
+      updateSupertype(loader, name, messageDigest);
+  }
+
+  /**
+   * Updates the specified {@link MessageDigest} with the digest of the
+   * bytecode of the supertype of the specified internal name, as resolved by
+   * the provided {@link ClassLoader}, and of its own supertypes.
+   *
+   * @param loader The {@link ClassLoader} by which the supertype is resolved.
+   * @param internalName The internal name of the supertype.
+   * @param messageDigest The {@link MessageDigest} to update.
+   */
+  private static void updateSupertype(final ClassLoader loader, final String internalName, final MessageDigest messageDigest) {
+    String digest;
+    if (internalName.startsWith("java/")) {
+      digest = internalName;
+    }
+    else {
+      ConcurrentHashMap<String,String> digests = supertypeDigests.get(loader);
+      if (digests == null) {
+        final ConcurrentHashMap<String,String> exists = supertypeDigests.putIfAbsent(loader, digests = new ConcurrentHashMap<>());
+        if (exists != null)
+          digests = exists;
+      }
+
+      digest = digests.get(internalName);
+      if (digest == null) {
+        byte[] bytecode = null;
+        try (final InputStream in = loader.getResourceAsStream(internalName + ".class")) {
+          if (in != null)
+            bytecode = AssembleUtil.readBytes(in);
+        }
+        catch (final IOException e) {
+          if (logger.isLoggable(Level.FINEST))
+            logger.finest("Unable to read supertype " + internalName + ": " + e.getMessage());
+        }
+
+        if (bytecode == null) {
+          digest = internalName;
+        }
+        else {
+          final MessageDigest supertypeDigest = newDigest();
+          supertypeDigest.update(bytecode);
+          updateSupertypes(loader, bytecode, supertypeDigest);
+          digest = toHex(supertypeDigest.digest());
+        }
+
+        digests.putIfAbsent(internalName, digest);
+      }
+    }
+
+    messageDigest.update(digest.getBytes(StandardCharsets.UTF_8));
+    messageDigest.update((byte)0);
+  }
+
+  private Entry getEntry(final String key) {
+    final ConcurrentHashMap<String,Entry> entries = getEntries();
+    Entry entry = entries.get(key);
+    if (entry == null) {
+      final Entry exists = entries.putIfAbsent(key, entry = new Entry());
+      if (exists != null)
+        entry = exists;
+    }
+
+    return entry;
+  }
+
+  private ConcurrentHashMap<String,Entry> getEntries() {
+    if (entries != null)
+      return entries;
+
+    synchronized (this) {
+      if (entries == null)
+        entries = load(new File(namespaceDir, CACHE_FILE), identities, identityToId);
+
+      return entries;
+    }
+  }
+
+  private static String[] readNames(final DataInputStream in) throws IOException {
+    final int size = in.readInt();
+    if (size == 0)
+      return null;
+
+    final String[] names = new String[size];
+    for (int i = 0; i < size; ++i)
+      names[i] = in.readUTF();
+
+    return names;
+  }
+
+  private static void writeNames(final DataOutputStream out, final String[] names) throws IOException {
+    out.writeInt(names == null ? 0 : names.length);
+    if (names != null)
+      for (final String name : names)
+        out.writeUTF(name);
+  }
+
+  private static ConcurrentHashMap<String,Entry> load(final File file, final List<String> identities, final Map<String,Integer> identityToId) {
+    final ConcurrentHashMap<String,Entry> entries = new ConcurrentHashMap<>();
+    if (!file.exists())
+      return entries;
+
+    try (final DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+      if (in.readInt() != MAGIC)
+        throw new IOException("Unrecognized format");
+
+      final String[] names = readNames(in);
+      if (names != null) {
+        for (int i = 0; i < names.length; ++i) {
+          identities.add(names[i]);
+          identityToId.put(names[i], i);
+        }
+      }
+
+      for (int i = 0, size = in.readInt(); i < size; ++i) {
+        final String key = in.readUTF();
+        final byte[] evaluated = new byte[in.readInt()];
+        in.readFully(evaluated);
+        final int noResults = in.readInt();
+        final HashMap<Integer,Result> results = new HashMap<>(noResults);
+        for (int j = 0; j < noResults; ++j) {
+          final int id = in.readInt();
+          final int length = in.readInt();
+          final byte[] bytecode = length == -1 ? null : new byte[length];
+          if (bytecode != null)
+            in.readFully(bytecode);
+
+          results.put(id, new Result(bytecode, readNames(in), readNames(in), in.readBoolean()));
+        }
+
+        entries.put(key, new Entry(BitSet.valueOf(evaluated), results));
+      }
+
+      if (logger.isLoggable(Level.FINE))
+        logger.fine("Loaded " + entries.size() + " transformation cache entries from " + file);
+
+      return entries;
+    }
+    catch (final IOException e) {
+      logger.log(Level.WARNING, "Discarding corrupt transformation cache: " + file, e);
+      file.delete();
+      identities.clear();
+      identityToId.clear();
+      return new ConcurrentHashMap<>();
+    }
+  }
+
+  /**
+   * Writes the recorded results to disk, if any have changed since the last
+   * call to this method. The file is written to a temporary file first, and is
+   * then atomically moved in place, so that concurrently starting JVMs never
+   * read a partially written cache.
+   */
+  synchronized void flush() {
+    if (logger.isLoggable(Level.FINE))
+      logger.fine("Transformation cache: " + hits.get() + " hits, " + misses.get() + " misses");
+
+    if (!dirty || entries == null)
+      return;
+
+    dirty = false;
+    final File file = new File(namespaceDir, CACHE_FILE);
+    try {
+      final File tempFile = File.createTempFile(CACHE_FILE, null, namespaceDir);
+      try (final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+        out.writeInt(MAGIC);
+        synchronized (identities) {
+          writeNames(out, identities.toArray(new String[identities.size()]));
+        }
+
+        out.writeInt(entries.size());
+        for (final Map.Entry<String,Entry> mapEntry : entries.entrySet()) {
+          final Entry entry = mapEntry.getValue();
+          synchronized (entry) {
+            out.writeUTF(mapEntry.getKey());
+            final byte[] evaluated = entry.evaluated.toByteArray();
+            out.writeInt(evaluated.length);
+            out.write(evaluated);
+            out.writeInt(entry.results.size());
+            for (final Map.Entry<Integer,Result> mapResult : entry.results.entrySet()) {
+              final Result result = mapResult.getValue();
+              out.writeInt(mapResult.getKey());
+              out.writeInt(result.bytecode == null ? -1 : result.bytecode.length);
+              if (result.bytecode != null)
+                out.write(result.bytecode);
+
+              writeNames(out, result.linked);
+              writeNames(out, result.incompatible);
+              out.writeBoolean(result.named);
+            }
+          }
+        }
+      }
+
+      Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+    catch (final IOException e) {
+      logger.log(Level.WARNING, "Failed to write transformation cache: " + file, e);
+    }
+  }
+
+  /**
+   * @return The number of transformations served from this cache.
+   */
+  long getHits() {
+    return hits.get();
+  }
+
+  /**
+   * @return The number of transformations that were not found in this cache.
+   */
+  long getMisses() {
+    return misses.get();
+  }
+}
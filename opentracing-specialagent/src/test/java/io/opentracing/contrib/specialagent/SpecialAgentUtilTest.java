@@ -17,11 +17,22 @@ package io.opentracing.contrib.specialagent;
 
 import static org.junit.Assert.*;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.Enumeration;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.JarOutputStream;
 
 import org.junit.Test;
 
@@ -127,4 +138,97 @@ public class SpecialAgentUtilTest {
 
     assertEquals(a.length, i);
   }
-}
\ No newline at end of file
+
+  private static byte[] newJar(final String ... entries) throws IOException {
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    try (final JarOutputStream jar = new JarOutputStream(out)) {
+      for (final String entry : entries) {
+        jar.putNextEntry(new JarEntry(entry));
+        jar.write(entry.getBytes(StandardCharsets.UTF_8));
+        jar.closeEntry();
+      }
+    }
+
+    return out.toByteArray();
+  }
+
+  @Test
+  public void testExtractJarResources() throws IOException {
+    final File jar = File.createTempFile("specialagent", ".jar");
+    final File baseDir = Files.createTempDirectory("specialagent").toFile();
+    try {
+      try (final JarOutputStream out = new JarOutputStream(new FileOutputStream(jar))) {
+        out.putNextEntry(new JarEntry(UtilConstants.META_INF_PLUGIN_PATH + "rule.jar"));
+        out.write(newJar("sa.rule.name.foo"));
+        out.closeEntry();
+        out.putNextEntry(new JarEntry(UtilConstants.META_INF_PLUGIN_PATH + "other.jar"));
+        out.write(newJar("other.txt"));
+        out.closeEntry();
+      }
+
+      final File staleDir = new File(baseDir, "plugins-stale");
+      assertTrue(staleDir.mkdir());
+      assertTrue(new File(staleDir, "stale.jar").createNewFile());
+      assertTrue(staleDir.setLastModified(System.currentTimeMillis() - 2 * SpecialAgentUtil.CONTENT_DIR_EXPIRY));
+      // A stale directory that is locked by another process is not pruned
+      final File lockedDir = new File(baseDir, "plugins-locked");
+      assertTrue(lockedDir.mkdir());
+      final RandomAccessFile lockFile = new RandomAccessFile(new File(lockedDir, "other" + SpecialAgentUtil.LOCK_SUFFIX), "rw");
+      assertNotNull(lockFile.getChannel().tryLock());
+      assertTrue(lockedDir.setLastModified(System.currentTimeMillis() - 2 * SpecialAgentUtil.CONTENT_DIR_EXPIRY));
+      final File isoDir = new File(baseDir, "iso-stale");
+      assertTrue(isoDir.mkdir());
+      assertTrue(isoDir.setLastModified(System.currentTimeMillis() - 2 * SpecialAgentUtil.CONTENT_DIR_EXPIRY));
+
+      final LinkedHashMap<File,PluginManifest> files = new LinkedHashMap<>();
+      final BiPredicate<File,PluginManifest> callback = new BiPredicate<File,PluginManifest>() {
+        @Override
+        public boolean test(final File file, final PluginManifest pluginManifest) {
+          files.put(file, pluginManifest);
+          return true;
+        }
+      };
+
+      try (final JarFile jarFile = new JarFile(jar)) {
+        SpecialAgentUtil.extractJarResources(jarFile, UtilConstants.META_INF_PLUGIN_PATH, baseDir, true, true, callback);
+      }
+
+      assertEquals(2, files.size());
+      final Iterator<Map.Entry<File,PluginManifest>> iterator = files.entrySet().iterator();
+      final Map.Entry<File,PluginManifest> rule = iterator.next();
+      assertEquals("foo", rule.getValue().name);
+      assertNull(iterator.next().getValue());
+      assertFalse(staleDir.exists());
+      assertTrue(lockedDir.exists());
+      assertTrue(isoDir.exists());
+      lockFile.close();
+
+      final File outDir = rule.getKey().getParentFile().getParentFile().getParentFile();
+      assertTrue(outDir.getName(), outDir.getName().matches("plugins-[0-9a-f]{64}"));
+      assertTrue(SpecialAgentUtil.isContentDirLocked(outDir));
+
+      // A file of the same length but different content is extracted again
+      final byte[] bytes = Files.readAllBytes(rule.getKey().toPath());
+      final byte[] corrupt = bytes.clone();
+      corrupt[corrupt.length / 2] ^= 0xff;
+      Files.write(rule.getKey().toPath(), corrupt);
+
+      files.clear();
+      try (final JarFile jarFile = new JarFile(jar)) {
+        SpecialAgentUtil.extractJarResources(jarFile, UtilConstants.META_INF_PLUGIN_PATH, baseDir, true, true, callback);
+      }
+
+      assertArrayEquals(bytes, Files.readAllBytes(rule.getKey().toPath()));
+      assertEquals("foo", files.get(rule.getKey()).name);
+    }
+    finally {
+      jar.delete();
+      AssembleUtil.recurseDir(baseDir, new Predicate<File>() {
+        @Override
+        public boolean test(final File t) {
+          return t.delete();
+        }
+      });
+    }
+  }
+}
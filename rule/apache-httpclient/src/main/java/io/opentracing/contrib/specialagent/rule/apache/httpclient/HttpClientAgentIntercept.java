@@ -30,6 +30,7 @@ import io.opentracing.util.GlobalTracer;
 
 public class HttpClientAgentIntercept {
   static final String COMPONENT_NAME = "java-httpclient";
+  static final int COMPONENT_ID = LocalSpanContext.getId(COMPONENT_NAME);
 
   public static Object[] enter(final Object arg0, final Object arg1, final Object arg2) {
     final HttpRequest request = arg0 instanceof HttpRequest ? (HttpRequest)arg0 : arg1 instanceof HttpRequest ? (HttpRequest)arg1 : null;
@@ -42,7 +43,7 @@ public class HttpClientAgentIntercept {
       return null;
     }
 
-    final LocalSpanContext context = LocalSpanContext.get(COMPONENT_NAME);
+    final LocalSpanContext context = LocalSpanContext.get(COMPONENT_ID);
     if (context != null) {
       context.increment();
       return null;
@@ -59,7 +60,7 @@ public class HttpClientAgentIntercept {
     for (final ApacheClientSpanDecorator decorator : Configuration.spanDecorators)
       decorator.onRequest(request, arg0 instanceof HttpHost ? (HttpHost)arg0 : null, span);
 
-    LocalSpanContext.set(COMPONENT_NAME, span, null);
+    LocalSpanContext.set(COMPONENT_ID, span, null);
 
     tracer.inject(span.context(), Builtin.HTTP_HEADERS, new HttpHeadersInjectAdapter(request));
     if (arg1 instanceof ResponseHandler)
@@ -72,7 +73,7 @@ public class HttpClientAgentIntercept {
   }
 
   public static void exit(final Object returned) {
-    final LocalSpanContext context = LocalSpanContext.get(COMPONENT_NAME);
+    final LocalSpanContext context = LocalSpanContext.get(COMPONENT_ID);
     if (context == null || context.decrementAndGet() != 0)
       return;
 
@@ -86,7 +87,7 @@ public class HttpClientAgentIntercept {
   }
 
   public static void onError(final Throwable thrown) {
-    final LocalSpanContext context = LocalSpanContext.get(COMPONENT_NAME);
+    final LocalSpanContext context = LocalSpanContext.get(COMPONENT_ID);
     if (context == null || context.decrementAndGet() != 0)
       return;
 
@@ -23,7 +23,7 @@ import org.asynchttpclient.Request;
 
 import io.opentracing.Span;
 import io.opentracing.Tracer;
-import io.opentracing.contrib.common.WrapperProxy;
+import io.opentracing.contrib.specialagent.AgentRuleUtil;
 import io.opentracing.propagation.Format;
 import io.opentracing.propagation.TextMap;
 import io.opentracing.tag.Tags;
@@ -54,6 +54,6 @@ public class AsyncHttpClientAgentIntercept {
       }
     });
 
-    return WrapperProxy.wrap(handler, new TracingAsyncHandler(tracer, (AsyncHandler<?>)handler, span));
+    return AgentRuleUtil.wrap(handler, new TracingAsyncHandler(tracer, (AsyncHandler<?>)handler, span));
   }
 }
\ No newline at end of file
@@ -18,11 +18,11 @@ package io.opentracing.contrib.specialagent.rule.cassandra.driver3;
 import com.datastax.driver.core.Session;
 
 import io.opentracing.contrib.cassandra.TracingSession;
-import io.opentracing.contrib.common.WrapperProxy;
+import io.opentracing.contrib.specialagent.AgentRuleUtil;
 import io.opentracing.util.GlobalTracer;
 
 public class CassandraAgentIntercept {
   public static Object exit(final Object thiz) {
-    return WrapperProxy.wrap(thiz, new TracingSession((Session)thiz, GlobalTracer.get()));
+    return AgentRuleUtil.wrap(thiz, new TracingSession((Session)thiz, GlobalTracer.get()));
   }
 }
\ No newline at end of file
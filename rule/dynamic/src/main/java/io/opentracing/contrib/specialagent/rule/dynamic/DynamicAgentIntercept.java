@@ -18,18 +18,16 @@ package io.opentracing.contrib.specialagent.rule.dynamic;
 import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.util.ArrayDeque;
-import java.util.Arrays;
 import java.util.HashMap;
-import java.util.Queue;
 
 import io.opentracing.Span;
 import io.opentracing.tag.Tags;
 import io.opentracing.util.GlobalTracer;
 
 public class DynamicAgentIntercept {
-  private static final ThreadLocal<Queue<Span>> spanHolder = new ThreadLocal<Queue<Span>>() {
+  private static final ThreadLocal<ArrayDeque<Span>> spanHolder = new ThreadLocal<ArrayDeque<Span>>() {
     @Override
-    protected Queue<Span> initialValue() {
+    protected ArrayDeque<Span> initialValue() {
       return new ArrayDeque<>();
     }
   };
@@ -42,45 +40,23 @@ public class DynamicAgentIntercept {
 
   public static final String TAGS_VALUE_INTERNAL = "internal";
 
-  private static final String[] tokens = {"abstract", "final", "private", "protected", "public", "static", "throws", "synchronized", "void"};
-
-  public static void enter(final String origin) {
-    // parse public java.lang.String
-    // com.test.HomeController.homePage(java.lang.String)
-
-    String methodName = null;
-    final String[] parts = origin.split(" ");
-    for (final String part : parts) {
-      if (Arrays.binarySearch(tokens, part) < 0) {
-        final int par = part.lastIndexOf('(');
-        if (par == -1)
-          continue;
-
-        final int dot = part.lastIndexOf('.', par - 1);
-        methodName = part.substring(dot + 1, par);
-        break;
-      }
-    }
-
-    if (methodName == null)
-      throw new IllegalStateException();
-
+  public static void enter(final String operationName, final String origin) {
     final Span span = GlobalTracer.get()
-      .buildSpan(methodName)
+      .buildSpan(operationName)
       .withTag(TAGS_KEY_SPAN_TYPE, TAGS_VALUE_INTERNAL)
       .withTag(TAGS_KEY_ORIGIN, origin)
       .withTag(Tags.COMPONENT.getKey(), "dynamic")
       .start();
 
-    spanHolder.get().add(span);
+    spanHolder.get().push(span);
   }
 
   public static void exit(final Throwable thrown) {
-    final Queue<Span> spans = spanHolder.get();
+    final ArrayDeque<Span> spans = spanHolder.get();
     if (spans.isEmpty())
       return;
 
-    final Span span = spans.poll();
+    final Span span = spans.pop();
     if (thrown != null) {
       span.log(errorLogs(thrown));
       span.setTag(TAGS_KEY_ERROR, true);
@@ -17,9 +17,13 @@ package io.opentracing.contrib.specialagent.rule.dynamic;
 
 import static net.bytebuddy.matcher.ElementMatchers.*;
 
-import java.util.ArrayList;
+import java.io.File;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.instrument.Instrumentation;
 
 import io.opentracing.contrib.specialagent.AgentRule;
+import io.opentracing.contrib.specialagent.Logger;
 import net.bytebuddy.agent.builder.AgentBuilder;
 import net.bytebuddy.asm.Advice;
 import net.bytebuddy.description.method.MethodDescription;
@@ -30,50 +34,128 @@ import net.bytebuddy.matcher.ElementMatcher.Junction;
 import net.bytebuddy.utility.JavaModule;
 
 public class DynamicAgentRule extends AgentRule {
+  private static final Logger logger = Logger.getLogger(DynamicAgentRule.class);
   private static final String RULES = "sa.integration.dynamic.rules";
+  private static final String RULES_FILE = "sa.integration.dynamic.rules.file";
+  private static final String RULES_INTERVAL = "sa.integration.dynamic.rules.interval";
+  static final long DEFAULT_INTERVAL = 10;
+
+  /**
+   * Binds the operation name of the instrumented method, which is resolved
+   * once when the advice is woven, as a constant.
+   */
+  @Retention(RetentionPolicy.RUNTIME)
+  public @interface OperationName {
+  }
+
+  /**
+   * Returns the operation name of the spans of the methods matched by the
+   * specified {@link DynamicSpec} in the specified type, which is the name of
+   * the method, or the simple name of the type for constructors.
+   *
+   * @param spec The {@link DynamicSpec}.
+   * @param typeDescription The {@link TypeDescription} of the instrumented
+   *          type.
+   * @return The operation name of the spans of the methods matched by the
+   *         specified {@link DynamicSpec} in the specified type.
+   */
+  static String getOperationName(final DynamicSpec spec, final TypeDescription typeDescription) {
+    if (!"<init>".equals(spec.methodName))
+      return spec.methodName;
+
+    final String name = typeDescription.getName();
+    return name.substring(name.lastIndexOf('.') + 1);
+  }
+
+  /**
+   * Returns the interval at which the rules file is read, in seconds, as
+   * specified with {@code -Dsa.integration.dynamic.rules.interval}. If the
+   * specified interval is not a positive integer, a warning is logged and
+   * {@link #DEFAULT_INTERVAL} is returned.
+   *
+   * @param interval The value of the interval property, or {@code null}.
+   * @return The interval at which the rules file is read, in seconds.
+   */
+  static long parseInterval(final String interval) {
+    if (interval == null || interval.isEmpty())
+      return DEFAULT_INTERVAL;
+
+    try {
+      final long value = Long.parseLong(interval.trim());
+      if (value > 0)
+        return value;
+    }
+    catch (final NumberFormatException e) {
+    }
+
+    logger.warning("Invalid value, using default of " + DEFAULT_INTERVAL + ": -D" + RULES_INTERVAL + "=" + interval);
+    return DEFAULT_INTERVAL;
+  }
 
   @Override
-  public AgentBuilder[] buildAgentUnchained(final AgentBuilder builder) {
+  public AgentBuilder[] buildAgentUnchained(final AgentBuilder builder, final Instrumentation inst) {
+    final String rulesFile = System.getProperty(RULES_FILE);
+    if (rulesFile != null && !rulesFile.isEmpty()) {
+      if (inst == null) {
+        logger.warning("Instrumentation is not available, ignoring: -D" + RULES_FILE + "=" + rulesFile);
+      }
+      else {
+        new DynamicRuleWatcher(this, builder, inst, new File(rulesFile), parseInterval(System.getProperty(RULES_INTERVAL)), System.getProperty(RULES)).start();
+      }
+    }
+
     final String rules = System.getProperty(RULES);
     if (rules == null || rules.isEmpty())
       return null;
 
-    final ArrayList<AgentBuilder> builders = new ArrayList<>();
     final DynamicSpec[] specs = DynamicSpec.parseRules(rules);
-    for (final DynamicSpec spec : specs) {
-      Junction<TypeDescription> type = named(spec.className);
-      if (spec.polymorphic)
-        type = hasSuperType(type);
-
-      builders.add(builder.type(type).transform(new AgentBuilder.Transformer() {
-        @Override
-        public DynamicType.Builder<?> transform(final Builder<?> builder, final TypeDescription typeDescription, final ClassLoader classLoader, final JavaModule module) {
-          Junction<MethodDescription> methodDesc = named(spec.methodName);
-          if (spec.args != null) {
-            methodDesc = methodDesc.and(takesArguments(spec.args.length));
-            for (int i = 0; i < spec.args.length; ++i)
-              methodDesc = methodDesc.and(takesArgument(i, named(spec.args[i])));
-          }
-
-          if (spec.returning != null) {
-            if ("<void>".equals(spec.returning))
-              methodDesc = methodDesc.and(returns(void.class));
-            else
-              methodDesc = methodDesc.and(returns(named(spec.returning)));
-          }
-
-          return builder.visit(advice(typeDescription).to(DynamicAgentRule.class).on(methodDesc));
+    final AgentBuilder[] builders = new AgentBuilder[specs.length];
+    for (int i = 0; i < specs.length; ++i)
+      builders[i] = buildAgent(builder, specs[i]);
+
+    return builders;
+  }
+
+  /**
+   * Returns an {@link AgentBuilder} that instruments the methods matched by
+   * the specified {@link DynamicSpec}.
+   *
+   * @param builder The {@link AgentBuilder} to be used as the seed instance.
+   * @param spec The {@link DynamicSpec}.
+   * @return An {@link AgentBuilder} that instruments the methods matched by
+   *         the specified {@link DynamicSpec}.
+   */
+  AgentBuilder buildAgent(final AgentBuilder builder, final DynamicSpec spec) {
+    Junction<TypeDescription> type = named(spec.className);
+    if (spec.polymorphic)
+      type = hasSuperType(type);
+
+    return builder.type(type).transform(new AgentBuilder.Transformer() {
+      @Override
+      public DynamicType.Builder<?> transform(final Builder<?> builder, final TypeDescription typeDescription, final ClassLoader classLoader, final JavaModule module) {
+        Junction<MethodDescription> methodDesc = named(spec.methodName);
+        if (spec.args != null) {
+          methodDesc = methodDesc.and(takesArguments(spec.args.length));
+          for (int i = 0; i < spec.args.length; ++i)
+            methodDesc = methodDesc.and(takesArgument(i, named(spec.args[i])));
+        }
+
+        if (spec.returning != null) {
+          if ("<void>".equals(spec.returning))
+            methodDesc = methodDesc.and(returns(void.class));
+          else
+            methodDesc = methodDesc.and(returns(named(spec.returning)));
         }
-      }));
-    }
 
-    return builders.toArray(new AgentBuilder[builders.size()]);
+        return builder.visit(advice(typeDescription).bind(OperationName.class, getOperationName(spec, typeDescription)).to(DynamicAgentRule.class).on(methodDesc));
+      }
+    });
   }
 
   @Advice.OnMethodEnter
-  public static void enter(final @ClassName String className, final @Advice.Origin String origin) {
+  public static void enter(final @ClassName String className, final @Advice.Origin String origin, final @OperationName String operationName) {
     if (isAllowed(className, origin))
-      DynamicAgentIntercept.enter(origin);
+      DynamicAgentIntercept.enter(operationName, origin);
   }
 
   @Advice.OnMethodExit(onThrowable = Throwable.class)
@@ -0,0 +1,207 @@
+/* Copyright 2020 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.opentracing.contrib.specialagent.rule.dynamic;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.instrument.Instrumentation;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+import io.opentracing.contrib.specialagent.Level;
+import io.opentracing.contrib.specialagent.Logger;
+import net.bytebuddy.agent.builder.AgentBuilder;
+import net.bytebuddy.agent.builder.AgentBuilder.RedefinitionStrategy;
+import net.bytebuddy.agent.builder.ResettableClassFileTransformer;
+
+/**
+ * Watcher of the dynamic rules file specified with
+ * {@code -Dsa.integration.dynamic.rules.file}, which is read every
+ * {@code -Dsa.integration.dynamic.rules.interval} seconds.
+ * <p>
+ * Each rule that is added to the file is installed with its own
+ * {@link ResettableClassFileTransformer}, which retransforms only the loaded
+ * classes matched by the rule. Each rule that is removed from the file is
+ * reset, which removes its transformer and retransforms the classes it
+ * matched, thereby restoring their bytecode without the instrumentation of
+ * the rule. Rules of the file that are also specified with
+ * {@code -Dsa.integration.dynamic.rules} are not installed again.
+ */
+class DynamicRuleWatcher implements Runnable {
+  private static final Logger logger = Logger.getLogger(DynamicRuleWatcher.class);
+
+  private final DynamicAgentRule agentRule;
+  private final AgentBuilder builder;
+  private final Instrumentation inst;
+  private final File file;
+  private final long interval;
+  private final Set<String> propertyRules = new HashSet<>();
+  private final Map<String,ResettableClassFileTransformer> ruleToTransformer = new LinkedHashMap<>();
+
+  /**
+   * Creates a new {@code DynamicRuleWatcher}.
+   *
+   * @param agentRule The {@link DynamicAgentRule} with which the rules are
+   *          built.
+   * @param builder The {@link AgentBuilder} to be used as the seed instance of
+   *          the rules.
+   * @param inst The {@link Instrumentation}.
+   * @param file The rules file.
+   * @param interval The interval at which the rules file is read, in seconds.
+   * @param propertyRules The rules specified with
+   *          {@code -Dsa.integration.dynamic.rules}, or {@code null}.
+   */
+  DynamicRuleWatcher(final DynamicAgentRule agentRule, final AgentBuilder builder, final Instrumentation inst, final File file, final long interval, final String propertyRules) {
+    this.agentRule = agentRule;
+    this.builder = builder;
+    this.inst = inst;
+    this.file = file;
+    this.interval = interval;
+    if (propertyRules != null)
+      for (final String rule : propertyRules.split(";"))
+        this.propertyRules.add(normalize(rule));
+  }
+
+  /**
+   * Returns the specified rule without whitespace, by which rules are
+   * compared.
+   *
+   * @param rule The rule.
+   * @return The specified rule without whitespace.
+   */
+  private static String normalize(final String rule) {
+    return rule.replaceAll("\\s", "");
+  }
+
+  /**
+   * Installs the rules of the rules file, and starts the daemon thread that
+   * reads the rules file at the interval of this watcher.
+   */
+  void start() {
+    reload();
+    final Thread thread = new Thread(this, "SpecialAgent-DynamicRuleWatcher");
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  @Override
+  public void run() {
+    while (true) {
+      try {
+        Thread.sleep(interval * 1000);
+      }
+      catch (final InterruptedException e) {
+        return;
+      }
+
+      reload();
+    }
+  }
+
+  /**
+   * Returns the rules in the rules file, which are separated by {@code ';'}
+   * or line breaks. If the rules file does not exist, an empty set is
+   * returned.
+   *
+   * @return The rules in the rules file.
+   * @throws IOException If an I/O error has occurred.
+   */
+  private Set<String> readRules() throws IOException {
+    final Set<String> rules = new LinkedHashSet<>();
+    if (!file.exists())
+      return rules;
+
+    for (final String rule : new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8).split("[;\r\n]")) {
+      final String trimmed = rule.trim();
+      if (trimmed.length() > 0)
+        rules.add(trimmed);
+    }
+
+    return rules;
+  }
+
+  /**
+   * Reads the rules file, resets the rules that were removed from it, and
+   * installs the rules that were added to it.
+   */
+  synchronized void reload() {
+    final Set<String> rules;
+    try {
+      rules = readRules();
+    }
+    catch (final IOException e) {
+      logger.log(Level.WARNING, "Unable to read dynamic rules file: " + file, e);
+      return;
+    }
+
+    final Iterator<Map.Entry<String,ResettableClassFileTransformer>> iterator = ruleToTransformer.entrySet().iterator();
+    while (iterator.hasNext()) {
+      final Map.Entry<String,ResettableClassFileTransformer> entry = iterator.next();
+      if (rules.contains(entry.getKey()))
+        continue;
+
+      iterator.remove();
+      if (entry.getValue() == null)
+        continue;
+
+      try {
+        entry.getValue().reset(inst, RedefinitionStrategy.RETRANSFORMATION);
+        if (logger.isLoggable(Level.FINE))
+          logger.fine("Removed dynamic rule: " + entry.getKey());
+      }
+      catch (final Exception e) {
+        logger.log(Level.SEVERE, "Unable to remove dynamic rule: " + entry.getKey(), e);
+      }
+    }
+
+    for (final String rule : rules) {
+      if (ruleToTransformer.containsKey(rule))
+        continue;
+
+      if (propertyRules.contains(normalize(rule))) {
+        // The rule is retained without a transformer, as it is already
+        // installed from -Dsa.integration.dynamic.rules
+        ruleToTransformer.put(rule, null);
+        if (logger.isLoggable(Level.FINE))
+          logger.fine("Skipped dynamic rule that is also specified with -Dsa.integration.dynamic.rules: " + rule);
+
+        continue;
+      }
+
+      try {
+        ruleToTransformer.put(rule, agentRule.buildAgent(builder, DynamicSpec.parseRules(rule)[0]).installOn(inst));
+        if (logger.isLoggable(Level.FINE))
+          logger.fine("Added dynamic rule: " + rule);
+      }
+      catch (final IllegalArgumentException e) {
+        // The rule is retained without a transformer, so that it is not
+        // retried until it is changed
+        ruleToTransformer.put(rule, null);
+        logger.warning(e.getMessage());
+      }
+      catch (final Exception e) {
+        ruleToTransformer.put(rule, null);
+        logger.log(Level.SEVERE, "Unable to add dynamic rule: " + rule, e);
+      }
+    }
+  }
+}
\ No newline at end of file
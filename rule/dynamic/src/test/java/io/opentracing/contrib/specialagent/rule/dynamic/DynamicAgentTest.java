@@ -17,6 +17,10 @@ package io.opentracing.contrib.specialagent.rule.dynamic;
 
 import static org.junit.Assert.*;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.util.List;
 import java.util.Map;
 
@@ -27,10 +31,31 @@ import org.junit.runner.RunWith;
 import io.opentracing.contrib.specialagent.AgentRunner;
 import io.opentracing.mock.MockSpan;
 import io.opentracing.mock.MockTracer;
+import net.bytebuddy.agent.ByteBuddyAgent;
+import net.bytebuddy.agent.builder.AgentBuilder;
+import net.bytebuddy.agent.builder.AgentBuilder.RedefinitionStrategy;
 
 @RunWith(AgentRunner.class)
-@AgentRunner.Config(properties = "sa.integration.dynamic.rules=io.opentracing.contrib.specialagent.rule.dynamic.ExampleMethodClass#test1;io.opentracing.contrib.specialagent.rule.dynamic.ExampleMethodClass#test2(java.lang.String):java.lang.String")
+@AgentRunner.Config(properties = "sa.integration.dynamic.rules=" + DynamicAgentTest.RULES)
 public class DynamicAgentTest {
+  static final String RULES = "io.opentracing.contrib.specialagent.rule.dynamic.ExampleMethodClass#test1;io.opentracing.contrib.specialagent.rule.dynamic.ExampleMethodClass#test2(java.lang.String):java.lang.String;io.opentracing.contrib.specialagent.rule.dynamic.ExampleMethodClass#test3";
+
+  /**
+   * Creates {@link DynamicRuleWatcher}s. The ByteBuddy classes are referenced
+   * only from this class, so that they are resolved when this class is loaded
+   * by the test, which is after the {@link AgentRunner} has appended ByteBuddy
+   * to the bootstrap class loader.
+   */
+  private static final class Watchers {
+    private static DynamicRuleWatcher newWatcher(final File file) {
+      final AgentBuilder builder = new AgentBuilder.Default()
+        .disableClassFormatChanges()
+        .with(RedefinitionStrategy.RETRANSFORMATION);
+
+      return new DynamicRuleWatcher(new DynamicAgentRule(), builder, ByteBuddyAgent.getInstrumentation(), file, DynamicAgentRule.DEFAULT_INTERVAL, RULES);
+    }
+  }
+
   @Before
   public void before(final MockTracer tracer) {
     tracer.reset();
@@ -65,4 +90,57 @@ public class DynamicAgentTest {
     assertNotNull(tags);
     assertEquals(200, tags.get(DynamicAgentIntercept.TAGS_KEY_HTTP_STATUS_CODE));
   }
+
+  @Test
+  public void test3(final MockTracer tracer) {
+    final ExampleMethodClass exampleMethodClass = new ExampleMethodClass();
+    exampleMethodClass.test3("test");
+
+    final List<MockSpan> spans = tracer.finishedSpans();
+    assertEquals(2, spans.size());
+    assertEquals("test2", spans.get(0).operationName());
+    assertEquals("test3", spans.get(1).operationName());
+  }
+
+  @Test
+  public void testRulesFile(final MockTracer tracer) throws IOException {
+    final File file = File.createTempFile("dynamic", ".rules");
+    try {
+      final DynamicRuleWatcher watcher = Watchers.newWatcher(file);
+      // The rule of test2 is also specified in the system property, and is
+      // therefore not installed again
+      Files.write(file.toPath(), (ExampleMethodClass.class.getName() + "#test4\n" + ExampleMethodClass.class.getName() + "#test2( java.lang.String ) : java.lang.String").getBytes(StandardCharsets.UTF_8));
+      watcher.reload();
+
+      new ExampleMethodClass().test4("test");
+      List<MockSpan> spans = tracer.finishedSpans();
+      assertEquals(1, spans.size());
+      assertEquals("test4", spans.get(0).operationName());
+
+      tracer.reset();
+      new ExampleMethodClass().test2("test");
+      spans = tracer.finishedSpans();
+      assertEquals(1, spans.size());
+      assertEquals("test2", spans.get(0).operationName());
+
+      tracer.reset();
+      Files.write(file.toPath(), new byte[0]);
+      watcher.reload();
+
+      new ExampleMethodClass().test4("test");
+      assertEquals(0, tracer.finishedSpans().size());
+    }
+    finally {
+      file.delete();
+    }
+  }
+
+  @Test
+  public void testParseInterval() {
+    assertEquals(DynamicAgentRule.DEFAULT_INTERVAL, DynamicAgentRule.parseInterval(null));
+    assertEquals(DynamicAgentRule.DEFAULT_INTERVAL, DynamicAgentRule.parseInterval("foo"));
+    assertEquals(DynamicAgentRule.DEFAULT_INTERVAL, DynamicAgentRule.parseInterval("0"));
+    assertEquals(DynamicAgentRule.DEFAULT_INTERVAL, DynamicAgentRule.parseInterval("-1"));
+    assertEquals(3, DynamicAgentRule.parseInterval("3"));
+  }
 }
\ No newline at end of file
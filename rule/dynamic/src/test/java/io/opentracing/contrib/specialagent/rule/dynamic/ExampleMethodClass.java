@@ -23,4 +23,12 @@ public class ExampleMethodClass {
   public String test2(final String args) {
     return args;
   }
+
+  public String test3(final String args) {
+    return test2(args);
+  }
+
+  public String test4(final String args) {
+    return args;
+  }
 }
\ No newline at end of file
@@ -22,9 +22,9 @@ import org.apache.kafka.clients.producer.ProducerRecord;
 
 import io.opentracing.Span;
 import io.opentracing.Tracer;
-import io.opentracing.contrib.common.WrapperProxy;
 import io.opentracing.contrib.kafka.TracingCallback;
 import io.opentracing.contrib.kafka.TracingKafkaUtils;
+import io.opentracing.contrib.specialagent.AgentRuleUtil;
 import io.opentracing.util.GlobalTracer;
 
 public class KafkaAgentIntercept {
@@ -37,6 +37,6 @@ public class KafkaAgentIntercept {
   public static Object onProducerEnter(final Object record, final Object callback) {
     final Tracer tracer = GlobalTracer.get();
     final Span span = TracingKafkaUtils.buildAndInjectSpan((ProducerRecord<?,?>)record, tracer);
-    return WrapperProxy.wrap(callback, new TracingCallback((Callback)callback, span, tracer));
+    return AgentRuleUtil.wrap(callback, new TracingCallback((Callback)callback, span, tracer));
   }
 }
\ No newline at end of file
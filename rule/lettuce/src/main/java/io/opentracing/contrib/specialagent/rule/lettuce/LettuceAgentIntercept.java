@@ -37,6 +37,7 @@ import reactor.core.publisher.Mono;
 @SuppressWarnings({"rawtypes", "unchecked"})
 public class LettuceAgentIntercept {
   static final String COMPONENT_NAME = "java-redis";
+  static final int COMPONENT_ID = LocalSpanContext.getId(COMPONENT_NAME);
   static final String DB_TYPE = "redis";
 
   public static final Set<String> nonInstrumentingCommands = new HashSet<>();
@@ -56,11 +57,11 @@ public class LettuceAgentIntercept {
       .withTag(Tags.DB_TYPE.getKey(), DB_TYPE)
       .start();
 
-    LocalSpanContext.set(COMPONENT_NAME, span, tracer.activateSpan(span));
+    LocalSpanContext.set(COMPONENT_ID, span, tracer.activateSpan(span));
   }
 
   public static void dispatchEnd(final Object command, final Object returned, final Throwable thrown) {
-    final LocalSpanContext context = LocalSpanContext.get(COMPONENT_NAME);
+    final LocalSpanContext context = LocalSpanContext.get(COMPONENT_ID);
     if (context == null || context.decrementAndGet() != 0)
       return;
 
@@ -138,11 +139,11 @@ public class LettuceAgentIntercept {
       .withTag("db.redis.dbIndex", redisURI.getDatabase())
       .start();
 
-    LocalSpanContext.set(COMPONENT_NAME, span, tracer.activateSpan(span));
+    LocalSpanContext.set(COMPONENT_ID, span, tracer.activateSpan(span));
   }
 
   public static void connectEnd(final Object returned, final Throwable thrown) {
-    final LocalSpanContext context = LocalSpanContext.get(COMPONENT_NAME);
+    final LocalSpanContext context = LocalSpanContext.get(COMPONENT_ID);
     if (context == null || context.decrementAndGet() != 0)
       return;
 
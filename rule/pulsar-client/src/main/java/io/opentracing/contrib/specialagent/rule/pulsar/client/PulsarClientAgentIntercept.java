@@ -38,6 +38,7 @@ import io.opentracing.util.GlobalTracer;
 
 public class PulsarClientAgentIntercept {
   static final String COMPONENT_NAME = "java-pulsar";
+  static final int COMPONENT_ID = LocalSpanContext.getId(COMPONENT_NAME);
 
   private static void buildConsumerSpan(final Consumer<?> consumer, final Message<?> message) {
     final Tracer tracer = GlobalTracer.get();
@@ -71,8 +72,8 @@ public class PulsarClientAgentIntercept {
   }
 
   public static void internalSendAsyncEnter(final Object thiz, final Object arg) {
-    if (LocalSpanContext.get(COMPONENT_NAME) != null) {
-      LocalSpanContext.get(COMPONENT_NAME).increment();
+    if (LocalSpanContext.get(COMPONENT_ID) != null) {
+      LocalSpanContext.get(COMPONENT_ID).increment();
       return;
     }
 
@@ -93,12 +94,12 @@ public class PulsarClientAgentIntercept {
     tracer.inject(span.context(), Builtin.TEXT_MAP, new PropertiesMapInjectAdapter(message.getMessageBuilder()));
 
     final Scope scope = tracer.activateSpan(span);
-    LocalSpanContext.set(COMPONENT_NAME, span, scope);
+    LocalSpanContext.set(COMPONENT_ID, span, scope);
   }
 
   @SuppressWarnings("unchecked")
   public static Object internalSendAsyncEnd(final Object returned, final Throwable thrown) {
-    final LocalSpanContext context = LocalSpanContext.get(COMPONENT_NAME);
+    final LocalSpanContext context = LocalSpanContext.get(COMPONENT_ID);
     if (context == null)
       return returned;
 
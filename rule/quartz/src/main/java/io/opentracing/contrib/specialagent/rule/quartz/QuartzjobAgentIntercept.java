@@ -24,6 +24,7 @@ import org.quartz.JobExecutionContext;
 
 public class QuartzjobAgentIntercept {
   static final String COMPONENT_NAME = "quartz-job";
+  static final int COMPONENT_ID = LocalSpanContext.getId(COMPONENT_NAME);
 
   public static void enter(final Object thiz, final Object args) {
 
@@ -39,11 +40,11 @@ public class QuartzjobAgentIntercept {
             .start();
 
     final Scope scope = tracer.activateSpan(span);
-    LocalSpanContext.set(COMPONENT_NAME, span, scope);
+    LocalSpanContext.set(COMPONENT_ID, span, scope);
   }
 
   public static void exit(final Throwable thrown) {
-    final LocalSpanContext context = LocalSpanContext.get(COMPONENT_NAME);
+    final LocalSpanContext context = LocalSpanContext.get(COMPONENT_ID);
     if (context == null)
       return;
 
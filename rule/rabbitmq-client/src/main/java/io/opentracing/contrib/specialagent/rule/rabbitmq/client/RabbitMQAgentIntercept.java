@@ -24,15 +24,17 @@ import com.rabbitmq.client.GetResponse;
 import io.opentracing.Scope;
 import io.opentracing.Span;
 import io.opentracing.Tracer;
-import io.opentracing.contrib.common.WrapperProxy;
 import io.opentracing.contrib.rabbitmq.SpanDecorator;
 import io.opentracing.contrib.rabbitmq.TracingConsumer;
 import io.opentracing.contrib.rabbitmq.TracingUtils;
+import io.opentracing.contrib.specialagent.AgentRuleUtil;
 import io.opentracing.contrib.specialagent.LocalSpanContext;
 import io.opentracing.contrib.specialagent.OpenTracingApiUtil;
 import io.opentracing.util.GlobalTracer;
 
 public class RabbitMQAgentIntercept {
+  private static final int COMPONENT_ID = LocalSpanContext.getId(SpanDecorator.COMPONENT_NAME);
+
   public static void exitGet(final Object response, final Object queue, final Throwable thrown) {
     final Span span = TracingUtils.buildChildSpan(((GetResponse)response).getProps(), (String)queue, GlobalTracer.get());
     if (thrown != null)
@@ -42,7 +44,7 @@ public class RabbitMQAgentIntercept {
   }
 
   public static void finish(final Throwable thrown) {
-    final LocalSpanContext context = LocalSpanContext.get(SpanDecorator.COMPONENT_NAME);
+    final LocalSpanContext context = LocalSpanContext.get(COMPONENT_ID);
     if (context == null)
       return;
 
@@ -58,12 +60,12 @@ public class RabbitMQAgentIntercept {
     final Span span = TracingUtils.buildSpan((String)exchange, (String)routingKey, properties, tracer);
 
     final Scope scope = tracer.activateSpan(span);
-    LocalSpanContext.set(SpanDecorator.COMPONENT_NAME, span, scope);
+    LocalSpanContext.set(COMPONENT_ID, span, scope);
 
     return inject(properties, span, tracer);
   }
 
   public static Object enterConsume(final Object callback, final Object queue) {
-    return WrapperProxy.wrap(callback, new TracingConsumer((Consumer)callback, (String)queue, GlobalTracer.get()));
+    return AgentRuleUtil.wrap(callback, new TracingConsumer((Consumer)callback, (String)queue, GlobalTracer.get()));
   }
 }
\ No newline at end of file
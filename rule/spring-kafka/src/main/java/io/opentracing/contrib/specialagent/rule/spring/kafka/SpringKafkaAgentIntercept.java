@@ -30,10 +30,11 @@ import io.opentracing.util.GlobalTracer;
 
 public class SpringKafkaAgentIntercept {
   static final String COMPONENT_NAME = "spring-kafka";
+  static final int COMPONENT_ID = LocalSpanContext.getId(COMPONENT_NAME);
 
   public static void onMessageEnter(final Object record) {
-    if (LocalSpanContext.get(COMPONENT_NAME) != null) {
-      LocalSpanContext.get(COMPONENT_NAME).increment();
+    if (LocalSpanContext.get(COMPONENT_ID) != null) {
+      LocalSpanContext.get(COMPONENT_ID).increment();
       return;
     }
 
@@ -51,11 +52,11 @@ public class SpringKafkaAgentIntercept {
     }
 
     final Span span = builder.start();
-    LocalSpanContext.set(COMPONENT_NAME, span, tracer.activateSpan(span));
+    LocalSpanContext.set(COMPONENT_ID, span, tracer.activateSpan(span));
   }
 
   public static void onMessageExit(final Throwable thrown) {
-    final LocalSpanContext context = LocalSpanContext.get(COMPONENT_NAME);
+    final LocalSpanContext context = LocalSpanContext.get(COMPONENT_ID);
     if (context != null && context.decrementAndGet() == 0) {
       if (thrown != null)
         OpenTracingApiUtil.setErrorTag(context.getSpan(), thrown);
@@ -20,6 +20,7 @@ import java.util.concurrent.ConcurrentLinkedQueue;
 import org.apache.thrift.protocol.TProtocol;
 
 import io.opentracing.Tracer;
+import io.opentracing.contrib.specialagent.AgentRuleUtil;
 import io.opentracing.thrift.SpanHolder;
 import io.opentracing.thrift.SpanProtocol;
 import io.opentracing.util.GlobalTracer;
@@ -48,18 +49,7 @@ public class ThriftProtocolFactoryAgentIntercept {
     return new SpanProtocol((TProtocol)protocol, tracer, spanHolder, false);
   }
 
-  // FIXME: Look at AgentRuleUtil#callerEquals
   static boolean callerHasClass(final String className, final int frameMaxIndex) {
-    final StackTraceElement[] stackTraceElements = Thread.currentThread().getStackTrace();
-    final int limit = frameMaxIndex + 2;
-    for (int i = 2; i < limit; ++i) {
-      if (stackTraceElements.length < i)
-        return false;
-
-      if (stackTraceElements[i].getClassName().equals(className))
-        return true;
-    }
-
-    return false;
+    return AgentRuleUtil.callerClassEquals(1, frameMaxIndex + 1, className);
   }
 }
\ No newline at end of file
@@ -35,14 +35,36 @@ class ClassScanner extends ClassVisitor {
   private static final Logger logger = Logger.getLogger(ClassScanner.class);
 
   static ClassFingerprint fingerprint(final ClassLoader classLoader, final String resourcePath, final Set<String> innerClassExcludes) throws IOException {
+    return fingerprint(classLoader, resourcePath, innerClassExcludes, null);
+  }
+
+  /**
+   * Fingerprints the class of the specified resource path in the provided
+   * {@code ClassLoader}, merging the members of its supertypes.
+   *
+   * @param classLoader The {@code ClassLoader} in which the resource path is to
+   *          be found.
+   * @param resourcePath The resource path to fingerprint.
+   * @param innerClassExcludes The set to which the names of private inner
+   *          classes are added.
+   * @param resourcePaths The list to which the resource paths of the class and
+   *          of its supertypes that were scanned are added, or {@code null}.
+   * @return A {@code ClassFingerprint} object representing the fingerprint of
+   *         the class at the specified resource path.
+   * @throws IOException If an I/O error has occurred.
+   */
+  static ClassFingerprint fingerprint(final ClassLoader classLoader, final String resourcePath, final Set<String> innerClassExcludes, final List<String> resourcePaths) throws IOException {
     final Collection<MethodFingerprint> methods = new LinkedHashSet<>();
     final List<FieldFingerprint> fields = new ArrayList<>();
-    final ClassScanner scanner = scan(classLoader, resourcePath, methods, fields, innerClassExcludes);
+    final ClassScanner scanner = scan(classLoader, resourcePath, methods, fields, innerClassExcludes, resourcePaths);
     return scanner == null ? null : new ClassFingerprint(scanner.className, scanner.superClass, scanner.constructors, new ArrayList<>(methods), fields);
   }
 
-  private static ClassScanner scan(final ClassLoader classLoader, final String resourcePath, final Collection<MethodFingerprint> methods, final List<FieldFingerprint> fields, final Set<String> innerClassExcludes) throws IOException {
-    final ClassScanner scanner = new ClassScanner(classLoader, methods, fields, innerClassExcludes);
+  private static ClassScanner scan(final ClassLoader classLoader, final String resourcePath, final Collection<MethodFingerprint> methods, final List<FieldFingerprint> fields, final Set<String> innerClassExcludes, final List<String> resourcePaths) throws IOException {
+    if (resourcePaths != null)
+      resourcePaths.add(resourcePath);
+
+    final ClassScanner scanner = new ClassScanner(classLoader, methods, fields, innerClassExcludes, resourcePaths);
     try (final InputStream in = classLoader.getResourceAsStream(resourcePath)) {
       new ClassReader(in).accept(scanner, 0);
       scanner.scanSupers();
@@ -59,12 +81,12 @@ class ClassScanner extends ClassVisitor {
     }
   }
 
-  private static void scanInterfaces(final List<String> interfaces, final ClassLoader classLoader, final Collection<MethodFingerprint> methods, final List<FieldFingerprint> fields, final Set<String> innerClassExcludes) throws IOException {
+  private static void scanInterfaces(final List<String> interfaces, final ClassLoader classLoader, final Collection<MethodFingerprint> methods, final List<FieldFingerprint> fields, final Set<String> innerClassExcludes, final List<String> resourcePaths) throws IOException {
     for (final String cls : interfaces) {
       if (!FingerprintUtil.isExcluded(cls)) {
-        final ClassScanner scanner = ClassScanner.scan(classLoader, AssembleUtil.classNameToResource(cls), methods, fields, innerClassExcludes);
+        final ClassScanner scanner = ClassScanner.scan(classLoader, AssembleUtil.classNameToResource(cls), methods, fields, innerClassExcludes, resourcePaths);
         if (scanner != null && scanner.interfaces != null)
-          scanInterfaces(scanner.interfaces, classLoader, methods, fields, innerClassExcludes);
+          scanInterfaces(scanner.interfaces, classLoader, methods, fields, innerClassExcludes, resourcePaths);
       }
     }
   }
@@ -78,24 +100,26 @@ class ClassScanner extends ClassVisitor {
   private List<String> interfaces;
   private final ClassLoader classLoader;
   private final Set<String> innerClassExcludes;
+  private final List<String> resourcePaths;
 
-  private ClassScanner(final ClassLoader classLoader, final Collection<MethodFingerprint> methods, final List<FieldFingerprint> fields, final Set<String> innerClassExcludes) {
+  private ClassScanner(final ClassLoader classLoader, final Collection<MethodFingerprint> methods, final List<FieldFingerprint> fields, final Set<String> innerClassExcludes, final List<String> resourcePaths) {
     super(Opcodes.ASM5);
     this.classLoader = classLoader;
     this.methods = methods;
     this.fields = fields;
     this.innerClassExcludes = innerClassExcludes;
+    this.resourcePaths = resourcePaths;
   }
 
   private void scanSupers() throws IOException {
     String superClass = this.superClass;
     while (superClass != null) {
-      final ClassScanner next = ClassScanner.scan(classLoader, AssembleUtil.classNameToResource(superClass), methods, fields, innerClassExcludes);
+      final ClassScanner next = ClassScanner.scan(classLoader, AssembleUtil.classNameToResource(superClass), methods, fields, innerClassExcludes, resourcePaths);
       superClass = next == null ? null : next.superClass;
     }
 
     if (interfaces != null)
-      scanInterfaces(interfaces, classLoader, methods, fields, innerClassExcludes);
+      scanInterfaces(interfaces, classLoader, methods, fields, innerClassExcludes, resourcePaths);
   }
 
   @Override
@@ -38,6 +38,13 @@ class FieldFingerprint extends NamedFingerprint<FieldFingerprint> {
     this.type = Objects.requireNonNull(type);
   }
 
+  /**
+   * @return The class name of the field's type.
+   */
+  String getType() {
+    return this.type;
+  }
+
   @Override
   public boolean equals(final Object obj) {
     if (obj == this)
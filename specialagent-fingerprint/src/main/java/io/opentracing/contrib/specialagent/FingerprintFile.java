@@ -0,0 +1,343 @@
+/* Copyright 2020 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.opentracing.contrib.specialagent;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A read-only view of the binary encoding of a {@link LibraryFingerprint},
+ * which is queried lazily from a {@link ByteBuffer} (i.e. a memory-mapped
+ * file), without materializing the {@link ClassFingerprint} objects of the
+ * classes that are not queried.
+ * <p>
+ * The encoding consists of:
+ * <ol>
+ * <li>The header: {@link #MAGIC}, {@link #VERSION}.</li>
+ * <li>The string table: the number of strings, followed by the fixed-width
+ * offset of each string.</li>
+ * <li>The ids of the strings of the "presents" and "absents" lists, each
+ * preceded by the size of the list.</li>
+ * <li>The class table: the number of classes, followed by the fixed-width
+ * offset of each class record, in the order of the class names.</li>
+ * <li>The string data: the length of each string, followed by its UTF-8
+ * bytes.</li>
+ * <li>The class records: the ids of the name and super class, followed by the
+ * constructors, methods and fields, each preceded by their number.</li>
+ * </ol>
+ * All values are 32-bit integers in big-endian order. Each string is interned
+ * in the string table, and is referenced by its id. A {@code null} string is
+ * referenced by the id {@code -1}, and a {@code null} list is encoded with the
+ * size {@code -1}.
+ */
+class FingerprintFile {
+  static final int MAGIC = 0x5341_4650;
+  static final int VERSION = 1;
+
+  /**
+   * Returns whether the specified {@link ByteBuffer} starts with the header of
+   * the binary encoding of a {@link LibraryFingerprint}.
+   *
+   * @param buffer The {@link ByteBuffer}.
+   * @return Whether the specified {@link ByteBuffer} starts with the header of
+   *         the binary encoding of a {@link LibraryFingerprint}.
+   */
+  static boolean isFingerprintFile(final ByteBuffer buffer) {
+    return buffer.limit() >= 8 && buffer.getInt(0) == MAGIC;
+  }
+
+  /**
+   * Writes the binary encoding of the specified classes and lists to the
+   * provided {@link OutputStream}.
+   *
+   * @param classes The {@link ClassFingerprint} array, sorted by name.
+   * @param presents List of classes the fingerprint must assert are present.
+   * @param absents List of classes the fingerprint must assert are absent.
+   * @param out The {@link OutputStream}.
+   * @throws IOException If an I/O error has occurred.
+   */
+  static void write(final ClassFingerprint[] classes, final List<String> presents, final List<String> absents, final OutputStream out) throws IOException {
+    final Map<String,Integer> stringToId = new LinkedHashMap<>();
+    final ByteArrayOutputStream classBytes = new ByteArrayOutputStream();
+    final DataOutputStream classData = new DataOutputStream(classBytes);
+    final int noClasses = classes == null ? 0 : classes.length;
+    final int[] classOffsets = new int[noClasses];
+    for (int i = 0; i < noClasses; ++i) {
+      classOffsets[i] = classData.size();
+      writeClass(classData, classes[i], stringToId);
+    }
+
+    final int[] presentIds = toIds(presents, stringToId);
+    final int[] absentIds = toIds(absents, stringToId);
+
+    final ByteArrayOutputStream stringBytes = new ByteArrayOutputStream();
+    final DataOutputStream stringData = new DataOutputStream(stringBytes);
+    final int[] stringOffsets = new int[stringToId.size()];
+    int index = 0;
+    for (final String string : stringToId.keySet()) {
+      stringOffsets[index++] = stringData.size();
+      final byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+      stringData.writeInt(bytes.length);
+      stringData.write(bytes);
+    }
+
+    final int headerSize = 4 * (2 + 1 + stringOffsets.length + 1 + (presentIds == null ? 0 : presentIds.length) + 1 + (absentIds == null ? 0 : absentIds.length) + 1 + classOffsets.length);
+    final int stringBase = headerSize;
+    final int classBase = stringBase + stringData.size();
+
+    final DataOutputStream data = new DataOutputStream(out);
+    data.writeInt(MAGIC);
+    data.writeInt(VERSION);
+    data.writeInt(stringOffsets.length);
+    for (final int stringOffset : stringOffsets)
+      data.writeInt(stringBase + stringOffset);
+
+    writeIds(data, presentIds);
+    writeIds(data, absentIds);
+    data.writeInt(classOffsets.length);
+    for (final int classOffset : classOffsets)
+      data.writeInt(classBase + classOffset);
+
+    stringBytes.writeTo(data);
+    classBytes.writeTo(data);
+    data.flush();
+  }
+
+  private static int toId(final String string, final Map<String,Integer> stringToId) {
+    if (string == null)
+      return -1;
+
+    final Integer id = stringToId.get(string);
+    if (id != null)
+      return id;
+
+    final int newId = stringToId.size();
+    stringToId.put(string, newId);
+    return newId;
+  }
+
+  private static int[] toIds(final List<String> strings, final Map<String,Integer> stringToId) {
+    if (strings == null)
+      return null;
+
+    final int[] ids = new int[strings.size()];
+    for (int i = 0; i < ids.length; ++i)
+      ids[i] = toId(strings.get(i), stringToId);
+
+    return ids;
+  }
+
+  private static void writeIds(final DataOutputStream out, final int[] ids) throws IOException {
+    if (ids == null) {
+      out.writeInt(-1);
+    }
+    else {
+      out.writeInt(ids.length);
+      for (final int id : ids)
+        out.writeInt(id);
+    }
+  }
+
+  private static void writeClass(final DataOutputStream out, final ClassFingerprint classFingerprint, final Map<String,Integer> stringToId) throws IOException {
+    out.writeInt(toId(classFingerprint.getName(), stringToId));
+    out.writeInt(toId(classFingerprint.getSuperClass(), stringToId));
+
+    final List<ConstructorFingerprint> constructors = classFingerprint.getConstructors();
+    out.writeInt(constructors == null ? -1 : constructors.size());
+    if (constructors != null) {
+      for (final ConstructorFingerprint constructor : constructors) {
+        writeIds(out, toIds(constructor.getParameterTypes(), stringToId));
+        writeIds(out, toIds(constructor.getExceptionTypes(), stringToId));
+      }
+    }
+
+    final List<MethodFingerprint> methods = classFingerprint.getMethods();
+    out.writeInt(methods == null ? -1 : methods.size());
+    if (methods != null) {
+      for (final MethodFingerprint method : methods) {
+        out.writeInt(toId(method.getName(), stringToId));
+        out.writeInt(toId(method.getReturnType(), stringToId));
+        writeIds(out, toIds(method.getParameterTypes(), stringToId));
+        writeIds(out, toIds(method.getExceptionTypes(), stringToId));
+      }
+    }
+
+    final List<FieldFingerprint> fields = classFingerprint.getFields();
+    out.writeInt(fields == null ? -1 : fields.size());
+    if (fields != null) {
+      for (final FieldFingerprint field : fields) {
+        out.writeInt(toId(field.getName(), stringToId));
+        out.writeInt(toId(field.getType(), stringToId));
+      }
+    }
+  }
+
+  private final ByteBuffer buffer;
+  private final int stringTable;
+  private final int presentsTable;
+  private final int absentsTable;
+  private final int classTable;
+  private final String[] strings;
+
+  /**
+   * Creates a new {@code FingerprintFile} for the specified {@link ByteBuffer}.
+   *
+   * @param buffer The {@link ByteBuffer} with the binary encoding of a
+   *          {@link LibraryFingerprint}.
+   * @throws IllegalArgumentException If the specified {@link ByteBuffer} does
+   *           not start with the header of the binary encoding, or is of an
+   *           unsupported version.
+   */
+  FingerprintFile(final ByteBuffer buffer) {
+    if (!isFingerprintFile(buffer))
+      throw new IllegalArgumentException("Not a fingerprint file");
+
+    final int version = buffer.getInt(4);
+    if (version != VERSION)
+      throw new IllegalArgumentException("Unsupported fingerprint file version: " + version);
+
+    this.buffer = buffer;
+    this.stringTable = 8;
+    this.strings = new String[buffer.getInt(stringTable)];
+    this.presentsTable = stringTable + 4 + 4 * strings.length;
+    this.absentsTable = presentsTable + 4 + 4 * Math.max(0, buffer.getInt(presentsTable));
+    this.classTable = absentsTable + 4 + 4 * Math.max(0, buffer.getInt(absentsTable));
+  }
+
+  /**
+   * Returns the string by the specified id. Each string is decoded once, when
+   * it is first queried.
+   *
+   * @param id The id of the string.
+   * @return The string by the specified id, or {@code null} if the id is
+   *         {@code -1}.
+   */
+  private String getString(final int id) {
+    if (id == -1)
+      return null;
+
+    final String string = strings[id];
+    if (string != null)
+      return string;
+
+    final int offset = buffer.getInt(stringTable + 4 + 4 * id);
+    final byte[] bytes = new byte[buffer.getInt(offset)];
+    final ByteBuffer duplicate = buffer.duplicate();
+    duplicate.position(offset + 4);
+    duplicate.get(bytes);
+    return strings[id] = new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  private List<String> getStrings(final int offset) {
+    final int size = buffer.getInt(offset);
+    if (size == -1)
+      return null;
+
+    final String[] strings = new String[size];
+    for (int i = 0; i < size; ++i)
+      strings[i] = getString(buffer.getInt(offset + 4 + 4 * i));
+
+    return new ArrayList<>(Arrays.asList(strings));
+  }
+
+  /**
+   * @return The list of classes the fingerprint asserts must be present.
+   */
+  List<String> getPresents() {
+    return getStrings(presentsTable);
+  }
+
+  /**
+   * @return The list of classes the fingerprint asserts must be absent.
+   */
+  List<String> getAbsents() {
+    return getStrings(absentsTable);
+  }
+
+  /**
+   * @return The number of classes in the fingerprint.
+   */
+  int getClassCount() {
+    return buffer.getInt(classTable);
+  }
+
+  private int getClassOffset(final int index) {
+    return buffer.getInt(classTable + 4 + 4 * index);
+  }
+
+  /**
+   * Returns the name of the class at the specified index, without decoding the
+   * rest of its {@link ClassFingerprint}.
+   *
+   * @param index The index of the class.
+   * @return The name of the class at the specified index.
+   */
+  String getClassName(final int index) {
+    return getString(buffer.getInt(getClassOffset(index)));
+  }
+
+  /**
+   * Returns a new {@link ClassFingerprint} that is decoded from the record of
+   * the class at the specified index.
+   *
+   * @param index The index of the class.
+   * @return A new {@link ClassFingerprint} that is decoded from the record of
+   *         the class at the specified index.
+   */
+  ClassFingerprint getClassFingerprint(final int index) {
+    final int[] offset = {getClassOffset(index)};
+    final String name = getString(next(offset));
+    final String superClass = getString(next(offset));
+
+    final int noConstructors = next(offset);
+    final List<ConstructorFingerprint> constructors = noConstructors == -1 ? null : new ArrayList<ConstructorFingerprint>(noConstructors);
+    for (int i = 0; i < noConstructors; ++i)
+      constructors.add(new ConstructorFingerprint(nextStrings(offset), nextStrings(offset)));
+
+    final int noMethods = next(offset);
+    final List<MethodFingerprint> methods = noMethods == -1 ? null : new ArrayList<MethodFingerprint>(noMethods);
+    for (int i = 0; i < noMethods; ++i)
+      methods.add(new MethodFingerprint(getString(next(offset)), getString(next(offset)), nextStrings(offset), nextStrings(offset)));
+
+    final int noFields = next(offset);
+    final List<FieldFingerprint> fields = noFields == -1 ? null : new ArrayList<FieldFingerprint>(noFields);
+    for (int i = 0; i < noFields; ++i)
+      fields.add(new FieldFingerprint(getString(next(offset)), getString(next(offset))));
+
+    return new ClassFingerprint(name, superClass, constructors, methods, fields);
+  }
+
+  private int next(final int[] offset) {
+    final int value = buffer.getInt(offset[0]);
+    offset[0] += 4;
+    return value;
+  }
+
+  private List<String> nextStrings(final int[] offset) {
+    final List<String> strings = getStrings(offset[0]);
+    offset[0] += 4 + (strings == null ? 0 : 4 * strings.size());
+    return strings;
+  }
+}
@@ -15,12 +15,20 @@
 
 package io.opentracing.contrib.specialagent;
 
+import java.io.File;
 import java.io.IOException;
+import java.net.URISyntaxException;
+import java.net.URL;
 import java.net.URLClassLoader;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.objectweb.asm.ClassVisitor;
 
@@ -32,6 +40,126 @@ import org.objectweb.asm.ClassVisitor;
  */
 class FingerprintVerifier {
   private static final Logger logger = Logger.getLogger(FingerprintVerifier.class);
+  private static final ClassFingerprint NULL_FINGERPRINT = new ClassFingerprint("", null, null, null, null);
+
+  /**
+   * A {@link ClassFingerprint} in the {@link #cache}, with the resources of the
+   * class and of its supertypes from which it was computed, and the URL and the
+   * last-modified time of each resource.
+   */
+  private static final class CacheEntry {
+    private final String[] resourcePaths;
+    private final String[] urls;
+    private final long[] lastModified;
+    private final ClassFingerprint fingerprint;
+
+    private CacheEntry(final ClassLoader classLoader, final URL url, final long lastModified, final List<String> resourcePaths, final ClassFingerprint fingerprint) {
+      final int size = resourcePaths.size();
+      this.resourcePaths = resourcePaths.toArray(new String[size]);
+      this.urls = new String[size];
+      this.lastModified = new long[size];
+      this.urls[0] = url.toString();
+      this.lastModified[0] = lastModified;
+      for (int i = 1; i < size; ++i) {
+        final URL resource = classLoader.getResource(this.resourcePaths[i]);
+        if (resource != null) {
+          this.urls[i] = resource.toString();
+          this.lastModified[i] = lastModified(resource);
+        }
+      }
+
+      this.fingerprint = fingerprint;
+    }
+
+    /**
+     * Returns whether the resources of this entry resolve to the same URLs,
+     * with the same last-modified times, in the specified
+     * {@code ClassLoader}.
+     *
+     * @param classLoader The {@code ClassLoader}.
+     * @param lastModified The last-modified time of the resource of the class.
+     * @return Whether this entry is current for the specified
+     *         {@code ClassLoader}.
+     */
+    private boolean isCurrent(final ClassLoader classLoader, final long lastModified) {
+      if (this.lastModified[0] != lastModified)
+        return false;
+
+      for (int i = 1; i < resourcePaths.length; ++i) {
+        final URL resource = classLoader.getResource(resourcePaths[i]);
+        if (resource == null ? urls[i] != null : !resource.toString().equals(urls[i]) || lastModified(resource) != this.lastModified[i])
+          return false;
+      }
+
+      return true;
+    }
+  }
+
+  /**
+   * Cache of the {@link ClassFingerprint} objects of class resources, shared
+   * by all verifiers and {@code ClassLoader}s, which is keyed by the URL of the
+   * class resource. Because the fingerprint of a class merges the members of
+   * its supertypes, a cached {@link ClassFingerprint} is only served if the
+   * resources of the class and of its supertypes still resolve to the same
+   * URLs, with the same last-modified times, in the requesting
+   * {@code ClassLoader}.
+   */
+  private static final ConcurrentMap<String,CacheEntry> cache = new ConcurrentHashMap<>();
+  private static final AtomicLong cacheHits = new AtomicLong();
+  private static final AtomicLong cacheMisses = new AtomicLong();
+
+  /**
+   * Logs the statistics of the shared {@link ClassFingerprint} cache at
+   * {@link Level#FINE}.
+   */
+  static void logCacheStatistics() {
+    if (logger.isLoggable(Level.FINE))
+      logger.fine("ClassFingerprint cache: " + cache.size() + " classes, " + cacheHits.get() + " hits, " + cacheMisses.get() + " misses");
+  }
+
+  /**
+   * @return The number of {@link ClassFingerprint} objects served from the
+   *         shared cache.
+   */
+  static long getCacheHits() {
+    return cacheHits.get();
+  }
+
+  /**
+   * @return The number of {@link ClassFingerprint} objects that were not found
+   *         in the shared cache.
+   */
+  static long getCacheMisses() {
+    return cacheMisses.get();
+  }
+
+  /**
+   * Returns the last-modified time of the file of the specified URL (or of the
+   * JAR file, for a {@code jar:file:} URL), or {@code 0} if the URL does not
+   * refer to a file.
+   *
+   * @param url The URL.
+   * @return The last-modified time of the file of the specified URL.
+   */
+  private static long lastModified(final URL url) {
+    try {
+      if ("file".equals(url.getProtocol()))
+        return new File(url.toURI()).lastModified();
+
+      if ("jar".equals(url.getProtocol())) {
+        final String path = url.getPath();
+        final int bang = path.indexOf("!/");
+        if (path.startsWith("file:") && bang != -1)
+          return new File(new URL(path.substring(0, bang)).toURI()).lastModified();
+      }
+    }
+    catch (final IOException | URISyntaxException | IllegalArgumentException e) {
+      if (logger.isLoggable(Level.FINEST))
+        logger.finest("Unable to determine last-modified time of " + url + ": " + e.getMessage());
+    }
+
+    return 0;
+  }
 
   /**
    * Creates a new {@code Fingerprinter}.
@@ -91,4 +219,40 @@ class FingerprintVerifier {
 
     return ClassScanner.fingerprint(classLoader, resourcePath, innerClassExcludes);
   }
+
+  /**
+   * Returns the {@code ClassFingerprint} of the provided resource path
+   * representing a class in the specified {@code ClassLoader}, from the cache
+   * that is shared by all verifiers, if present and current. Otherwise, the
+   * class is fingerprinted, and the result is cached.
+   *
+   * @param classLoader The {@code ClassLoader} in which the resource path is to
+   *          be found.
+   * @param resourcePath The resource path to fingerprint.
+   * @return A {@code ClassFingerprint} object representing the fingerprint of
+   *         the class at the specified resource path.
+   * @throws IOException If an I/O error has occurred.
+   */
+  ClassFingerprint cachedFingerprint(final ClassLoader classLoader, final String resourcePath) throws IOException {
+    final URL url = classLoader.getResource(resourcePath);
+    if (url == null)
+      return fingerprint(classLoader, resourcePath);
+
+    final String key = url.toString();
+    final long lastModified = lastModified(url);
+    final CacheEntry entry = cache.get(key);
+    if (entry != null && entry.isCurrent(classLoader, lastModified)) {
+      cacheHits.incrementAndGet();
+      return entry.fingerprint == NULL_FINGERPRINT ? null : entry.fingerprint;
+    }
+
+    cacheMisses.incrementAndGet();
+    if (logger.isLoggable(Level.FINEST))
+      logger.finest(AssembleUtil.getNameId(this) + "#fingerprint(" + AssembleUtil.getNameId(classLoader) + ", \"" + resourcePath + "\")");
+
+    final List<String> resourcePaths = new ArrayList<>();
+    final ClassFingerprint fingerprint = ClassScanner.fingerprint(classLoader, resourcePath, innerClassExcludes, resourcePaths);
+    cache.put(key, new CacheEntry(classLoader, url, lastModified, resourcePaths, fingerprint == null ? NULL_FINGERPRINT : fingerprint));
+    return fingerprint;
+  }
 }
\ No newline at end of file
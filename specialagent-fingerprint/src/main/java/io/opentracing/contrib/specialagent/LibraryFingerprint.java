@@ -15,16 +15,28 @@
 
 package io.opentracing.contrib.specialagent;
 
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.net.URISyntaxException;
 import java.net.URL;
 import java.net.URLClassLoader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * A {@link Fingerprint} that represents the fingerprint of a library.
@@ -36,22 +48,52 @@ public class LibraryFingerprint extends Fingerprint {
   private static final Logger logger = Logger.getLogger(LibraryFingerprint.class);
 
   /**
-   * Returns a {@code LibraryFingerprint} for the serialized object encoding at
-   * the specified URL.
+   * Returns a {@code LibraryFingerprint} for the encoding at the specified URL.
+   * <p>
+   * The binary encoding of {@link FingerprintFile} is memory-mapped if the URL
+   * refers to a file (otherwise it is read into a heap buffer), and is queried
+   * lazily. The serialized object encoding of previous versions is also
+   * supported.
    *
-   * @param url The URL referencing the resource with the serialized object
-   *          encoding representing a {@code LibraryFingerprint} object.
-   * @return A {@code LibraryFingerprint} for the serialized object encoding at
-   *         the specified URL.
+   * @param url The URL referencing the resource with the encoding representing
+   *          a {@code LibraryFingerprint} object.
+   * @return A {@code LibraryFingerprint} for the encoding at the specified URL.
    * @throws IOException If an I/O error has occurred.
    */
   public static LibraryFingerprint fromFile(final URL url) throws IOException {
-    try (final ObjectInputStream in = new ObjectInputStream(url.openStream())) {
-      final LibraryFingerprint libraryFingerprint = (LibraryFingerprint)in.readObject();
-      if (logger.isLoggable(Level.FINEST))
-        logger.finest("LibraryFingerprint#fromFile(\"" + url + "\"): " + libraryFingerprint);
+    final ByteBuffer buffer = read(url);
+    final LibraryFingerprint libraryFingerprint = FingerprintFile.isFingerprintFile(buffer) ? new LibraryFingerprint(new FingerprintFile(buffer)) : deserialize(buffer);
+    if (logger.isLoggable(Level.FINEST))
+      logger.finest("LibraryFingerprint#fromFile(\"" + url + "\"): " + libraryFingerprint);
 
-      return libraryFingerprint == null ? null : libraryFingerprint;
+    return libraryFingerprint;
+  }
+
+  private static ByteBuffer read(final URL url) throws IOException {
+    if ("file".equals(url.getProtocol())) {
+      try (final FileChannel channel = FileChannel.open(Paths.get(url.toURI()), StandardOpenOption.READ)) {
+        return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      }
+      catch (final URISyntaxException e) {
+        throw new IllegalArgumentException(e);
+      }
+    }
+
+    try (final InputStream in = url.openStream()) {
+      final ByteArrayOutputStream out = new ByteArrayOutputStream();
+      final byte[] bytes = new byte[8192];
+      for (int len; (len = in.read(bytes)) != -1;)
+        out.write(bytes, 0, len);
+
+      return ByteBuffer.wrap(out.toByteArray());
+    }
+  }
+
+  private static LibraryFingerprint deserialize(final ByteBuffer buffer) throws IOException {
+    final byte[] bytes = new byte[buffer.remaining()];
+    buffer.duplicate().get(bytes);
+    try (final ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+      return (LibraryFingerprint)in.readObject();
     }
     catch (final ClassNotFoundException e) {
       throw new UnsupportedOperationException(e);
@@ -61,6 +103,7 @@ public class LibraryFingerprint extends Fingerprint {
   private final ClassFingerprint[] classes;
   private final List<String> presents;
   private final List<String> absents;
+  private final transient FingerprintFile file;
 
   /**
    * Creates a new {@code LibraryFingerprint} with the specified {@code URL}
@@ -84,6 +127,34 @@ public class LibraryFingerprint extends Fingerprint {
     this.classes = new FingerprintBuilder(logger).build(classLoader, Integer.MAX_VALUE).toArray(new ClassFingerprint[0]);
     this.presents = presents;
     this.absents = absents;
+    this.file = null;
+  }
+
+  /**
+   * Creates a new {@code LibraryFingerprint} with the specified classes.
+   *
+   * @param classes The {@code ClassFingerprint} array, sorted by name.
+   * @param presents List of classes the fingerprint must assert are present.
+   * @param absents List of classes the fingerprint must assert are absent.
+   */
+  LibraryFingerprint(final ClassFingerprint[] classes, final List<String> presents, final List<String> absents) {
+    this.classes = classes;
+    this.presents = presents;
+    this.absents = absents;
+    this.file = null;
+  }
+
+  /**
+   * Creates a new {@code LibraryFingerprint} that is backed by the specified
+   * {@link FingerprintFile}.
+   *
+   * @param file The {@link FingerprintFile}.
+   */
+  LibraryFingerprint(final FingerprintFile file) {
+    this.classes = null;
+    this.presents = file.getPresents();
+    this.absents = file.getAbsents();
+    this.file = file;
   }
 
   /**
@@ -93,27 +164,73 @@ public class LibraryFingerprint extends Fingerprint {
     this.classes = null;
     this.presents = null;
     this.absents = null;
+    this.file = null;
   }
 
   /**
    * Exports this {@code LibraryFingerprint} to the specified {@code File} in
-   * the form of a serialized object representation.
+   * the binary encoding of {@link FingerprintFile}.
    *
    * @param file The {@code File} to which to export.
    * @throws IOException If an I/O error has occurred.
    */
   void toFile(final File file) throws IOException {
-    try (final ObjectOutputStream out = new ObjectOutputStream(new FileOutputStream(file))) {
-      out.writeObject(this);
+    try (final OutputStream out = new BufferedOutputStream(new FileOutputStream(file))) {
+      FingerprintFile.write(getClasses(), presents, absents, out);
     }
   }
 
   /**
+   * Returns the {@code ClassFingerprint} array of this
+   * {@code LibraryFingerprint}. If this {@code LibraryFingerprint} is backed by
+   * a {@link FingerprintFile}, each {@code ClassFingerprint} is decoded anew.
+   *
    * @return The {@code ClassFingerprint} array of this
    *         {@code LibraryFingerprint}.
    */
   ClassFingerprint[] getClasses() {
-    return this.classes;
+    if (file == null)
+      return this.classes;
+
+    final ClassFingerprint[] classes = new ClassFingerprint[file.getClassCount()];
+    for (int i = 0; i < classes.length; ++i)
+      classes[i] = file.getClassFingerprint(i);
+
+    return classes;
+  }
+
+  /**
+   * Replaces a {@code LibraryFingerprint} that is backed by a
+   * {@link FingerprintFile} with one that holds the decoded classes, for the
+   * serialized object encoding.
+   *
+   * @return The {@code LibraryFingerprint} to be serialized.
+   */
+  private Object writeReplace() {
+    return file == null ? this : new LibraryFingerprint(getClasses(), presents, absents);
+  }
+
+  /**
+   * @return The number of classes in this {@code LibraryFingerprint}.
+   */
+  int getClassCount() {
+    return file != null ? file.getClassCount() : classes != null ? classes.length : 0;
+  }
+
+  /**
+   * @param index The index of the class.
+   * @return The {@code ClassFingerprint} of the class at the specified index.
+   */
+  ClassFingerprint getClassFingerprint(final int index) {
+    return file != null ? file.getClassFingerprint(index) : classes[index];
+  }
+
+  /**
+   * @param index The index of the class.
+   * @return The name of the class at the specified index.
+   */
+  String getClassName(final int index) {
+    return file != null ? file.getClassName(index) : classes[index].getName();
   }
 
   /**
@@ -132,55 +249,172 @@ public class LibraryFingerprint extends Fingerprint {
 
   /**
    * Tests whether the runtime represented by the specified {@code ClassLoader}
-   * is compatible with this fingerprint.
+   * is compatible with this fingerprint, and returns all errors encountered.
    *
    * @param classLoader The {@code ClassLoader} representing the runtime to test
    *          for compatibility.
    * @return A list of {@code FingerprintError} objects representing all
    *         errors encountered in the compatibility test, or {@code null} if
    *         the runtime is compatible with this fingerprint.
+   * @see #isCompatible(ClassLoader,boolean)
    */
   public List<FingerprintError> isCompatible(final ClassLoader classLoader) {
+    return isCompatible(classLoader, true);
+  }
+
+  /**
+   * Tests whether the runtime represented by the specified {@code ClassLoader}
+   * is compatible with this fingerprint.
+   * <p>
+   * The classes of this fingerprint are verified in parallel on a bounded
+   * {@link ForkJoinPool}, unless the fingerprint is small, or the current
+   * thread holds the lock of the {@code ClassLoader} (i.e. it is loading a
+   * class in a {@code ClassLoader} that is not parallel capable), in which
+   * case the worker threads could block on the same lock.
+   *
+   * @param classLoader The {@code ClassLoader} representing the runtime to test
+   *          for compatibility.
+   * @param verbose Whether to return all errors encountered in the
+   *          compatibility test. If {@code false}, the test stops at the first
+   *          error, and only that error is returned.
+   * @return A list of {@code FingerprintError} objects representing the errors
+   *         encountered in the compatibility test, or {@code null} if the
+   *         runtime is compatible with this fingerprint.
+   */
+  public List<FingerprintError> isCompatible(final ClassLoader classLoader, final boolean verbose) {
     final List<FingerprintError> errors = new ArrayList<>();
     if (presents != null) {
       for (final String present : presents) {
         final String resourcePath = AssembleUtil.classNameToResource(present);
-        if (classLoader.getResource(resourcePath) == null)
+        if (classLoader.getResource(resourcePath) == null) {
           errors.add(new FingerprintError(FingerprintError.Reason.MUST_BE_PRESENT, new ClassNameFingerprint(present), null));
+          if (!verbose)
+            return errors;
+        }
       }
     }
 
     if (absents != null) {
       for (final String absent : absents) {
         final String resourcePath = AssembleUtil.classNameToResource(absent);
-        if (classLoader.getResource(resourcePath) != null)
+        if (classLoader.getResource(resourcePath) != null) {
           errors.add(new FingerprintError(FingerprintError.Reason.MUST_BE_ABSENT, new ClassNameFingerprint(absent), null));
+          if (!verbose)
+            return errors;
+        }
       }
     }
 
+    final int noClasses = getClassCount();
+    final AtomicBoolean failed = new AtomicBoolean();
+    if (noClasses <= BATCH_SIZE || Thread.holdsLock(classLoader))
+      verify(classLoader, 0, noClasses, verbose, failed, errors);
+    else
+      errors.addAll(Pool.pool.invoke(new Verification(classLoader, 0, noClasses, verbose, failed)));
+
+    FingerprintVerifier.logCacheStatistics();
+    if (errors.size() == 0)
+      return null;
+
+    // Concurrent ranges may each have encountered an error before stopping
+    return verbose || errors.size() == 1 ? errors : errors.subList(0, 1);
+  }
+
+  /**
+   * The number of classes below which the classes of a fingerprint are
+   * verified serially.
+   */
+  private static final int BATCH_SIZE = 16;
+
+  /**
+   * Holder of the {@link ForkJoinPool} on which the classes of fingerprints
+   * are verified, which is created when first used.
+   */
+  private static final class Pool {
+    private static final ForkJoinPool pool = new ForkJoinPool(Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors())));
+  }
+
+  /**
+   * A {@link RecursiveTask} that verifies a range of the classes of this
+   * fingerprint, by splitting the range until it is no larger than
+   * {@link #BATCH_SIZE}.
+   */
+  private final class Verification extends RecursiveTask<List<FingerprintError>> {
+    private final ClassLoader classLoader;
+    private final int from;
+    private final int to;
+    private final boolean verbose;
+    private final AtomicBoolean failed;
+
+    private Verification(final ClassLoader classLoader, final int from, final int to, final boolean verbose, final AtomicBoolean failed) {
+      this.classLoader = classLoader;
+      this.from = from;
+      this.to = to;
+      this.verbose = verbose;
+      this.failed = failed;
+    }
+
+    @Override
+    protected List<FingerprintError> compute() {
+      if (to - from <= BATCH_SIZE) {
+        final List<FingerprintError> errors = new ArrayList<>(0);
+        verify(classLoader, from, to, verbose, failed, errors);
+        return errors;
+      }
+
+      final int mid = (from + to) >>> 1;
+      final Verification left = new Verification(classLoader, from, mid, verbose, failed);
+      left.fork();
+      final List<FingerprintError> rightErrors = new Verification(classLoader, mid, to, verbose, failed).compute();
+      final List<FingerprintError> errors = left.join();
+      errors.addAll(rightErrors);
+      return errors;
+    }
+  }
+
+  /**
+   * Verifies the classes of this fingerprint in the specified range against
+   * the specified {@code ClassLoader}.
+   *
+   * @param classLoader The {@code ClassLoader} representing the runtime to test
+   *          for compatibility.
+   * @param from The index of the first class to verify, inclusive.
+   * @param to The index of the last class to verify, exclusive.
+   * @param verbose Whether to continue after the first error.
+   * @param failed Whether an error has been encountered in any range, which is
+   *          set if {@code verbose} is {@code false}, to stop the verification
+   *          of the other ranges.
+   * @param errors The list to which the errors are to be added.
+   */
+  private void verify(final ClassLoader classLoader, final int from, final int to, final boolean verbose, final AtomicBoolean failed, final List<FingerprintError> errors) {
     final FingerprintVerifier verifier = new FingerprintVerifier();
-    for (int i = 0; i < classes.length; ++i) {
+    for (int i = from; i < to && !failed.get(); ++i) {
       try {
-        final ClassFingerprint expected = classes[i];
-        final ClassFingerprint actual = verifier.fingerprint(classLoader, AssembleUtil.classNameToResource(expected.getName()));
+        final String className = getClassName(i);
+        final ClassFingerprint actual = verifier.cachedFingerprint(classLoader, AssembleUtil.classNameToResource(className));
+        final ClassFingerprint expected = getClassFingerprint(i);
         if (actual == null) {
-          verifier.fingerprint(classLoader, AssembleUtil.classNameToResource(expected.getName()));
+          verifier.fingerprint(classLoader, AssembleUtil.classNameToResource(className));
           errors.add(new FingerprintError(FingerprintError.Reason.MISSING, expected, null));
         }
         else if (!actual.compatible(expected)) {
           actual.compatible(expected);
           errors.add(new FingerprintError(FingerprintError.Reason.MISMATCH, expected, actual));
         }
-        else if (logger.isLoggable(Level.FINER)) {
-          logger.finer("ClassFingerprint#compatible[true](\"" + expected.getName() + "\")");
+        else {
+          if (logger.isLoggable(Level.FINER))
+            logger.finer("ClassFingerprint#compatible[true](\"" + className + "\")");
+
+          continue;
         }
+
+        if (!verbose)
+          failed.set(true);
       }
       catch (final IOException e) {
         logger.log(Level.WARNING, "Failed generate class fingerprint due to IOException -- resorting to default behavior (permit instrumentation)", e);
       }
     }
-
-    return errors.size() != 0 ? errors : null;
   }
 
   @Override
@@ -192,11 +426,13 @@ public class LibraryFingerprint extends Fingerprint {
       return false;
 
     final LibraryFingerprint that = (LibraryFingerprint)obj;
-    return classes != null ? that.classes != null && Arrays.equals(classes, that.classes) : that.classes == null;
+    final ClassFingerprint[] classes = getClasses();
+    final ClassFingerprint[] thatClasses = that.getClasses();
+    return classes != null ? thatClasses != null && Arrays.equals(classes, thatClasses) : thatClasses == null;
   }
 
   @Override
   public String toString() {
-    return "\n" + AssembleUtil.toString(classes, "\n");
+    return "\n" + AssembleUtil.toString(getClasses(), "\n");
   }
 }
\ No newline at end of file
@@ -0,0 +1,125 @@
+/* Copyright 2020 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.opentracing.contrib.specialagent;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.concurrent.TimeUnit;
+
+import org.objectweb.asm.ClassVisitor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Measures the cost of {@link LibraryFingerprint#fromFile(URL)} for the binary
+ * encoding of {@link FingerprintFile} against the serialized object encoding,
+ * which is what {@code RuleClassLoader} pays for each fingerprint. The
+ * {@code load} benchmarks only read the fingerprint, and the {@code lookup}
+ * benchmarks also read the last {@link ClassFingerprint}, as is done when a
+ * class is verified. The fingerprint is that of the classes of this module,
+ * against ASM and the SpecialAgent utilities as the library.
+ * <p>
+ * Run with: {@code mvn test-compile exec:exec -Dexec.executable=java
+ * -Dexec.classpathScope=test
+ * -Dexec.args="-cp %classpath io.opentracing.contrib.specialagent.FingerprintFileBenchmark"}
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FingerprintFileBenchmark {
+  private File serializedFile;
+  private File binaryFile;
+  private URL serializedUrl;
+  private URL binaryUrl;
+
+  @Setup
+  public void setup() throws IOException {
+    final URL[] libDeps = {ClassVisitor.class.getProtectionDomain().getCodeSource().getLocation(), AssembleUtil.class.getProtectionDomain().getCodeSource().getLocation()};
+    final URL[] ruleDeps = {LibraryFingerprint.class.getProtectionDomain().getCodeSource().getLocation()};
+    final LibraryFingerprint fingerprint;
+    try (final URLClassLoader classLoader = new URLClassLoader(ruleDeps, new URLClassLoader(libDeps, null))) {
+      fingerprint = new LibraryFingerprint(classLoader, null, null, Logger.getLogger(FingerprintFileBenchmark.class));
+    }
+
+    serializedFile = File.createTempFile("fingerprint", ".ser");
+    try (final ObjectOutputStream out = new ObjectOutputStream(new FileOutputStream(serializedFile))) {
+      out.writeObject(fingerprint);
+    }
+
+    binaryFile = File.createTempFile("fingerprint", ".bin");
+    fingerprint.toFile(binaryFile);
+
+    serializedUrl = serializedFile.toURI().toURL();
+    binaryUrl = binaryFile.toURI().toURL();
+  }
+
+  @TearDown
+  public void tearDown() {
+    serializedFile.delete();
+    binaryFile.delete();
+  }
+
+  private static ClassFingerprint last(final LibraryFingerprint fingerprint) {
+    return fingerprint.getClassFingerprint(fingerprint.getClassCount() - 1);
+  }
+
+  @Benchmark
+  public LibraryFingerprint serializedLoad() throws IOException {
+    return LibraryFingerprint.fromFile(serializedUrl);
+  }
+
+  @Benchmark
+  public LibraryFingerprint binaryLoad() throws IOException {
+    return LibraryFingerprint.fromFile(binaryUrl);
+  }
+
+  @Benchmark
+  public ClassFingerprint serializedLookup() throws IOException {
+    return last(LibraryFingerprint.fromFile(serializedUrl));
+  }
+
+  @Benchmark
+  public ClassFingerprint binaryLookup() throws IOException {
+    return last(LibraryFingerprint.fromFile(binaryUrl));
+  }
+
+  public static void main(final String[] args) throws RunnerException {
+    new Runner(new OptionsBuilder()
+      .include(FingerprintFileBenchmark.class.getSimpleName())
+      .addProfiler(GCProfiler.class)
+      .build()).run();
+  }
+}
@@ -17,14 +17,22 @@ package io.opentracing.contrib.specialagent;
 
 import static org.junit.Assert.*;
 
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.ObjectOutputStream;
 import java.net.URL;
 import java.net.URLClassLoader;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
 import java.util.Enumeration;
 import java.util.List;
 
+import org.junit.Assert;
 import org.junit.Ignore;
 import org.junit.Test;
+import org.junit.runners.BlockJUnit4ClassRunner;
 
 public class FingerprintTest {
   private static final Logger logger = Logger.getLogger(FingerprintTest.class);
@@ -37,6 +45,106 @@ public class FingerprintTest {
     System.out.println(AssembleUtil.toIndentedString(classFingerprints));
   }
 
+  private static LibraryFingerprint newLibraryFingerprint() throws IOException {
+    final List<ClassFingerprint> classFingerprints = new FingerprintBuilder(logger).build(ClassLoader.getSystemClassLoader(), Integer.MAX_VALUE, FpTestClass1.class, FpTestClass2.MemberInner.class, FpTestClass2.Inner.class, FpTestClass2.class);
+    return new LibraryFingerprint(classFingerprints.toArray(new ClassFingerprint[classFingerprints.size()]), Arrays.asList("java.lang.Object"), null);
+  }
+
+  private static void assertLibraryFingerprint(final LibraryFingerprint expected, final LibraryFingerprint actual) {
+    assertEquals(expected, actual);
+    assertEquals(expected.toString(), actual.toString());
+    assertEquals(expected.getPresents(), actual.getPresents());
+    assertEquals(expected.getAbsents(), actual.getAbsents());
+    assertNull(actual.isCompatible(ClassLoader.getSystemClassLoader()));
+  }
+
+  @Test
+  public void testBinaryEncoding() throws IOException {
+    final LibraryFingerprint expected = newLibraryFingerprint();
+    final File file = File.createTempFile("fingerprint", ".bin");
+    file.deleteOnExit();
+    expected.toFile(file);
+
+    final LibraryFingerprint actual = LibraryFingerprint.fromFile(file.toURI().toURL());
+    assertLibraryFingerprint(expected, actual);
+
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    FingerprintFile.write(expected.getClasses(), expected.getPresents(), expected.getAbsents(), out);
+    assertLibraryFingerprint(expected, new LibraryFingerprint(new FingerprintFile(ByteBuffer.wrap(out.toByteArray()))));
+  }
+
+  @Test
+  public void testSerializedEncoding() throws IOException {
+    final LibraryFingerprint expected = newLibraryFingerprint();
+    final File file = File.createTempFile("fingerprint", ".bin");
+    file.deleteOnExit();
+    try (final ObjectOutputStream out = new ObjectOutputStream(new FileOutputStream(file))) {
+      out.writeObject(expected);
+    }
+
+    assertLibraryFingerprint(expected, LibraryFingerprint.fromFile(file.toURI().toURL()));
+  }
+
+  @Test
+  public void testVerification() throws IOException {
+    // The fingerprint of JUnit is large enough to be verified in parallel
+    final List<ClassFingerprint> classFingerprints = new FingerprintBuilder(logger).build(ClassLoader.getSystemClassLoader(), Integer.MAX_VALUE, BlockJUnit4ClassRunner.class);
+    final LibraryFingerprint fingerprint = new LibraryFingerprint(classFingerprints.toArray(new ClassFingerprint[classFingerprints.size()]), null, null);
+    assertTrue(fingerprint.getClassCount() > 16);
+    assertNull(fingerprint.isCompatible(ClassLoader.getSystemClassLoader(), false));
+
+    try (final URLClassLoader classLoader = new URLClassLoader(new URL[0], null)) {
+      final List<FingerprintError> errors = fingerprint.isCompatible(classLoader, true);
+      assertTrue(errors.size() > 1);
+      assertEquals(1, fingerprint.isCompatible(classLoader, false).size());
+    }
+  }
+
+  @Test
+  public void testCache() throws IOException {
+    final LibraryFingerprint fingerprint = newLibraryFingerprint();
+    try (final URLClassLoader classLoader = new URLClassLoader(new URL[] {FpTestClass1.class.getProtectionDomain().getCodeSource().getLocation()}, ClassLoader.getSystemClassLoader())) {
+      assertNull(fingerprint.isCompatible(classLoader, true));
+      final long hits = FingerprintVerifier.getCacheHits();
+      final long misses = FingerprintVerifier.getCacheMisses();
+
+      assertNull(fingerprint.isCompatible(classLoader, true));
+      assertEquals(hits + fingerprint.getClassCount(), FingerprintVerifier.getCacheHits());
+      assertEquals(misses, FingerprintVerifier.getCacheMisses());
+    }
+  }
+
+  @Test
+  public void testCacheSupertypes() throws IOException {
+    final String resourcePath = AssembleUtil.classNameToResource(FpTestClass2.class);
+    final String superResourcePath = AssembleUtil.classNameToResource(Assert.class);
+    final ClassLoader classLoader = new ClassLoader(ClassLoader.getSystemClassLoader()) {
+    };
+
+    // The class resolves to the same resource, but its superclass does not
+    final ClassLoader otherClassLoader = new ClassLoader(ClassLoader.getSystemClassLoader()) {
+      @Override
+      public URL getResource(final String name) {
+        return super.getResource(superResourcePath.equals(name) ? AssembleUtil.classNameToResource(FpTestClass1.class) : name);
+      }
+    };
+
+    assertEquals(classLoader.getResource(resourcePath), otherClassLoader.getResource(resourcePath));
+    final FingerprintVerifier verifier = new FingerprintVerifier();
+    final ClassFingerprint expected = verifier.cachedFingerprint(classLoader, resourcePath);
+    // The cache is shared by class loaders in which the resources resolve alike
+    final long hits = FingerprintVerifier.getCacheHits();
+    assertEquals(expected, verifier.cachedFingerprint(new ClassLoader(ClassLoader.getSystemClassLoader()) {
+    }, resourcePath));
+    assertEquals(hits + 1, FingerprintVerifier.getCacheHits());
+
+    final long misses = FingerprintVerifier.getCacheMisses();
+    final ClassFingerprint actual = verifier.cachedFingerprint(otherClassLoader, resourcePath);
+    assertEquals(misses + 1, FingerprintVerifier.getCacheMisses());
+    assertNotEquals(expected, actual);
+    assertEquals(verifier.fingerprint(otherClassLoader, resourcePath), actual);
+  }
+
   @Test
   @Ignore
   public void test1() throws IOException {
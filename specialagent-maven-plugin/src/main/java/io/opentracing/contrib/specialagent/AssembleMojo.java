@@ -16,8 +16,10 @@
 package io.opentracing.contrib.specialagent;
 
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
@@ -51,6 +53,7 @@ import org.apache.maven.project.ProjectDependenciesResolver;
 public final class AssembleMojo extends ResolveDependenciesMojo {
   private static final String pluginsDestDir = "dependencies/" + UtilConstants.META_INF_PLUGIN_PATH;
   private static final String isoDestDir = "dependencies/" + UtilConstants.META_INF_ISO_PATH;
+  private static final String indexDestFile = "dependencies/" + UtilConstants.META_INF_PLUGIN_INDEX;
   private static final String declarationScopeOfIntegrations = "provided";
 
   @Inject
@@ -181,6 +184,15 @@ public final class AssembleMojo extends ResolveDependenciesMojo {
           fileCopy(jarFile, new File(isoPath, fileName));
         }
       }
+
+      // Index the plugin JARs, so that SpecialAgent#load does not need to scan them
+      final StartupIndex index = StartupIndex.build(pluginsPath);
+      if (debug)
+        getLog().warn("Indexing plugins: " + index);
+
+      try (final OutputStream out = new FileOutputStream(new File(getProject().getBuild().getDirectory(), indexDestFile))) {
+        index.write(out);
+      }
     }
     catch (final DependencyResolutionException | IOException | LifecycleExecutionException e) {
       throw new MojoExecutionException(e.getMessage(), e);